@@ -42,6 +42,8 @@ public class Index extends JSONBuilder {
     private String excludedDataCenters;
     private Partitioner partitioner;
     private Boolean sparse;
+    private Boolean indexOnlyCount;
+    private Boolean compactExpressions;
 
     /**
      * Builds a new {@link Index} creation statement for the specified table and column.
@@ -240,6 +242,32 @@ public class Index extends JSONBuilder {
         return this;
     }
 
+    /**
+     * Sets if count queries with a search should be answered with rows built from the index.
+     *
+     * It is only used with consistency levels ONE and LOCAL_ONE, and it requires compact expressions.
+     *
+     * @param indexOnlyCount true if count queries should be answered from the index, false otherwise
+     * @return this with the specified index only count flag set
+     */
+    public Index indexOnlyCount(Boolean indexOnlyCount) {
+        this.indexOnlyCount = indexOnlyCount;
+        return this;
+    }
+
+    /**
+     * Sets if the paging state of the searches can be sent to the replicas in a compact binary format.
+     *
+     * It should only be enabled once all the nodes of the cluster understand this format.
+     *
+     * @param compactExpressions true if the compact format should be used, false otherwise
+     * @return this with the specified compact expressions flag set
+     */
+    public Index compactExpressions(Boolean compactExpressions) {
+        this.compactExpressions = compactExpressions;
+        return this;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String build() {
@@ -259,6 +287,8 @@ public class Index extends JSONBuilder {
         option(sb, "excluded_data_centers", excludedDataCenters);
         option(sb, "partitioner", partitioner);
         option(sb, "sparse", sparse);
+        option(sb, "index_only_count", indexOnlyCount);
+        option(sb, "compact_expressions", compactExpressions);
         sb.append(String.format("'schema':'%s'}", schema));
         return sb.toString();
     }
@@ -48,6 +48,14 @@ public class Search extends JSONBuilder {
     @JsonProperty("refresh")
     private Boolean refresh;
 
+    /** If the search can read the selected columns from the index doc values. */
+    @JsonProperty("covering")
+    private Boolean covering;
+
+    /** If the search must trace the time spent in each of its execution phases. */
+    @JsonProperty("profile")
+    private Boolean profile;
+
     /** Default constructor. */
     public Search() {
     }
@@ -97,4 +105,28 @@ public class Search extends JSONBuilder {
         return this;
     }
 
+    /**
+     * Sets if the {@link Search} can read the selected columns from the Lucene's index doc values instead of from the
+     * SSTables. The read values are as recent as the last index refresh, so you should use it only when that is
+     * acceptable.
+     *
+     * @param covering if the {@link Search} can read the selected columns from the index
+     * @return this with the specified covering
+     */
+    public Search covering(Boolean covering) {
+        this.covering = covering;
+        return this;
+    }
+
+    /**
+     * Sets if the {@link Search} must report the time spent in each of its execution phases in the query trace.
+     *
+     * @param profile if the {@link Search} must be profiled
+     * @return this with the specified profile
+     */
+    public Search profile(Boolean profile) {
+        this.profile = profile;
+        return this;
+    }
+
 }
@@ -53,6 +53,8 @@ public class BuilderTest {
                                                    .indexingQueuesSize(100)
                                                    .excludedDataCenters("DC1,DC2")
                                                    .sparse(true)
+                                                   .indexOnlyCount(true)
+                                                   .compactExpressions(true)
                                                    .partitioner(partitionerOnToken(8))
                                                    .defaultAnalyzer("my_analyzer")
                                                    .analyzer("my_analyzer", classpathAnalyzer("my_class"))
@@ -73,6 +75,8 @@ public class BuilderTest {
                           "'excluded_data_centers':'DC1,DC2'," +
                           "'partitioner':'{\"type\":\"token\",\"partitions\":8}'," +
                           "'sparse':'true'," +
+                          "'index_only_count':'true'," +
+                          "'compact_expressions':'true'," +
                           "'schema':'{" +
                           "\"default_analyzer\":\"my_analyzer\",\"analyzers\":{" +
                           "\"my_analyzer\":{\"type\":\"classpath\",\"class\":\"my_class\"}," +
@@ -872,6 +876,20 @@ public class BuilderTest {
         assertEquals("search serialization is wrong", expected, actual);
     }
 
+    @Test
+    public void testSearchCovering() {
+        String actual = search().filter(match("f1", 1)).covering(true).build();
+        String expected = "{\"filter\":[{\"type\":\"match\",\"field\":\"f1\",\"value\":1}],\"covering\":true}";
+        assertEquals("search serialization is wrong", expected, actual);
+    }
+
+    @Test
+    public void testSearchProfile() {
+        String actual = search().filter(match("f1", 1)).profile(true).build();
+        String expected = "{\"filter\":[{\"type\":\"match\",\"field\":\"f1\",\"value\":1}],\"profile\":true}";
+        assertEquals("search serialization is wrong", expected, actual);
+    }
+
     @Test
     public void testSearchNestedBool() {
         String actual = search().filter(must(match("f1", 1)).should(match("f2", 2)).not(match("f3", 3)))
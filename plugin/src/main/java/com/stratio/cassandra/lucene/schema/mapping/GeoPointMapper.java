@@ -121,7 +121,7 @@ public class GeoPointMapper extends MultipleColumnMapper {
      * @param columns the columns containing the latitude
      * @return the validated latitude
      */
-    Double readLatitude(Columns columns) {
+    public Double readLatitude(Columns columns) {
         Object value = columns.valueForField(latitude);
         return value == null ? null : readLatitude(value);
     }
@@ -133,7 +133,7 @@ public class GeoPointMapper extends MultipleColumnMapper {
      * @param columns the columns containing the longitude
      * @return the validated longitude
      */
-    Double readLongitude(Columns columns) {
+    public Double readLongitude(Columns columns) {
         Object value = columns.valueForField(longitude);
         return value == null ? null : readLongitude(value);
     }
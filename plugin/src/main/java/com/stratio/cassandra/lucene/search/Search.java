@@ -42,6 +42,10 @@ public class Search {
 
     private static final boolean DEFAULT_FORCE_REFRESH = false;
 
+    private static final boolean DEFAULT_COVERING = false;
+
+    private static final boolean DEFAULT_PROFILE = false;
+
     /** The mandatory conditions not participating in scoring. */
     public final List<Condition> filter;
 
@@ -54,28 +58,40 @@ public class Search {
     /** If this search must refresh the index before reading it. */
     private final Boolean refresh;
 
+    /** If the selected columns of this search can be read from the index doc values. */
+    private final Boolean covering;
+
+    /** If the time spent in each execution phase of this search must be traced. */
+    private final Boolean profile;
+
     /** The paging state. */
     private final IndexPagingState paging;
 
     /**
-     * Constructor using the specified querying, filtering, sorting and refresh options.
+     * Constructor using the specified querying, filtering, sorting, refresh, covering and profile options.
      *
      * @param filter the filtering {@link Condition}s not involved in scoring
      * @param query the querying {@link Condition}s participating in scoring
      * @param sort the sort fields for the query
      * @param paging the paging state
      * @param refresh if this search must refresh the index before reading it
+     * @param covering if the selected columns can be read from the index doc values
+     * @param profile if the time spent in each execution phase must be traced
      */
     public Search(List<Condition> filter,
                   List<Condition> query,
                   List<SortField> sort,
                   IndexPagingState paging,
-                  Boolean refresh) {
+                  Boolean refresh,
+                  Boolean covering,
+                  Boolean profile) {
         this.filter = filter == null ? Collections.EMPTY_LIST : filter;
         this.query = query == null ? Collections.EMPTY_LIST : query;
         this.sort = sort == null ? Collections.EMPTY_LIST : sort;
         this.paging = paging;
         this.refresh = refresh == null ? DEFAULT_FORCE_REFRESH : refresh;
+        this.covering = covering == null ? DEFAULT_COVERING : covering;
+        this.profile = profile == null ? DEFAULT_PROFILE : profile;
     }
 
     /**
@@ -163,6 +179,25 @@ public class Search {
         return refresh;
     }
 
+    /**
+     * Returns if the selected columns of this search can be read from the index doc values instead of from the
+     * SSTables, when all of them are covered by the index and the consistency level allows it.
+     *
+     * @return {@code true} if this search allows covering reads, {@code false} otherwise
+     */
+    public boolean covering() {
+        return covering;
+    }
+
+    /**
+     * Returns if the time spent in each of the execution phases of this search must be reported in the query trace.
+     *
+     * @return {@code true} if this search must be profiled, {@code false} otherwise
+     */
+    public boolean profile() {
+        return profile;
+    }
+
     /**
      * Returns the Lucene {@link org.apache.lucene.search.SortField}s represented by this using the specified schema.
      *
@@ -173,10 +208,29 @@ public class Search {
         return sort.stream().map(s -> s.sortField(schema)).collect(Collectors.toList());
     }
 
+    /**
+     * Returns the sort fields of this search, in order of precedence.
+     *
+     * @return the sort fields
+     */
+    public List<SortField> sort() {
+        return sort;
+    }
+
     public IndexPagingState paging() {
         return paging;
     }
 
+    /**
+     * Returns a copy of this search with the specified paging state.
+     *
+     * @param paging the paging state
+     * @return a copy of this with {@code paging}
+     */
+    public Search paging(IndexPagingState paging) {
+        return new Search(filter, query, sort, paging, refresh, covering, profile);
+    }
+
     /**
      * Returns the names of the involved fields when post processing.
      *
@@ -210,6 +264,8 @@ public class Search {
                           .add("query", query)
                           .add("sort", sort)
                           .add("refresh", refresh)
+                          .add("covering", covering)
+                          .add("profile", profile)
                           .add("paging", paging)
                           .toString();
     }
@@ -54,6 +54,14 @@ public class SearchBuilder implements Builder<Search> {
     @JsonProperty("refresh")
     private boolean refresh;
 
+    /** If the {@link Search} to be built can read the selected columns from the index doc values. */
+    @JsonProperty("covering")
+    private boolean covering;
+
+    /** If the {@link Search} to be built must trace the time spent in each of its execution phases. */
+    @JsonProperty("profile")
+    private boolean profile;
+
     @JsonProperty("paging")
     private String paging;
 
@@ -108,13 +116,40 @@ public class SearchBuilder implements Builder<Search> {
     }
 
     /**
-     * Sets the specified starting partition key.
+     * Sets if the {@link Search} to be built can read the selected columns from the index doc values instead of from
+     * the SSTables. The read values are as recent as the last index refresh and they don't have write times nor TTLs,
+     * so you should use it only when that is acceptable.
+     *
+     * @param covering {@code true} if the {@link Search} to be built can read the selected columns from the index,
+     * {@code false} otherwise
+     * @return this builder with the specified covering
+     */
+    public SearchBuilder covering(boolean covering) {
+        this.covering = covering;
+        return this;
+    }
+
+    /**
+     * Sets if the {@link Search} to be built must report the time spent in each of its execution phases in the query
+     * trace.
+     *
+     * @param profile {@code true} if the {@link Search} to be built must be profiled, {@code false} otherwise
+     * @return this builder with the specified profile
+     */
+    public SearchBuilder profile(boolean profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * Sets the specified starting partition key. The paging state is written in its legacy
+     * representation, so it can be read by any node.
      *
      * @param pagingState a paging state
      * @return this builder with the specified partition key
      */
     public SearchBuilder paging(IndexPagingState pagingState) {
-        this.paging = ByteBufferUtils.toHex(pagingState.toByteBuffer());
+        this.paging = ByteBufferUtils.toHex(pagingState.toLegacyByteBuffer());
         return this;
     }
 
@@ -129,7 +164,9 @@ public class SearchBuilder implements Builder<Search> {
                           query.stream().map(ConditionBuilder::build).collect(toList()),
                           sort.stream().map(SortFieldBuilder::build).collect(toList()),
                           paging == null ? null : IndexPagingState.fromByteBuffer(ByteBufferUtils.byteBuffer(paging)),
-                          refresh);
+                          refresh,
+                          covering,
+                          profile);
     }
 
     /**
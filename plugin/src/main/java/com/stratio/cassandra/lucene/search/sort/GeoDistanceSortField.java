@@ -19,6 +19,7 @@ import com.google.common.base.MoreObjects;
 import com.spatial4j.core.distance.DistanceUtils;
 import com.spatial4j.core.shape.Point;
 import com.stratio.cassandra.lucene.IndexException;
+import com.stratio.cassandra.lucene.column.Columns;
 import com.stratio.cassandra.lucene.common.GeospatialUtils;
 import com.stratio.cassandra.lucene.schema.Schema;
 import com.stratio.cassandra.lucene.schema.mapping.GeoPointMapper;
@@ -85,6 +86,24 @@ public class GeoDistanceSortField extends SortField {
         return valueSource.getSortField(reverse);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The value is the distance in kilometers between the reference point and the point of the row, or 180 degrees
+     * in kilometers if the row has no point, as Lucene's distance value sources do.
+     */
+    @Override
+    public Comparable<?> value(Schema schema, Columns columns) {
+        GeoPointMapper mapper = (GeoPointMapper) schema.mapper(field);
+        Double lat = mapper.readLatitude(columns);
+        Double lon = mapper.readLongitude(columns);
+        if (lat == null || lon == null) {
+            return 180 * DistanceUtils.DEG_TO_KM;
+        }
+        Point point = CONTEXT.makePoint(longitude, latitude);
+        return CONTEXT.calcDistance(point, lon, lat) * DistanceUtils.DEG_TO_KM;
+    }
+
     /** {@inheritDoc} */
     public Set<String> postProcessingFields() {
         return Collections.singleton(field);
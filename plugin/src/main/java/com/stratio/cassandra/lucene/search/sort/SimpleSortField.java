@@ -17,9 +17,14 @@ package com.stratio.cassandra.lucene.search.sort;
 
 import com.google.common.base.MoreObjects;
 import com.stratio.cassandra.lucene.IndexException;
+import com.stratio.cassandra.lucene.column.Columns;
 import com.stratio.cassandra.lucene.schema.Schema;
 import com.stratio.cassandra.lucene.schema.mapping.Mapper;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.util.BytesRef;
 
 import java.util.Collections;
 import java.util.Set;
@@ -78,6 +83,35 @@ public class SimpleSortField extends SortField {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The value is the minimum of the doc values generated by the mapper for the row, as Lucene does when sorting
+     * multivalued fields. Numeric values are compared in their sortable {@code long} representation, with missing
+     * values as zero, and binary values are compared in unsigned byte order, with missing values first.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Comparable<?> value(Schema schema, Columns columns) {
+        org.apache.lucene.search.SortField sortField = sortField(schema);
+        if (sortField == FIELD_SCORE) {
+            return null;
+        }
+        Comparable min = null;
+        for (IndexableField indexableField : schema.mapper(field).bestEffortIndexableFields(columns)) {
+            DocValuesType type = indexableField.fieldType().docValuesType();
+            if (indexableField.name().equals(field) && type != DocValuesType.NONE) {
+                Comparable value = type == DocValuesType.SORTED_NUMERIC || type == DocValuesType.NUMERIC
+                                   ? indexableField.numericValue().longValue()
+                                   : BytesRef.deepCopyOf(indexableField.binaryValue());
+                if (min == null || value.compareTo(min) < 0) {
+                    min = value;
+                }
+            }
+        }
+        return min == null && sortField instanceof SortedNumericSortField ? (Comparable) 0L : min;
+    }
+
     /** {@inheritDoc} */
     public Set<String> postProcessingFields() {
         return Collections.singleton(field);
@@ -15,6 +15,7 @@
  */
 package com.stratio.cassandra.lucene.search.sort;
 
+import com.stratio.cassandra.lucene.column.Columns;
 import com.stratio.cassandra.lucene.schema.Schema;
 
 import java.util.Set;
@@ -50,6 +51,31 @@ public abstract class SortField {
      */
     public abstract org.apache.lucene.search.SortField sortField(Schema schema);
 
+    /**
+     * Returns the value of this sort field for the row represented by the specified {@link Columns}, so rows can be
+     * sorted with {@link #compare(Comparable, Comparable)} without indexing them. The resulting order is the same
+     * as the one produced by the Lucene sort field returned by {@link #sortField(Schema)}.
+     *
+     * @param schema the {@link Schema} to be used
+     * @param columns the columns of the row
+     * @return the sort value of the row, maybe {@code null}
+     */
+    public abstract Comparable<?> value(Schema schema, Columns columns);
+
+    /**
+     * Compares the specified values returned by {@link #value(Schema, Columns)}. Null values go first in natural
+     * order.
+     *
+     * @param a a sort value
+     * @param b another sort value
+     * @return a negative integer, zero, or a positive integer as {@code a} goes before, together or after {@code b}
+     */
+    @SuppressWarnings("unchecked")
+    public int compare(Comparable a, Comparable b) {
+        int comparison = a == null ? (b == null ? 0 : -1) : (b == null ? 1 : a.compareTo(b));
+        return reverse ? -comparison : comparison;
+    }
+
     /**
      * Returns the names of the involved fields.
      *
@@ -34,6 +34,7 @@ import org.apache.cassandra.exceptions.ReadTimeoutException;
 import org.apache.cassandra.exceptions.UnavailableException;
 import org.apache.cassandra.metrics.ClientRequestMetrics;
 import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.service.reads.range.LuceneRangeCommands;
 import org.apache.cassandra.service.reads.range.LuceneReplicaPlanIterator;
 import org.apache.cassandra.service.reads.range.LuceneReplicaPlanMerger;
 //import org.apache.cassandra.service.StorageProxy.RangeIterator;
@@ -89,19 +90,20 @@ public class LuceneStorageProxy {
     throws UnavailableException, ReadFailureException, ReadTimeoutException, ReflectiveOperationException {
         long start = System.nanoTime();
         try {
+            if (group.queries.size() == 1) {
+                return fetchRows(group.queries, consistencyLevel, queryStartNanoTime);
+            }
+
+            ReadCommand command = group.queries.get(0);
+            TableMetadata metadata = group.metadata();
+            ColumnFamilyStore cfs = Keyspace.open(metadata.keyspace).getColumnFamilyStore(metadata.name);
+            Index index = (Index) command.getIndex(cfs);
             PartitionIterator result = fetchRows(group.queries, consistencyLevel, queryStartNanoTime);
+
             // If we have more than one command, then despite each read command honoring the limit, the total result
             // might not honor it and so we should enforce it
-            if (group.queries.size() > 1) {
-                ReadCommand command = group.queries.get(0);
-                TableMetadata metadata = group.metadata();
-                ColumnFamilyStore cfs = Keyspace.open(metadata.keyspace).getColumnFamilyStore(metadata.name);
-                Index index = (Index) command.getIndex(cfs);
-                result = index.postProcessorFor(group).apply(result, group);
-                result = group.limits().filter(result, group.nowInSec(),true, metadata.enforceStrictLiveness());
-            }
-
-            return result;
+            result = index.postProcessorFor(group).apply(result, group);
+            return group.limits().filter(result, group.nowInSec(), true, metadata.enforceStrictLiveness());
 
         } catch (UnavailableException e) {
             readMetrics.unavailables.mark();
@@ -123,6 +125,25 @@ public class LuceneStorageProxy {
         }
     }
 
+    /**
+     * Reads the rows of the specified top-k range read command querying all its token ranges, with no more than the
+     * specified number of them being queried at the same time.
+     *
+     * @param command the top-k range read command
+     * @param consistencyLevel the read consistency level
+     * @param queryStartNanoTime the query start time
+     * @param parallelism the max number of concurrently queried token ranges
+     * @param maxRows the max number of rows of the concurrently queried token ranges
+     * @return the read rows, post-processed and limited
+     */
+    public static PartitionIterator read(PartitionRangeReadCommand command,
+                                         ConsistencyLevel consistencyLevel,
+                                         long queryStartNanoTime,
+                                         int parallelism,
+                                         int maxRows) {
+        return LuceneRangeCommands.partitions(command, consistencyLevel, queryStartNanoTime, parallelism, maxRows);
+    }
+
     public static LuceneReplicaPlanMerger rangeMerger(PartitionRangeReadCommand command, ConsistencyLevel consistency)
     {
         final Keyspace keyspace = Keyspace.open(command.metadata().keyspace);
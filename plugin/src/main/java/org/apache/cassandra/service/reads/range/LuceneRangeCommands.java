@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service.reads.range;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.PartitionRangeReadCommand;
+import org.apache.cassandra.db.partitions.PartitionIterator;
+import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.locator.ReplicaPlan;
+import org.apache.cassandra.service.LuceneStorageProxy;
+import org.apache.cassandra.utils.AbstractIterator;
+import org.apache.cassandra.utils.CloseableIterator;
+
+/**
+ * Modified version of Apache Cassandra {@link RangeCommands} to be used with Lucene top-k searches.
+ * <p>
+ * Cassandra reduces the number of concurrently queried ranges as soon as the query limit is reached, but a top-k
+ * search needs the best {@code limit} rows of every range, so all of them should be queried. This queries the merged
+ * replica plans in batches of a fixed number of concurrent ranges, each of them retrieving up to {@code limit} rows, so
+ * the coordinator never holds more than {@code concurrency * limit} rows of pending responses.
+ */
+public class LuceneRangeCommands {
+
+    /**
+     * Returns the number of ranges to be concurrently queried by the specified command.
+     *
+     * @param command the top-k range read command
+     * @param parallelism the max number of concurrently queried ranges
+     * @param maxRows the max number of rows of the concurrently queried ranges
+     * @return the number of concurrently queried ranges
+     */
+    public static int concurrency(PartitionRangeReadCommand command, int parallelism, int maxRows) {
+        int limit = Math.max(1, command.limits().count());
+        return Math.max(1, Math.min(parallelism, maxRows / limit));
+    }
+
+    /**
+     * Returns the reconciled and post-processed rows read by the specified top-k range read command.
+     *
+     * @param command the top-k range read command
+     * @param consistency the read consistency level
+     * @param queryStartNanoTime the query start time
+     * @param parallelism the max number of concurrently queried ranges
+     * @param maxRows the max number of rows of the concurrently queried ranges
+     * @return the read rows
+     */
+    public static PartitionIterator partitions(PartitionRangeReadCommand command,
+                                               ConsistencyLevel consistency,
+                                               long queryStartNanoTime,
+                                               int parallelism,
+                                               int maxRows) {
+        Iterator<ReplicaPlan.ForRangeRead> mergedPlans = LuceneStorageProxy.rangeMerger(command, consistency);
+        int concurrency = concurrency(command, parallelism, maxRows);
+        PartitionIterator partitions = new Batches(command, mergedPlans, concurrency, queryStartNanoTime);
+        return command.limits().filter(command.postReconciliationProcessing(partitions),
+                                       command.nowInSec(),
+                                       command.selectsFullPartition(),
+                                       command.metadata().enforceStrictLiveness());
+    }
+
+    /**
+     * {@link PartitionIterator} concatenating the results of consecutive batches of concurrently queried ranges.
+     */
+    private static class Batches extends AbstractIterator<RowIterator> implements PartitionIterator {
+
+        private final PartitionRangeReadCommand command;
+        private final Iterator<ReplicaPlan.ForRangeRead> plans;
+        private final int concurrency;
+        private final long queryStartNanoTime;
+        private RangeCommandIterator batch;
+        private boolean first = true;
+
+        Batches(PartitionRangeReadCommand command,
+                Iterator<ReplicaPlan.ForRangeRead> plans,
+                int concurrency,
+                long queryStartNanoTime) {
+            this.command = command;
+            this.plans = plans;
+            this.concurrency = concurrency;
+            this.queryStartNanoTime = queryStartNanoTime;
+        }
+
+        @Override
+        protected RowIterator computeNext() {
+            while (batch == null || !batch.hasNext()) {
+                if (batch != null) {
+                    batch.close();
+                    batch = null;
+                }
+                if (!plans.hasNext()) {
+                    return endOfData();
+                }
+                List<ReplicaPlan.ForRangeRead> batchPlans = new ArrayList<>(concurrency);
+                while (plans.hasNext() && batchPlans.size() < concurrency) {
+                    batchPlans.add(plans.next());
+                }
+                // Only the first range of the query continues the paging state of the command limits
+                PartitionRangeReadCommand batchCommand = first
+                                                         ? command
+                                                         : command.withUpdatedLimit(command.limits().withoutState());
+                first = false;
+                int size = batchPlans.size();
+                batch = new RangeCommandIterator(CloseableIterator.wrap(batchPlans.iterator()),
+                                                 batchCommand,
+                                                 size,
+                                                 size,
+                                                 size,
+                                                 queryStartNanoTime);
+            }
+            return batch.next();
+        }
+
+        @Override
+        public void close() {
+            if (batch != null) {
+                batch.close();
+            }
+        }
+    }
+}
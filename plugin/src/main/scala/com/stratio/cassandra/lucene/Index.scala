@@ -126,6 +126,7 @@ class Index(table: ColumnFamilyStore, indexMetadata: IndexMetadata)
   override def getMetadataReloadTask(indexMetadata: IndexMetadata): Callable[_] = () => {
     // TODO: Check return getBuildIndexTask if index metadata is different
     logger.debug(s"Reloading Lucene index $name metadata: $indexMetadata")
+    service.searchCache.invalidate()
   }
 
   /** An index must be registered in order to be able to either subscribe to update events on the
@@ -16,9 +16,11 @@
 package com.stratio.cassandra.lucene
 
 import java.io.File
-import java.nio.file.{Path, Paths}
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.{Files, Path, Paths, StandardCopyOption}
 
 import com.stratio.cassandra.lucene.IndexOptions._
+import com.stratio.cassandra.lucene.index.{DocumentIterator, SlicedIndexSearcher, TieredDirectory}
 import com.stratio.cassandra.lucene.partitioning.{Partitioner, PartitionerOnNone}
 import com.stratio.cassandra.lucene.schema.{Schema, SchemaBuilder}
 import com.stratio.cassandra.lucene.util.SchemaValidator
@@ -55,20 +57,112 @@ class IndexOptions(tableMetadata: TableMetadata, indexMetadata: IndexMetadata) {
   /** The size of the asynchronous indexing queues */
   val indexingQueuesSize = parseIndexingQueuesSize(options)
 
+  /** The number of threads of the dedicated pool for concurrently searching index partitions, if
+    * any, or none for using the pool shared by all the indexes in the node
+    */
+  val searchThreads = parseSearchThreads(options)
+
+  /** The max number of queued partition searches */
+  val searchQueueSize = parseSearchQueueSize(options)
+
+  /** The max number of index partitions concurrently searched by a single query */
+  val searchParallelism = parseSearchParallelism(options)
+
+  /** The max number of index segment slices concurrently searched by a single query */
+  val searchSlices = parseSearchSlices(options)
+
+  /** The min number of documents per concurrently searched index segment slice */
+  val searchSliceMinDocs = parseSearchSliceMinDocs(options)
+
+  /** If the next page of index results should be searched in background */
+  val searchPrefetchPages = parseSearchPrefetchPages(options)
+
+  /** The min number of documents per searched page of index results, after the first one */
+  val searchMinPageSize = parseSearchMinPageSize(options)
+
+  /** The max number of documents per searched page of index results */
+  val searchMaxPageSize = parseSearchMaxPageSize(options)
+
+  /** The max estimated size in MB of the cache of parsed and validated searches */
+  val searchCacheMB = parseSearchCacheMB(options)
+
+  /** The max size in MB of a dedicated cache of the sets of documents matching filter clauses, or
+    * none to use the cache shared by all the node indexes
+    */
+  val filterCacheMB = parseFilterCacheMB(options)
+
+  /** If count queries at consistency level one should be answered with rows built from the index */
+  val indexOnlyCount = parseIndexOnlyCount(options)
+
+  /** If the coordinator can send the paging state and the read markers in the compact format */
+  val compactExpressions = parseCompactExpressions(options)
+
+  /** The max number of token ranges concurrently read by the coordinator of a sorted search */
+  val rangeParallelism = parseRangeParallelism(options)
+
+  /** The max number of rows buffered by the coordinator from concurrently read token ranges */
+  val rangeMaxRows = parseRangeMaxRows(options)
+
+  /** The max number of partition reads issued in token order in each batch */
+  val prefetchSize = parsePrefetchSize(options)
+
+  /** The min total time in milliseconds of a search to be logged as slow, disabled if zero */
+  val slowSearchMs = parseSlowSearchMs(options)
+
+  /** The min time in milliseconds spent in Lucene by a slow search, disabled if zero */
+  val slowSearchLuceneMs = parseSlowSearchLuceneMs(options)
+
+  /** The max number of running searches using sorting, relevance or full scan, unlimited if zero */
+  val maxSortedSearches = parseMaxSortedSearches(options)
+
+  /** The max number of searches using sorting, relevance or full scan waiting to run */
+  val maxQueuedSortedSearches = parseMaxQueuedSortedSearches(options)
+
+  /** The max number of running searches only using filters, unlimited if zero */
+  val maxFilterSearches = parseMaxFilterSearches(options)
+
+  /** The max number of searches only using filters waiting to run */
+  val maxQueuedFilterSearches = parseMaxQueuedFilterSearches(options)
+
   /** The names of the data centers excluded from indexing */
   val excludedDataCenters = parseExcludedDataCenters(options)
 
   /** The mapping schema */
   val schema = parseSchema(options, tableMetadata)
 
-  /** The index partitioner */
-  val partitioner = parsePartitioner(options, tableMetadata)
+  /** The path of the base directory of the index, next to which its later layouts are stored */
+  val basePath = parsePath(options, tableMetadata, Some(indexMetadata))
+
+  /** The generation of the partitioning layout, increased by each online repartitioning */
+  val layout = readLayout(basePath)
 
   /** The path of the directory where the index files will be stored */
-  val path = parsePath(options, tableMetadata, Some(indexMetadata))
+  val path = layoutPath(basePath, layout)
+
+  /** The base paths of the directories across which the index partitions will be spread */
+  val baseHotPaths = parseHotPaths(options, tableMetadata, Some(indexMetadata))
+
+  /** The paths of the directories across which the index partitions will be spread */
+  val hotPaths = baseHotPaths.map(layoutPath(_, layout))
+
+  /** The base paths of the directories where the large merged segments will be stored */
+  val baseColdPaths = parseColdPaths(options, tableMetadata, Some(indexMetadata))
+
+  /** The paths of the directories where the large merged segments will be stored */
+  val coldPaths = baseColdPaths.map(layoutPath(_, layout))
+
+  /** The min estimated size in MB of a merged segment to be stored in the cold directories */
+  val coldSegmentMinMB = parseColdSegmentMinMB(options)
+
+  /** The index partitioner, maybe overridden by a previous online repartitioning */
+  val partitioner =
+    readPartitioner(path, tableMetadata).getOrElse(parsePartitioner(options, tableMetadata))
 
   /** If the index is sparse or not */
   val sparse = parseSparse(options, tableMetadata)
+
+  /** If the primary key fields are also written as stored fields */
+  val storedKeys = parseStoredKeys(options)
 }
 
 /** Companion object for [[IndexOptions]]. */
@@ -92,6 +186,69 @@ object IndexOptions {
   val INDEXING_QUEUES_SIZE_OPTION = "indexing_queues_size"
   val DEFAULT_INDEXING_QUEUES_SIZE = 50
 
+  val SEARCH_THREADS_OPTION = "search_threads"
+  val DEFAULT_SEARCH_THREADS: Option[Int] = None
+
+  val SEARCH_QUEUE_SIZE_OPTION = "search_queue_size"
+  val DEFAULT_SEARCH_QUEUE_SIZE = 1000
+
+  val SEARCH_PARALLELISM_OPTION = "search_parallelism"
+  val DEFAULT_SEARCH_PARALLELISM = 4
+
+  val SEARCH_SLICES_OPTION = "search_slices"
+  val DEFAULT_SEARCH_SLICES = 1
+
+  val SEARCH_SLICE_MIN_DOCS_OPTION = "search_slice_min_docs"
+  val DEFAULT_SEARCH_SLICE_MIN_DOCS = SlicedIndexSearcher.DEFAULT_MIN_DOCS_PER_SLICE
+
+  val SEARCH_PREFETCH_PAGES_OPTION = "search_prefetch_pages"
+  val DEFAULT_SEARCH_PREFETCH_PAGES = false
+
+  val SEARCH_MIN_PAGE_SIZE_OPTION = "search_min_page_size"
+  val DEFAULT_SEARCH_MIN_PAGE_SIZE = DocumentIterator.DEFAULT_MIN_PAGE_SIZE
+
+  val SEARCH_MAX_PAGE_SIZE_OPTION = "search_max_page_size"
+  val DEFAULT_SEARCH_MAX_PAGE_SIZE = DocumentIterator.MAX_PAGE_SIZE
+
+  val SEARCH_CACHE_MB_OPTION = "search_cache_mb"
+  val DEFAULT_SEARCH_CACHE_MB = 8
+
+  val FILTER_CACHE_MB_OPTION = "filter_cache_mb"
+  val DEFAULT_FILTER_CACHE_MB: Option[Int] = None
+
+  val INDEX_ONLY_COUNT_OPTION = "index_only_count"
+  val DEFAULT_INDEX_ONLY_COUNT = false
+
+  val COMPACT_EXPRESSIONS_OPTION = "compact_expressions"
+  val DEFAULT_COMPACT_EXPRESSIONS = false
+
+  val RANGE_PARALLELISM_OPTION = "range_parallelism"
+  val DEFAULT_RANGE_PARALLELISM = 16
+
+  val RANGE_MAX_ROWS_OPTION = "range_max_rows"
+  val DEFAULT_RANGE_MAX_ROWS = 100000
+
+  val PREFETCH_SIZE_OPTION = "prefetch_size"
+  val DEFAULT_PREFETCH_SIZE = 16
+
+  val SLOW_SEARCH_MS_OPTION = "slow_search_ms"
+  val DEFAULT_SLOW_SEARCH_MS = 0
+
+  val SLOW_SEARCH_LUCENE_MS_OPTION = "slow_search_lucene_ms"
+  val DEFAULT_SLOW_SEARCH_LUCENE_MS = 0
+
+  val MAX_SORTED_SEARCHES_OPTION = "max_sorted_searches"
+  val DEFAULT_MAX_SORTED_SEARCHES = 0
+
+  val MAX_QUEUED_SORTED_SEARCHES_OPTION = "max_queued_sorted_searches"
+  val DEFAULT_MAX_QUEUED_SORTED_SEARCHES = 32
+
+  val MAX_FILTER_SEARCHES_OPTION = "max_filter_searches"
+  val DEFAULT_MAX_FILTER_SEARCHES = 0
+
+  val MAX_QUEUED_FILTER_SEARCHES_OPTION = "max_queued_filter_searches"
+  val DEFAULT_MAX_QUEUED_FILTER_SEARCHES = 32
+
   val EXCLUDED_DATA_CENTERS_OPTION = "excluded_data_centers"
   val DEFAULT_EXCLUDED_DATA_CENTERS = List[String]()
 
@@ -100,12 +257,23 @@ object IndexOptions {
 
   val SCHEMA_OPTION = "schema"
 
+  val COLD_DIRECTORY_PATHS_OPTION = "cold_directory_paths"
+  val DEFAULT_COLD_DIRECTORY_PATHS = List[Path]()
+
+  val COLD_SEGMENT_MIN_MB_OPTION = "cold_segment_min_mb"
+  val DEFAULT_COLD_SEGMENT_MIN_MB = TieredDirectory.DEFAULT_COLD_MIN_MB
+
   val PARTITIONER_OPTION = "partitioner"
+  val PARTITIONER_FILE_NAME = "partitioner.json"
+  val LAYOUT_FILE_SUFFIX = ".layout"
   val DEFAULT_PARTITIONER = PartitionerOnNone()
 
   val SPARSE_OPTION = "sparse"
   val DEFAULT_SPARSE = false
 
+  val STORED_KEYS_OPTION = "stored_keys"
+  val DEFAULT_STORED_KEYS = true
+
   /** Validates the specified index options.
     *
     * @param options  the options to be validated
@@ -119,10 +287,34 @@ object IndexOptions {
     parseMaxCachedMB(o)
     parseIndexingThreads(o)
     parseIndexingQueuesSize(o)
+    parseSearchThreads(o)
+    parseSearchQueueSize(o)
+    parseSearchParallelism(o)
+    parseSearchSlices(o)
+    parseSearchSliceMinDocs(o)
+    parseSearchPrefetchPages(o)
+    parseSearchMinPageSize(o)
+    parseSearchMaxPageSize(o)
+    parseSearchCacheMB(o)
+    parseFilterCacheMB(o)
+    parseIndexOnlyCount(o)
+    parseCompactExpressions(o)
+    parseRangeParallelism(o)
+    parseRangeMaxRows(o)
+    parsePrefetchSize(o)
+    parseSlowSearchMs(o)
+    parseSlowSearchLuceneMs(o)
+    parseMaxSortedSearches(o)
+    parseMaxQueuedSortedSearches(o)
+    parseMaxFilterSearches(o)
+    parseMaxQueuedFilterSearches(o)
     parseExcludedDataCenters(o)
     parseSchema(o, metadata)
     parsePath(o, metadata, None)
+    parseColdPaths(o, metadata, None)
+    parseColdSegmentMinMB(o)
     parsePartitioner(o, metadata)
+    parseStoredKeys(o)
   }
 
   def parseRefresh(options: Map[String, String]): Double = {
@@ -149,6 +341,107 @@ object IndexOptions {
     parseStrictlyPositiveInt(options, INDEXING_QUEUES_SIZE_OPTION, DEFAULT_INDEXING_QUEUES_SIZE)
   }
 
+  def parseSearchThreads(options: Map[String, String]): Option[Int] = {
+    if (options.contains(SEARCH_THREADS_OPTION)) Some(parseInt(options, SEARCH_THREADS_OPTION, 0))
+    else DEFAULT_SEARCH_THREADS
+  }
+
+  def parseSearchQueueSize(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, SEARCH_QUEUE_SIZE_OPTION, DEFAULT_SEARCH_QUEUE_SIZE)
+  }
+
+  def parseSearchParallelism(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, SEARCH_PARALLELISM_OPTION, DEFAULT_SEARCH_PARALLELISM)
+  }
+
+  def parseSearchSlices(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, SEARCH_SLICES_OPTION, DEFAULT_SEARCH_SLICES)
+  }
+
+  def parseSearchSliceMinDocs(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, SEARCH_SLICE_MIN_DOCS_OPTION, DEFAULT_SEARCH_SLICE_MIN_DOCS)
+  }
+
+  def parseSearchPrefetchPages(options: Map[String, String]): Boolean = {
+    options.get(SEARCH_PREFETCH_PAGES_OPTION).map(
+      value => try value.toBoolean catch {
+        case e: Exception => throw new IndexException(e,
+          s"'$SEARCH_PREFETCH_PAGES_OPTION' is invalid : ${e.getMessage}")
+      }).getOrElse(DEFAULT_SEARCH_PREFETCH_PAGES)
+  }
+
+  def parseSearchMinPageSize(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, SEARCH_MIN_PAGE_SIZE_OPTION, DEFAULT_SEARCH_MIN_PAGE_SIZE)
+  }
+
+  def parseSearchMaxPageSize(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, SEARCH_MAX_PAGE_SIZE_OPTION, DEFAULT_SEARCH_MAX_PAGE_SIZE)
+  }
+
+  def parseSearchCacheMB(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, SEARCH_CACHE_MB_OPTION, DEFAULT_SEARCH_CACHE_MB)
+  }
+
+  def parseFilterCacheMB(options: Map[String, String]): Option[Int] = {
+    if (options.contains(FILTER_CACHE_MB_OPTION))
+      Some(parseStrictlyPositiveInt(options, FILTER_CACHE_MB_OPTION, 0))
+    else DEFAULT_FILTER_CACHE_MB
+  }
+
+  def parseIndexOnlyCount(options: Map[String, String]): Boolean = {
+    options.get(INDEX_ONLY_COUNT_OPTION).map(
+      value => try value.toBoolean catch {
+        case e: Exception => throw new IndexException(e,
+          s"'$INDEX_ONLY_COUNT_OPTION' is invalid : ${e.getMessage}")
+      }).getOrElse(DEFAULT_INDEX_ONLY_COUNT)
+  }
+
+  def parseCompactExpressions(options: Map[String, String]): Boolean = {
+    options.get(COMPACT_EXPRESSIONS_OPTION).map(
+      value => try value.toBoolean catch {
+        case e: Exception => throw new IndexException(e,
+          s"'$COMPACT_EXPRESSIONS_OPTION' is invalid : ${e.getMessage}")
+      }).getOrElse(DEFAULT_COMPACT_EXPRESSIONS)
+  }
+
+  def parseRangeParallelism(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, RANGE_PARALLELISM_OPTION, DEFAULT_RANGE_PARALLELISM)
+  }
+
+  def parseRangeMaxRows(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, RANGE_MAX_ROWS_OPTION, DEFAULT_RANGE_MAX_ROWS)
+  }
+
+  def parsePrefetchSize(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, PREFETCH_SIZE_OPTION, DEFAULT_PREFETCH_SIZE)
+  }
+
+  def parseSlowSearchMs(options: Map[String, String]): Int = {
+    parseNonNegativeInt(options, SLOW_SEARCH_MS_OPTION, DEFAULT_SLOW_SEARCH_MS)
+  }
+
+  def parseSlowSearchLuceneMs(options: Map[String, String]): Int = {
+    parseNonNegativeInt(options, SLOW_SEARCH_LUCENE_MS_OPTION, DEFAULT_SLOW_SEARCH_LUCENE_MS)
+  }
+
+  def parseMaxSortedSearches(options: Map[String, String]): Int = {
+    parseNonNegativeInt(options, MAX_SORTED_SEARCHES_OPTION, DEFAULT_MAX_SORTED_SEARCHES)
+  }
+
+  def parseMaxQueuedSortedSearches(options: Map[String, String]): Int = {
+    parseNonNegativeInt(
+      options, MAX_QUEUED_SORTED_SEARCHES_OPTION, DEFAULT_MAX_QUEUED_SORTED_SEARCHES)
+  }
+
+  def parseMaxFilterSearches(options: Map[String, String]): Int = {
+    parseNonNegativeInt(options, MAX_FILTER_SEARCHES_OPTION, DEFAULT_MAX_FILTER_SEARCHES)
+  }
+
+  def parseMaxQueuedFilterSearches(options: Map[String, String]): Int = {
+    parseNonNegativeInt(
+      options, MAX_QUEUED_FILTER_SEARCHES_OPTION, DEFAULT_MAX_QUEUED_FILTER_SEARCHES)
+  }
+
   def parseExcludedDataCenters(options: Map[String, String]): List[String] = {
     options
       .get(EXCLUDED_DATA_CENTERS_OPTION)
@@ -169,6 +462,44 @@ object IndexOptions {
         }).orNull)
   }
 
+  /** Returns the index directories in each of the writeable data directories of the table, across
+    * which the index partitions are spread. There are none if the index directory is set with the
+    * directory path option, so all the partitions are stored under it.
+    *
+    * @param options the index options
+    * @param table   the indexed table metadata
+    * @param index   the index metadata
+    * @return the index directories in the data directories
+    */
+  def parseHotPaths(
+      options: Map[String, String],
+      table: TableMetadata,
+      index: Option[IndexMetadata]): List[Path] = {
+    if (options.contains(DIRECTORY_PATH_OPTION)) Nil else index.map(index => {
+      val directories = new Directories(table)
+      directories.getWriteableLocations.toList.map(location => {
+        val tablePath = directories.getLocationForDisk(location).toPath.toAbsolutePath
+        Paths.get(tablePath + File.separator + INDEXES_DIR_NAME + File.separator + index.name)
+      })
+    }).getOrElse(Nil)
+  }
+
+  def parseColdPaths(
+      options: Map[String, String],
+      table: TableMetadata,
+      index: Option[IndexMetadata]): List[Path] = {
+    options
+      .get(COLD_DIRECTORY_PATHS_OPTION)
+      .map(_.split(",").map(_.trim).filterNot(_.isEmpty).toList)
+      .map(_.map(root => index.map(index => Paths.get(root,
+        table.keyspace, table.name, INDEXES_DIR_NAME, index.name)).getOrElse(Paths.get(root))))
+      .getOrElse(DEFAULT_COLD_DIRECTORY_PATHS)
+  }
+
+  def parseColdSegmentMinMB(options: Map[String, String]): Int = {
+    parseStrictlyPositiveInt(options, COLD_SEGMENT_MIN_MB_OPTION, DEFAULT_COLD_SEGMENT_MIN_MB)
+  }
+
   def parseSchema(options: Map[String, String], table: TableMetadata): Schema = {
     options.get(SCHEMA_OPTION).map(
       value => try {
@@ -191,6 +522,82 @@ object IndexOptions {
       }).getOrElse(DEFAULT_PARTITIONER)
   }
 
+  /** Returns the partitioner persisted in the specified index directory by a previous online
+    * repartitioning, if any.
+    *
+    * @param path  the index directory path
+    * @param table the indexed table metadata
+    * @return the persisted partitioner, if any
+    */
+  def readPartitioner(path: Path, table: TableMetadata): Option[Partitioner] = {
+    Option(path).map(_.resolve(PARTITIONER_FILE_NAME)).filter(Files.exists(_)).map(
+      file => try {
+        Partitioner.fromJson(table, new String(Files.readAllBytes(file), UTF_8))
+      } catch {
+        case e: Exception => throw new IndexException(e,
+          s"Partitioner file '$file' is invalid : ${e.getMessage}")
+      })
+  }
+
+  /** Persists the specified partitioner in the specified index directory, so it overrides the one
+    * in the index options.
+    *
+    * @param path the index directory path
+    * @param json the JSON representation of the partitioner
+    */
+  def writePartitioner(path: Path, json: String) {
+    Files.write(path.resolve(PARTITIONER_FILE_NAME), json.getBytes(UTF_8))
+  }
+
+  /** Returns the path of the file pointing to the current partitioning layout of the index with the
+    * specified base directory. It is stored next to the base directory, so it survives the removal
+    * of any layout.
+    *
+    * @param path the index base directory path
+    * @return the layout file path
+    */
+  def layoutFile(path: Path): Path = Paths.get(path.toString + LAYOUT_FILE_SUFFIX)
+
+  /** Returns the generation of the current partitioning layout of the index with the specified base
+    * directory, that is zero if the index has never been repartitioned.
+    *
+    * @param path the index base directory path
+    * @return the current layout generation
+    */
+  def readLayout(path: Path): Int = {
+    Option(path).map(layoutFile).filter(Files.exists(_)).map(
+      file => try {
+        new String(Files.readAllBytes(file), UTF_8).trim.toInt
+      } catch {
+        case e: Exception => throw new IndexException(e,
+          s"Layout file '$file' is invalid : ${e.getMessage}")
+      }).getOrElse(0)
+  }
+
+  /** Atomically sets the current partitioning layout of the index with the specified base
+    * directory, so it either keeps pointing to the previous layout or points to the new one.
+    *
+    * @param path   the index base directory path
+    * @param layout the new layout generation
+    */
+  def writeLayout(path: Path, layout: Int) {
+    val file = layoutFile(path)
+    val tmp = Paths.get(file.toString + ".tmp")
+    Files.write(tmp, layout.toString.getBytes(UTF_8))
+    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+  }
+
+  /** Returns the directory of the specified partitioning layout generation of the index with the
+    * specified base directory. The first layout is stored in the base directory itself.
+    *
+    * @param path   the index base directory path
+    * @param layout the layout generation
+    * @return the directory path of the layout
+    */
+  def layoutPath(path: Path, layout: Int): Path = {
+    if (path == null || layout == 0) path else Paths.get(s"$path.$layout")
+  }
+
   def parseSparse(options: Map[String, String], table: TableMetadata): Boolean = {
     options.get(SPARSE_OPTION).map(
       value => try value.toBoolean catch {
@@ -199,6 +606,14 @@ object IndexOptions {
       }).getOrElse(DEFAULT_SPARSE)
   }
 
+  def parseStoredKeys(options: Map[String, String]): Boolean = {
+    options.get(STORED_KEYS_OPTION).map(
+      value => try value.toBoolean catch {
+        case e: Exception => throw new IndexException(e,
+          s"'$STORED_KEYS_OPTION' is invalid : ${e.getMessage}")
+      }).getOrElse(DEFAULT_STORED_KEYS)
+  }
+
   private def parseInt(options: Map[String, String], name: String, default: Int): Int = {
     options.get(name).map(
       string => try string.toInt catch {
@@ -222,6 +637,21 @@ object IndexOptions {
       }).getOrElse(default)
   }
 
+  private def parseNonNegativeInt(
+      options: Map[String, String],
+      name: String,
+      default: Int): Int = {
+    options.get(name).map(
+      string => try string.toInt catch {
+        case _: NumberFormatException =>
+          throw new IndexException(s"'$name' must be a non-negative integer, found: $string")
+      }).map(
+      integer => if (integer >= 0) integer
+      else {
+        throw new IndexException(s"'$name' must be non-negative, found: $integer")
+      }).getOrElse(default)
+  }
+
   private def parseStrictlyPositiveDouble(
       options: Map[String, String],
       name: String,
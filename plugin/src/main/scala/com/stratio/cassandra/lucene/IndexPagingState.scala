@@ -20,22 +20,28 @@ import java.nio.ByteBuffer
 import com.google.common.base.MoreObjects
 import com.stratio.cassandra.lucene.IndexPagingState._
 import com.stratio.cassandra.lucene.partitioning.Partitioner
-import com.stratio.cassandra.lucene.search.SearchBuilder
+import com.stratio.cassandra.lucene.search.{Search, SearchBuilder}
 import com.stratio.cassandra.lucene.util.{ByteBufferUtils, SimplePartitionIterator, SingleRowIterator}
 import org.apache.cassandra.config.DatabaseDescriptor
 import org.apache.cassandra.db._
 import org.apache.cassandra.db.filter.RowFilter
 import org.apache.cassandra.db.marshal.{Int32Type, UTF8Type}
 import org.apache.cassandra.db.partitions.PartitionIterator
+import org.apache.cassandra.db.rows.Row
 import org.apache.cassandra.service.LuceneStorageProxy
 import org.apache.cassandra.service.pager.PagingState
+import org.apache.cassandra.io.util.{DataInputBuffer, DataOutputBuffer}
+import org.apache.cassandra.utils.ByteBufferUtil
+import org.apache.lucene.util.BytesRef
 
 import scala.jdk.CollectionConverters._
 import scala.collection.mutable
 
 /** The paging state of a CQL query using Lucene. It tracks the primary keys of the last seen rows
-  * for each internal read command of a CQL query. It also keeps the count of the remaining rows.
-  * This state can be serialized to be attached to a [[PagingState]] and/or to a search predicate.
+  * for each internal read command of a CQL query, and the values of the sort fields of these rows
+  * if they are known, so the next searches can start right after them without seeking them. It
+  * also keeps the count of the remaining rows. This state can be serialized to be attached to a
+  * [[PagingState]] and/or to a search predicate.
   *
   * @param remaining the number of remaining rows to be retrieved
   * @author Andres de la Pena `adelapena@stratio.com`
@@ -48,13 +54,33 @@ class IndexPagingState(var remaining: Int) {
   /** The last row positions */
   private val entries = mutable.LinkedHashMap.empty[(Int, DecoratedKey), Clustering[_]]
 
-  /** Returns the primary key of the last seen row for the specified read command.
+  /** The values of the sort fields of the last row positions, if they are known */
+  private val values = mutable.HashMap.empty[(Int, DecoratedKey), Array[AnyRef]]
+
+  /** Returns the values of the sort fields of the last seen row in the specified partition key and
+    * index partition, if they are known.
+    *
+    * @param partition the index partition
+    * @param key       the partition key
+    * @return the sort values of the last seen row
+    */
+  def sortValues(partition: Int, key: DecoratedKey): Option[Array[AnyRef]] = {
+    values.get((partition, key))
+  }
+
+  /** Returns the primary key of the last seen row for the specified read command. The paging
+    * state is rejected if it has been built with a partitioner other than the specified one.
     *
-    * @param command a read command
+    * @param command     a read command
+    * @param partitioner the partitioner of the index
     * @return the primary key of the last seen row for `command`
     */
   def forCommand(command: ReadCommand, partitioner: Partitioner)
   : List[Option[((Int, DecoratedKey), Clustering[_])]] = {
+    entries.keys.find { case (partition, key) => partitioner.partition(key) != partition }
+      .foreach(_ => throw new IndexException(
+        "Paging state was built with a different index partitioner, probably because the index " +
+          "has been repartitioned in some nodes but not in others. Please retry the query."))
     (0 until partitioner.numPartitions).map(i => {
       command match {
         case c: SinglePartitionReadCommand =>
@@ -66,63 +92,71 @@ class IndexPagingState(var remaining: Int) {
     }).toList
   }
 
-  @throws[ReflectiveOperationException]
-  private def indexExpression(command: ReadCommand): RowFilter.Expression = {
-
-    // Try with custom expressions
-    command.rowFilter.getExpressions.asScala.find(_.isCustom).foreach(return _)
-
-    // Try with dummy column
-    val cfs = Keyspace.open(command.metadata.keyspace).getColumnFamilyStore(command.metadata.name)
-    for (expr <- command.rowFilter.getExpressions.asScala) {
-      for (index <- cfs.indexManager.listIndexes.asScala) {
-        if (index.isInstanceOf[Index] && index.supportsExpression(expr.column, expr.operator))
-          return expr
-      }
-    }
-    throw new IndexException("Not found expression")
-  }
-
-  /** Adds this paging state to the specified read query.
+  /** Adds this paging state to the specified read query. In the compact format, the binary
+    * representation of this is appended to the value of the index expression, next to the JSON
+    * search, so there is no need for parsing and rewriting the search. Otherwise, the legacy
+    * representation of this is written into the JSON search, so it can be read by replicas that
+    * don't support the compact format yet.
     *
-    * @param query a CQL query using the Lucene index
+    * @param query   a CQL query using the Lucene index
+    * @param compact if the compact format can be used
     * @throws ReflectiveOperationException if there is any problem with reflection
     */
   @throws[ReflectiveOperationException]
-  def rewrite(query: ReadQuery): Unit = query match {
+  def rewrite(query: ReadQuery, compact: Boolean): Unit = query match {
     case group: SinglePartitionReadCommand.Group =>
-      group.queries.forEach(rewrite)
+      group.queries.forEach(rewrite(_, compact))
     case read: ReadCommand =>
       val expression = indexExpression(read)
       val oldValue = expressionValueField.get(expression).asInstanceOf[ByteBuffer]
-      val search = SearchBuilder.fromJson(UTF8Type.instance.compose(oldValue)).paging(this)
-      val newValue = UTF8Type.instance.decompose(search.toJson)
+      val newValue = if (compact) attach(oldValue, this) else {
+        val search = SearchBuilder.fromJson(UTF8Type.instance.compose(detach(oldValue)))
+        UTF8Type.instance.decompose(search.paging(this).toJson)
+      }
       expressionValueField.set(expression, newValue)
     case _ =>
       throw new IndexException(s"Unsupported query type ${query.getClass}")
   }
 
-  /** Updates this paging state with the results of the specified query.
+  /** Updates this paging state with the results of the specified query. The sort values of the
+    * last rows are only computed if the index allows the compact format, because the legacy
+    * representation can't carry them.
     *
     * @param query       the query
     * @param partitions  the results
     * @param consistency the query consistency level
+    * @param service     the service of the queried index
+    * @param search      the search of the query
     * @return a copy of the query results
     */
   def update(
       query: ReadQuery,
       partitions: PartitionIterator,
       consistency: ConsistencyLevel,
-      partitioner: Partitioner): PartitionIterator = query match {
-    case c: SinglePartitionReadCommand.Group => update(c, partitions, partitioner)
-    case c: PartitionRangeReadCommand => update(c, partitions, consistency, partitioner)
-    case _ => throw new IndexException(s"Unsupported query type ${query.getClass}")
+      service: IndexService,
+      search: Search): PartitionIterator = {
+    val partitioner = service.partitioner
+    val lastRows = mutable.LinkedHashMap.empty[(Int, DecoratedKey), Row]
+    val result = query match {
+      case c: SinglePartitionReadCommand.Group => update(c, partitions, partitioner, lastRows)
+      case c: PartitionRangeReadCommand => update(c, partitions, consistency, partitioner, lastRows)
+      case _ => throw new IndexException(s"Unsupported query type ${query.getClass}")
+    }
+    if (service.options.compactExpressions) {
+      val rows = lastRows.toSeq.map { case ((_, key), row) => (key, row) }
+      lastRows.keys.zip(service.sortValues(search, rows, query.nowInSec)).foreach {
+        case (position, Some(sortValues)) => values.put(position, sortValues)
+        case (position, None) => values.remove(position)
+      }
+    }
+    result
   }
 
   private def update(
       group: SinglePartitionReadCommand.Group,
       partitions: PartitionIterator,
-      partitioner: Partitioner): PartitionIterator = {
+      partitioner: Partitioner,
+      lastRows: mutable.Map[(Int, DecoratedKey), Row]): PartitionIterator = {
     val rowIterators = mutable.ListBuffer.empty[SingleRowIterator]
     var count = 0
     for (partition <- partitions.asScala) {
@@ -132,6 +166,7 @@ class IndexPagingState(var remaining: Int) {
         val newRowIterator = new SingleRowIterator(partition)
         rowIterators += newRowIterator
         entries.put((p, key), newRowIterator.row.clustering())
+        lastRows.put((p, key), newRowIterator.row)
         if (remaining > 0) remaining -= 1
         count += 1
       }
@@ -146,7 +181,8 @@ class IndexPagingState(var remaining: Int) {
       command: PartitionRangeReadCommand,
       partitions: PartitionIterator,
       consistency: ConsistencyLevel,
-      partitioner: Partitioner): PartitionIterator = {
+      partitioner: Partitioner,
+      lastRows: mutable.Map[(Int, DecoratedKey), Row]): PartitionIterator = {
 
     // Collect query bounds
     val rangeMerger = LuceneStorageProxy.rangeMerger(command, consistency)
@@ -162,11 +198,16 @@ class IndexPagingState(var remaining: Int) {
       val bound = bounds.find(_ contains key)
       while (partition.hasNext) {
         bound.foreach(bound =>
-          entries.keys.filter(x => bound.contains(x._2) && p == x._1).foreach(entries.remove))
+          entries.keys.filter(x => bound.contains(x._2) && p == x._1).foreach(position => {
+            entries.remove(position)
+            values.remove(position)
+            lastRows.remove(position)
+          }))
         val newRowIterator = new SingleRowIterator(partition)
         rowIterators += newRowIterator
         val clustering = newRowIterator.row.clustering
         entries.put((p, key), clustering)
+        lastRows.put((p, key), newRowIterator.row)
         if (remaining > 0) remaining -= 1
         count += 1
       }
@@ -180,10 +221,12 @@ class IndexPagingState(var remaining: Int) {
 
   /** Returns a CQL [[PagingState]] containing this Lucene paging state.
     *
+    * @param compact if the compact representation can be used
     * @return a CQL paging state
     */
-  def toPagingState: PagingState = {
-    if (hasMorePages) new PagingState(toByteBuffer, null, remaining, remaining) else null
+  def toPagingState(compact: Boolean): PagingState = {
+    val bb = if (compact) toByteBuffer else toLegacyByteBuffer
+    if (hasMorePages) new PagingState(bb, null, remaining, remaining) else null
   }
 
   /** @inheritdoc */
@@ -195,12 +238,45 @@ class IndexPagingState(var remaining: Int) {
       .toString
   }
 
-  /** Returns a byte buffer representation of this.
+  /** Returns a compact byte buffer representation of this.
     * The returned result can be read with [[fromByteBuffer(ByteBuffer)]].
     *
+    * The representation starts with a version byte that can't be the first byte of the legacy
+    * representation. Each partition key and clustering value is written as the length of its
+    * common prefix with the same value of the previous entry followed by the rest of its bytes.
+    *
     * @return a byte buffer representing this
     */
   def toByteBuffer: ByteBuffer = {
+    val out = new DataOutputBuffer
+    out.writeByte(VERSION)
+    out.writeUnsignedVInt(remaining.toLong)
+    out.writeUnsignedVInt(entries.size.toLong)
+    var lastKey = ByteBufferUtil.EMPTY_BYTE_BUFFER
+    var lastClustering = Array.empty[ByteBuffer]
+    entries.foreach { case ((partition, key), clustering) =>
+      val clusteringValues: Array[ByteBuffer] = clustering.getBufferArray
+      out.writeUnsignedVInt(partition.toLong)
+      writeDelta(out, lastKey, key.getKey)
+      out.writeUnsignedVInt(clusteringValues.length.toLong)
+      for (i <- clusteringValues.indices) {
+        val last = if (i < lastClustering.length) lastClustering(i) else ByteBufferUtil.EMPTY_BYTE_BUFFER
+        writeDelta(out, last, clusteringValues(i))
+      }
+      writeSortValues(out, values.get((partition, key)))
+      lastKey = key.getKey
+      lastClustering = clusteringValues
+    }
+    out.asNewBuffer
+  }
+
+  /** Returns a byte buffer representation of this that can be read by the nodes that don't
+    * support the compact representation. It doesn't contain the sort values of the entries.
+    * The returned result can be read with [[fromByteBuffer(ByteBuffer)]].
+    *
+    * @return a byte buffer representing this
+    */
+  def toLegacyByteBuffer: ByteBuffer = {
     val entryValues = entries.map { case ((partition, key), clustering) =>
       val clusteringValues: Array[ByteBuffer] = clustering.getBufferArray
       val values = new Array[ByteBuffer](2 + clusteringValues.length)
@@ -223,13 +299,70 @@ object IndexPagingState {
   private lazy val expressionValueField = classOf[RowFilter.Expression].getDeclaredField("value")
   expressionValueField.setAccessible(true)
 
+  /** The version of the binary representation. The first byte of the legacy representation is the
+    * most significant byte of a non-negative integer, so it never has the sign bit set.
+    */
+  private val VERSION: Byte = 0x81.toByte
+
+  /** The byte separating the JSON search from the paging state in an index expression value. It
+    * can't appear in a valid UTF-8 encoded JSON text.
+    */
+  private val SEPARATOR: Byte = 0
+
+  /** The byte marking an index expression value as requesting rows built from the index, without
+    * reading them from the SSTables. It is placed right after the JSON search, before any attached
+    * paging state, and it can't appear in a valid UTF-8 encoded JSON text either.
+    */
+  private val INDEX_ONLY: Byte = 1
+
+  /** The byte marking an index expression value as requesting the sort values of the matched rows,
+    * so the coordinator can merge the rows of the replicas without searching them again. It is
+    * placed in the same position as [[INDEX_ONLY]], after it if both are present.
+    */
+  private val SORT_KEYS: Byte = 2
+
+  private val NULL: Byte = 0
+  private val BYTES: Byte = 1
+  private val INT: Byte = 2
+  private val LONG: Byte = 3
+  private val FLOAT: Byte = 4
+  private val DOUBLE: Byte = 5
+
   /** Returns the paging state represented by the specified byte buffer, which should have been
-    * generated with [[IndexPagingState.toByteBuffer]].
+    * generated with [[IndexPagingState.toByteBuffer]]. Legacy representations are also accepted.
     *
     * @param bb a byte buffer generated by [[IndexPagingState.toByteBuffer]]
     * @return the paging state represented by `bb`
     */
   def fromByteBuffer(bb: ByteBuffer): IndexPagingState = {
+    if (bb.hasRemaining && bb.get(bb.position()) == VERSION) fromCompact(bb) else fromLegacy(bb)
+  }
+
+  private def fromCompact(bb: ByteBuffer): IndexPagingState = {
+    val in = new DataInputBuffer(bb, true)
+    in.readByte
+    val state = new IndexPagingState(in.readUnsignedVInt.toInt)
+    val numEntries = in.readUnsignedVInt.toInt
+    var lastKey = ByteBufferUtil.EMPTY_BYTE_BUFFER
+    var lastClustering = Array.empty[ByteBuffer]
+    for (_ <- 0 until numEntries) {
+      val partition = in.readUnsignedVInt.toInt
+      val keyValue = readDelta(in, lastKey)
+      val clusteringValues = new Array[ByteBuffer](in.readUnsignedVInt.toInt)
+      for (i <- clusteringValues.indices) {
+        val last = if (i < lastClustering.length) lastClustering(i) else ByteBufferUtil.EMPTY_BYTE_BUFFER
+        clusteringValues(i) = readDelta(in, last)
+      }
+      val key = DatabaseDescriptor.getPartitioner.decorateKey(keyValue)
+      state.entries.put((partition, key), Clustering.make(clusteringValues: _*))
+      readSortValues(in).foreach(state.values.put((partition, key), _))
+      lastKey = keyValue
+      lastClustering = clusteringValues
+    }
+    state
+  }
+
+  private def fromLegacy(bb: ByteBuffer): IndexPagingState = {
     val remaining = bb.getInt
     val state = new IndexPagingState(remaining)
     ByteBufferUtils.decompose(bb).map(
@@ -243,6 +376,223 @@ object IndexPagingState {
     state
   }
 
+  /** Writes the specified value as the length of its common prefix with the specified previous
+    * value followed by the rest of its bytes.
+    */
+  private def writeDelta(out: DataOutputBuffer, last: ByteBuffer, value: ByteBuffer): Unit = {
+    val max = Math.min(last.remaining, value.remaining)
+    val (i, j) = (last.position(), value.position())
+    var prefix = 0
+    while (prefix < max && last.get(i + prefix) == value.get(j + prefix)) prefix += 1
+    val suffix = value.duplicate
+    suffix.position(suffix.position() + prefix)
+    out.writeUnsignedVInt(prefix.toLong)
+    ByteBufferUtil.writeWithVIntLength(suffix, out)
+  }
+
+  private def readDelta(in: DataInputBuffer, last: ByteBuffer): ByteBuffer = {
+    val prefix = in.readUnsignedVInt.toInt
+    val suffix = ByteBufferUtil.readWithVIntLength(in)
+    val value = ByteBuffer.allocate(prefix + suffix.remaining)
+    value.put(last.duplicate.limit(last.position() + prefix).asInstanceOf[ByteBuffer]).put(suffix)
+    value.flip
+    value
+  }
+
+  /** Writes the specified sort values, or the absence of them if they are not all of a known type.
+    */
+  private[lucene] def writeSortValues(out: DataOutputBuffer, values: Option[Array[AnyRef]]): Unit = {
+    values.filter(_.forall {
+      case null | _: BytesRef | _: java.lang.Integer | _: java.lang.Long => true
+      case _: java.lang.Float | _: java.lang.Double => true
+      case _ => false
+    }) match {
+      case None => out.writeUnsignedVInt(0L)
+      case Some(sortValues) =>
+        out.writeUnsignedVInt(sortValues.length + 1L)
+        sortValues.foreach {
+          case null => out.writeByte(NULL)
+          case v: BytesRef =>
+            out.writeByte(BYTES)
+            out.writeUnsignedVInt(v.length.toLong)
+            out.write(v.bytes, v.offset, v.length)
+          case v: java.lang.Integer => out.writeByte(INT); out.writeInt(v)
+          case v: java.lang.Long => out.writeByte(LONG); out.writeLong(v)
+          case v: java.lang.Float => out.writeByte(FLOAT); out.writeFloat(v)
+          case v: java.lang.Double => out.writeByte(DOUBLE); out.writeDouble(v)
+        }
+    }
+  }
+
+  private[lucene] def readSortValues(in: DataInputBuffer): Option[Array[AnyRef]] = {
+    val size = in.readUnsignedVInt.toInt - 1
+    if (size < 0) return None
+    Some(Array.fill[AnyRef](size)(in.readByte match {
+      case NULL => null
+      case BYTES =>
+        val bytes = new Array[Byte](in.readUnsignedVInt.toInt)
+        in.readFully(bytes)
+        new BytesRef(bytes)
+      case INT => Int.box(in.readInt)
+      case LONG => Long.box(in.readLong)
+      case FLOAT => Float.box(in.readFloat)
+      case DOUBLE => Double.box(in.readDouble)
+      case tag => throw new IndexException(s"Unknown sort value type $tag")
+    }))
+  }
+
+  @throws[ReflectiveOperationException]
+  private def indexExpression(command: ReadCommand): RowFilter.Expression = {
+
+    // Try with custom expressions
+    command.rowFilter.getExpressions.asScala.find(_.isCustom).foreach(return _)
+
+    // Try with dummy column
+    val cfs = Keyspace.open(command.metadata.keyspace).getColumnFamilyStore(command.metadata.name)
+    for (expr <- command.rowFilter.getExpressions.asScala) {
+      for (index <- cfs.indexManager.listIndexes.asScala) {
+        if (index.isInstanceOf[Index] && index.supportsExpression(expr.column, expr.operator))
+          return expr
+      }
+    }
+    throw new IndexException("Not found expression")
+  }
+
+  /** Marks the index expressions of the specified read query as requesting only the primary keys
+    * of the matched rows, so they can be built from the index without reading the SSTables. This
+    * is only safe when the rows are just counted and there are no read repairs.
+    *
+    * @param query a CQL query using the Lucene index
+    * @throws ReflectiveOperationException if there is any problem with reflection
+    */
+  @throws[ReflectiveOperationException]
+  def indexOnly(query: ReadQuery): Unit = mark(query, INDEX_ONLY)
+
+  /** Returns the specified index expression value marked as requesting only the primary keys of
+    * the matched rows, keeping any attached paging state.
+    *
+    * @param value an index expression value
+    * @return the marked expression value
+    */
+  def indexOnly(value: ByteBuffer): ByteBuffer = mark(value, INDEX_ONLY)
+
+  /** Returns if the specified index expression value has been marked with [[indexOnly]].
+    *
+    * @param value an index expression value
+    * @return `true` if the rows can be built from the index, `false` otherwise
+    */
+  def isIndexOnly(value: ByteBuffer): Boolean = isMarked(value, INDEX_ONLY)
+
+  /** Marks the index expressions of the specified read query as requesting the sort values of the
+    * matched rows, so the replicas attach them to the returned rows. This is only safe when there
+    * are no digest comparisons nor read repairs that could propagate the attached values.
+    *
+    * @param query a CQL query using the Lucene index
+    * @throws ReflectiveOperationException if there is any problem with reflection
+    */
+  @throws[ReflectiveOperationException]
+  def sortKeys(query: ReadQuery): Unit = mark(query, SORT_KEYS)
+
+  /** Returns the specified index expression value marked as requesting the sort values of the
+    * matched rows, keeping any attached paging state.
+    *
+    * @param value an index expression value
+    * @return the marked expression value
+    */
+  def sortKeys(value: ByteBuffer): ByteBuffer = mark(value, SORT_KEYS)
+
+  /** Returns if the specified index expression value has been marked with [[sortKeys]].
+    *
+    * @param value an index expression value
+    * @return `true` if the rows should carry their sort values, `false` otherwise
+    */
+  def hasSortKeys(value: ByteBuffer): Boolean = isMarked(value, SORT_KEYS)
+
+  @throws[ReflectiveOperationException]
+  private def mark(query: ReadQuery, marker: Byte): Unit = query match {
+    case group: SinglePartitionReadCommand.Group =>
+      group.queries.forEach(mark(_, marker))
+    case read: ReadCommand =>
+      val expression = indexExpression(read)
+      val oldValue = expressionValueField.get(expression).asInstanceOf[ByteBuffer]
+      expressionValueField.set(expression, mark(oldValue, marker))
+    case _ =>
+      throw new IndexException(s"Unsupported query type ${query.getClass}")
+  }
+
+  private def mark(value: ByteBuffer, marker: Byte): ByteBuffer = {
+    if (isMarked(value, marker)) return value
+    val markers = this.markers(value)
+    val search = detach(value)
+    val rest = value.duplicate.position(value.position() + search.remaining + markers.size)
+    val out = ByteBuffer.allocate(value.remaining + 1)
+    out.put(search.duplicate)
+    (markers :+ marker).sorted.foreach(out.put)
+    out.put(rest).flip
+    out
+  }
+
+  private def isMarked(value: ByteBuffer, marker: Byte): Boolean = markers(value).contains(marker)
+
+  /** Returns the markers placed between the JSON search and any attached paging state. */
+  private def markers(value: ByteBuffer): Seq[Byte] = {
+    var i = value.position() + detach(value).remaining
+    val markers = mutable.ListBuffer[Byte]()
+    while (i < value.limit() && value.get(i) != SEPARATOR) {
+      markers += value.get(i)
+      i += 1
+    }
+    markers.toList
+  }
+
+  /** Returns the specified index expression value with the specified paging state attached to it,
+    * replacing any previously attached paging state.
+    *
+    * @param value an index expression value, containing a UTF-8 JSON search
+    * @param state the paging state to be attached
+    * @return the expression value with the attached paging state
+    */
+  def attach(value: ByteBuffer, state: IndexPagingState): ByteBuffer = {
+    val search = detach(value)
+    val paging = state.toByteBuffer
+    val markers = this.markers(value)
+    val out = ByteBuffer.allocate(search.remaining + markers.size + 1 + paging.remaining)
+    out.put(search.duplicate)
+    markers.foreach(out.put)
+    out.put(SEPARATOR).put(paging).flip
+    out
+  }
+
+  /** Returns the specified index expression value without any attached paging state nor marks.
+    *
+    * @param value an index expression value, maybe with an attached paging state
+    * @return the UTF-8 JSON search of the expression value
+    */
+  def detach(value: ByteBuffer): ByteBuffer = {
+    var i = value.position()
+    while (i < value.limit() && value.get(i) != SEPARATOR && value.get(i) != INDEX_ONLY &&
+      value.get(i) != SORT_KEYS) i += 1
+    if (i == value.limit()) value else value.duplicate.limit(i).asInstanceOf[ByteBuffer]
+  }
+
+  /** Returns the paging state attached to the specified index expression value, if any. The state
+    * is read from its binary representation, without parsing the JSON search.
+    *
+    * @param value an index expression value, maybe with an attached paging state
+    * @return the attached paging state, if any
+    */
+  def attached(value: ByteBuffer): Option[IndexPagingState] = {
+    val position = separator(value)
+    if (position < 0) None
+    else Some(fromByteBuffer(value.duplicate.position(position + 1).asInstanceOf[ByteBuffer]))
+  }
+
+  private def separator(value: ByteBuffer): Int = {
+    var i = value.position()
+    while (i < value.limit() && value.get(i) != SEPARATOR) i += 1
+    if (i < value.limit()) i else -1
+  }
+
   /** Returns the Lucene paging state contained in the specified CQL [[PagingState]].
     * If the specified paging state is null, then an empty Lucene paging state will be returned.
     *
@@ -21,12 +21,14 @@ import java.util.function.BiFunction
 import com.stratio.cassandra.lucene.IndexPostProcessor._
 import com.stratio.cassandra.lucene.index.RAMIndex
 import com.stratio.cassandra.lucene.search.Search
+import com.stratio.cassandra.lucene.search.sort.SortField
 import com.stratio.cassandra.lucene.util._
 import org.apache.cassandra.db.SinglePartitionReadCommand.Group
 import org.apache.cassandra.db.partitions.PartitionIterator
-import org.apache.cassandra.db.rows.Row
-import org.apache.cassandra.db.{DecoratedKey, ReadCommand, ReadQuery, SinglePartitionReadCommand}
-import org.apache.lucene.document.{Document, StoredField}
+import org.apache.cassandra.db.{Clustering, DecoratedKey, ReadCommand, ReadQuery, SinglePartitionReadCommand}
+import org.apache.cassandra.schema.TableMetadata
+import org.apache.lucene.document.StoredField
+import org.apache.lucene.search.{FieldComparator, ScoreDoc, SortField => LuceneSortField}
 
 import scala.jdk.CollectionConverters._
 import scala.collection.mutable
@@ -47,17 +49,117 @@ sealed abstract class IndexPostProcessor[A <: ReadQuery](service: IndexService)
     * @param search     a search defining the ordering
     * @param limit      the number of results to be returned
     * @param now        the operation time in seconds
+    * @param sortKeys   if the rows carry the sort values with which the replicas have found them
     * @return
     */
-  protected def process(partitions: PartitionIterator, search: Search, limit: Int, now: Int)
-  : PartitionIterator = {
+  protected def process(
+      partitions: PartitionIterator,
+      search: Search,
+      limit: Int,
+      now: Int,
+      sortKeys: Boolean): PartitionIterator = {
     if (search.requiresFullScan) {
-      val rows = collect(partitions)
-      if (search.requiresPostProcessing && rows.nonEmpty) {
-        return top(rows, search, limit, now)
+      val profile = service.profile(search)
+      val processed = profile.time(SearchPhase.PostProcess) {
+        if (search.requiresPostProcessing && sortKeys) {
+          merge(partitions, search, limit, now)
+        } else if (!search.usesRelevance && search.usesSorting) {
+          sorted(partitions, search, limit, now)
+        } else {
+          val rows = collect(partitions)
+          if (search.requiresPostProcessing && rows.nonEmpty) top(rows, search, limit, now)
+          else partitions
+        }
       }
+      profile.trace("Lucene coordinator profile")
+      processed
+    } else partitions
+  }
+
+  /** Takes the k best rows of the specified partition iterator according to the sort fields of the
+    * specified search, which shouldn't use relevance. The rows are streamed through a priority queue
+    * retaining only the best `limit` rows seen so far, ordered by their sort values computed without
+    * indexing them, followed by Cassandra's natural ordering. The iterator gets traversed after this
+    * operation so it can't be reused.
+    *
+    * @param partitions a partition iterator
+    * @param search     a search defining the ordering
+    * @param limit      the number of results to be returned
+    * @param now        the operation time in seconds
+    * @return the k best rows
+    */
+  private def sorted(partitions: PartitionIterator, search: Search, limit: Int, now: Int)
+  : PartitionIterator = {
+    val time = TimeCounter.start
+    val fields = search.sort.asScala.toArray
+    val queue = new TopQueue(limit, sortedRowOrdering(fields, service.metadata))
+    var count = 0
+    for (partition <- partitions.asScala) {
+      try {
+        val key = partition.partitionKey
+        while (partition.hasNext) {
+          val rowIterator = new SingleRowIterator(partition)
+          val columns = service.columnsMapper.columns(key, rowIterator.row, now)
+          val values = fields.map(_.value(service.schema, columns))
+          queue.offer(SortedRow(key, rowIterator.row.clustering, values, rowIterator))
+          count += 1
+        }
+      } finally partition.close()
+    }
+
+    // Collect and decorate with the constant score of non-relevance searches
+    val merged = queue.toList.map(_.rows.decorated(
+      row => service.expressionMapper.decorate(row, SORTED_SCORE, now)))
+
+    tracer.trace(s"Lucene post-process $count streamed rows to ${merged.size} rows")
+    logger.debug(s"Post-processed $count rows to ${merged.size} rows in $time")
+    new SimplePartitionIterator(merged)
+  }
+
+  /** Takes the k best rows of the specified partition iterator according to the sort values with
+    * which the replicas have found them, which are attached to the rows. The rows are streamed
+    * through a priority queue retaining only the best `limit` rows seen so far, compared with the
+    * same Lucene comparators used by the replicas, so their scores are kept. Rows without attached
+    * sort values go last. The iterator gets traversed after this operation so it can't be reused.
+    *
+    * @param partitions a partition iterator
+    * @param search     a search defining the ordering
+    * @param limit      the number of results to be returned
+    * @param now        the operation time in seconds
+    * @return the k best rows
+    */
+  private def merge(partitions: PartitionIterator, search: Search, limit: Int, now: Int)
+  : PartitionIterator = {
+    val time = TimeCounter.start
+    val sortFields = service.sort(search).rewrite(null).getSort
+    val scorePosition = sortFields.indexWhere(_.getType == LuceneSortField.Type.SCORE)
+    val queue = new TopQueue(limit, mergedRowOrdering(sortFields))
+    var count = 0
+    var missing = 0
+    for (partition <- partitions.asScala) {
+      try {
+        while (partition.hasNext) {
+          val rowIterator = new SingleRowIterator(partition)
+          val values = service.expressionMapper.sortKey(rowIterator.row)
+          if (values.isEmpty) missing += 1
+          queue.offer(MergedRow(values.orNull, count, rowIterator))
+          count += 1
+        }
+      } finally partition.close()
     }
-    partitions
+
+    // Collect and decorate with the scores computed by the replicas
+    val merged = queue.toList.map(merged => {
+      val score = if (scorePosition < 0 || merged.values == null) SORTED_SCORE.score
+      else merged.values(scorePosition).asInstanceOf[Float]
+      val scoreDoc = new ScoreDoc(0, score)
+      merged.rows.decorated(row => service.expressionMapper.decorate(row, scoreDoc, now))
+    })
+
+    if (missing > 0) tracer.trace(s"Lucene post-process found $missing rows without sort values")
+    tracer.trace(s"Lucene post-process merges $count rows to ${merged.size} rows")
+    logger.debug(s"Post-processed $count rows to ${merged.size} rows in $time")
+    new SimplePartitionIterator(merged)
   }
 
   /** Collects the rows of the specified partition iterator. The iterator gets traversed after this
@@ -103,7 +205,7 @@ sealed abstract class IndexPostProcessor[A <: ReadQuery](service: IndexService)
       for (id <- rows.indices) {
         val (key, rowIterator) = rows(id)
         val row = rowIterator.row
-        val doc = document(key, row, search, now)
+        val doc = service.postProcessingDocument(key, row, search, now)
         doc.add(new StoredField(ID_FIELD, id)) // Mark document
         index.add(doc)
       }
@@ -126,23 +228,6 @@ sealed abstract class IndexPostProcessor[A <: ReadQuery](service: IndexService)
 
     } finally index.close()
   }
-
-  /** Returns a [[Document]] representing the specified row with only the fields required to satisfy
-    * the specified [[Search]].
-    *
-    * @param key    a partition key
-    * @param row    a row
-    * @param search a search
-    * @return a document with just the fields required to satisfy the search
-    */
-  private def document(key: DecoratedKey, row: Row, search: Search, now: Int): Document = {
-    val document = new Document
-    val clustering = row.clustering()
-    val columns = service.columnsMapper.columns(key, row, now)
-    service.keyIndexableFields(key, clustering).foreach(document.add)
-    service.schema.postProcessingIndexableFields(columns, search).forEach(document add _)
-    document
-  }
 }
 
 /** Companion object for [[IndexPostProcessor]]. */
@@ -151,6 +236,113 @@ object IndexPostProcessor {
   val ID_FIELD = "_id"
   val FIELDS_TO_LOAD: java.util.Set[String] = Collections.singleton(ID_FIELD)
 
+  /** A row retained by the streaming post processing of sorted searches.
+    *
+    * @param key        the partition key
+    * @param clustering the clustering key
+    * @param values     the values of the search sort fields for the row
+    * @param rows       the iterator containing just the row
+    */
+  case class SortedRow(
+      key: DecoratedKey,
+      clustering: Clustering[_],
+      values: Array[Comparable[_]],
+      rows: SingleRowIterator)
+
+  /** A row retained by the merge of rows carrying the sort values computed by the replicas.
+    *
+    * @param values   the sort values with which the row has been found, or `null` if unknown
+    * @param position the position in which the row has been received
+    * @param rows     the iterator containing just the row
+    */
+  case class MergedRow(values: Array[AnyRef], position: Int, rows: SingleRowIterator)
+
+  /** Returns the ordering of the rows streamed by the post processing of sorted searches, which is
+    * the specified sort fields followed by the partitioning token, the partition key and the
+    * clustering key, the same as the searches of the index do.
+    *
+    * @param fields   the sort fields
+    * @param metadata the table metadata
+    * @return the ordering of sorted rows
+    */
+  def sortedRowOrdering(fields: Array[SortField], metadata: TableMetadata): Ordering[SortedRow] = {
+    val keyType = metadata.partitionKeyType
+    val clusteringComparator = metadata.comparator
+    new Ordering[SortedRow] {
+      override def compare(a: SortedRow, b: SortedRow): Int = {
+        for (i <- fields.indices) {
+          val comparison = fields(i).compare(a.values(i), b.values(i))
+          if (comparison != 0) return comparison
+        }
+        val comparison = a.key.getToken.compareTo(b.key.getToken)
+        if (comparison != 0) return comparison
+        val keyComparison = keyType.compare(a.key.getKey, b.key.getKey)
+        if (keyComparison != 0) return keyComparison
+        clusteringComparator.compare(a.clustering, b.clustering)
+      }
+    }
+  }
+
+  /** Returns the ordering of the rows merged from the sort values attached by the replicas, using
+    * the comparators of the specified Lucene sort fields with the same semantics as Lucene's merge
+    * of top documents. Rows without sort values go last, in the order they have been received.
+    *
+    * @param sortFields the Lucene sort fields with which the replicas have found the rows
+    * @return the ordering of merged rows
+    */
+  def mergedRowOrdering(sortFields: Array[LuceneSortField]): Ordering[MergedRow] = {
+    val comparators = sortFields.indices.map(i => sortFields(i).getComparator(1, i)).toArray
+    val reverseMul = sortFields.map(field => if (field.getReverse) -1 else 1)
+    new Ordering[MergedRow] {
+      override def compare(a: MergedRow, b: MergedRow): Int = {
+        if (a.values == null || b.values == null) {
+          if (a.values != null) return -1
+          if (b.values != null) return 1
+        } else {
+          for (i <- comparators.indices) {
+            val comparator = comparators(i).asInstanceOf[FieldComparator[AnyRef]]
+            val comparison = reverseMul(i) * comparator.compareValues(a.values(i), b.values(i))
+            if (comparison != 0) return comparison
+          }
+        }
+        Integer.compare(a.position, b.position)
+      }
+    }
+  }
+
+  /** A priority queue retaining only the best `limit` elements offered to it, according to the
+    * specified ordering, so the rows can be streamed without collecting all of them.
+    *
+    * @param limit    the max number of elements to be retained
+    * @param ordering the ordering of the elements, where the best elements go first
+    */
+  class TopQueue[T](limit: Int, ordering: Ordering[T]) {
+
+    private[this] val queue =
+      new java.util.PriorityQueue[T](Math.min(limit, 1024) + 1, ordering.reverse)
+
+    /** Retains the specified element if it is among the best `limit` elements offered so far.
+      *
+      * @param element the element to be offered
+      */
+    def offer(element: T): Unit = {
+      if (queue.size < limit) queue.add(element)
+      else if (limit > 0 && ordering.lt(element, queue.peek)) {
+        queue.poll
+        queue.add(element)
+      }
+    }
+
+    /** Returns the retained elements in order.
+      *
+      * @return the best elements offered so far
+      */
+    def toList: List[T] = queue.asScala.toList.sorted(ordering)
+  }
+
+  /** The score of the rows of searches not using relevance, as Lucene's match all query gives. */
+  val SORTED_SCORE = new ScoreDoc(0, 1.0f)
+
 }
 
 /** An [[IndexPostProcessor]] for [[ReadCommand]]s.
@@ -165,7 +357,8 @@ class ReadCommandPostProcessor(service: IndexService)
   override def apply(partitions: PartitionIterator, command: ReadCommand): PartitionIterator = {
     if (!partitions.hasNext || command.isInstanceOf[SinglePartitionReadCommand]) return partitions
     val search = service.expressionMapper.search(command)
-    process(partitions, search, command.limits.count, command.nowInSec)
+    val sortKeys = service.expressionMapper.sortKeys(command)
+    process(partitions, search, command.limits.count, command.nowInSec, sortKeys)
   }
 
 }
@@ -180,8 +373,10 @@ class GroupPostProcessor(service: IndexService) extends IndexPostProcessor[Group
   /** @inheritdoc */
   override def apply(partitions: PartitionIterator, group: Group): PartitionIterator = {
     if (!partitions.hasNext || group.queries.size <= 1) return partitions
-    val search = service.expressionMapper.search(group.queries.get(0))
-    process(partitions, search, group.limits.count, group.nowInSec)
+    val command = group.queries.get(0)
+    val search = service.expressionMapper.search(command)
+    val sortKeys = service.expressionMapper.sortKeys(command)
+    process(partitions, search, group.limits.count, group.nowInSec, sortKeys)
   }
 
 }
\ No newline at end of file
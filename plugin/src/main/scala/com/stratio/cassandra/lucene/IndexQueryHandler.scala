@@ -17,8 +17,9 @@ package com.stratio.cassandra.lucene
 
 import java.lang.reflect.{Field, Method, Modifier}
 import java.nio.ByteBuffer
+import java.util.EnumSet
 import com.stratio.cassandra.lucene.IndexQueryHandler._
-import com.stratio.cassandra.lucene.partitioning.Partitioner
+import com.stratio.cassandra.lucene.search.Search
 import com.stratio.cassandra.lucene.util.{Logging, TimeCounter}
 import org.apache.cassandra.cql3._
 import org.apache.cassandra.cql3.selection.Selection.Selectors
@@ -28,8 +29,11 @@ import org.apache.cassandra.cql3.statements.{BatchStatement, SelectStatement}
 import org.apache.cassandra.db.SinglePartitionReadCommand.Group
 import org.apache.cassandra.db._
 import org.apache.cassandra.db.aggregation.AggregationSpecification
+import org.apache.cassandra.db.filter.ColumnFilter
 import org.apache.cassandra.db.filter.RowFilter.{CustomExpression, Expression}
+import org.apache.cassandra.db.guardrails.Guardrails
 import org.apache.cassandra.db.partitions.PartitionIterator
+import org.apache.cassandra.db.rows.RowIterator
 import org.apache.cassandra.exceptions.InvalidRequestException
 import org.apache.cassandra.service.{ClientState, LuceneStorageProxy, QueryState}
 import org.apache.cassandra.transport.messages.ResultMessage
@@ -171,9 +175,6 @@ class IndexQueryHandler extends QueryHandler with Logging {
     val (expression, index) = expressions.head
     val search = index.validate(expression)
 
-    // Get partitioner
-    val partitioner = index.service.partitioner
-
     // Get paging info
     val limit = select.getLimit(options)
     val page = if (select.getSelection.isAggregate && options.getPageSize <= 0)
@@ -181,17 +182,173 @@ class IndexQueryHandler extends QueryHandler with Logging {
 
     // Take control of paging if there is paging and the query requires post processing
     if (search.requiresPostProcessing && page > 0 && page < limit) {
-      executeSortedLuceneQuery(select, state, options, partitioner, queryStartNanoTime)
+      executeSortedLuceneQuery(select, state, options, index.service, search, queryStartNanoTime)
+    } else if (isIndexOnly(select, options, index, search)) {
+      executeIndexOnlyQuery(select, state, options, queryStartNanoTime)
     } else {
       execute(select, state, options, queryStartNanoTime)
     }
   }
 
+  /** Returns if the specified query can be answered with rows built from the index, without reading
+    * them from the SSTables. That is the case of count queries not depending on any column when the
+    * index allows both index-only counts and the compact expressions understood by the upgraded
+    * replicas, and of covering searches where all the selected columns are covered by the index doc
+    * values when the index allows the compact expressions too. It also requires that there is no
+    * grouping nor any other filter than the search, that the search doesn't need a full scan, that
+    * no write times nor TTLs are selected, and that there are no digest comparisons nor read repairs
+    * that could propagate the built rows. Tables with static columns are always read from the
+    * SSTables, because their static rows aren't indexed, and partitions with only a static row
+    * would be missing from the built rows.
+    *
+    * @param select  the select statement
+    * @param options the query options
+    * @param index   the index targeted by the search
+    * @param search  the search
+    * @return `true` if the query can be answered from the index, `false` otherwise
+    */
+  def isIndexOnly(
+      select: SelectStatement,
+      options: QueryOptions,
+      index: Index,
+      search: Search): Boolean = {
+    val service = index.service
+    val consistency = options.getConsistency
+    val selection = select.getSelection
+    val selectors = selection.newSelectors(options)
+    val aggregation = select.getAggregationSpec(options)
+    val columns = selection.getColumns.asScala.filterNot(_.isPrimaryKeyColumn)
+    val count = service.options.indexOnlyCount && service.options.compactExpressions &&
+      selection.isAggregate && columns.isEmpty
+    val covering = search.covering && service.options.compactExpressions &&
+      !selectors.collectTimestamps && !selectors.collectTTLs &&
+      columns.forall(column => column.isRegular && service.coveringMapper.covers(column))
+    (count || covering) && !select.table.hasStaticColumns &&
+      (consistency == ConsistencyLevel.ONE || consistency == ConsistencyLevel.LOCAL_ONE) &&
+      (aggregation == null || aggregation == AggregationSpecification.AGGREGATE_EVERYTHING) &&
+      select.getRowFilter(options).getExpressions.size == 1 &&
+      !search.requiresFullScan
+  }
+
+  /** Executes the specified query fetching only the selected columns and marking its commands as
+    * index only, so the replicas build the rows from the index without reading them from the
+    * SSTables. Aggregate queries are fetched and aggregated page by page, as Cassandra does with
+    * any other aggregate query. Other queries are paged with the regular Cassandra paging state.
+    * The query runs with the caller client state and under the same consistency guardrails and read
+    * size thresholds as any other select.
+    *
+    * @param select             the select statement
+    * @param state              the query state
+    * @param options            the query options
+    * @param queryStartNanoTime the query start time
+    * @return the selected rows
+    */
+  def executeIndexOnlyQuery(
+      select: SelectStatement,
+      state: QueryState,
+      options: QueryOptions,
+      queryStartNanoTime: Long): Rows = {
+
+    // Check consistency level
+    val consistency = options.getConsistency
+    checkNotNull(consistency, "Invalid empty consistency level")
+    consistency.validateForRead()
+    Guardrails.readConsistencyLevels.guard(EnumSet.of(consistency), state.getClientState)
+
+    val now = FBUtilities.nowInSeconds
+    val limit = select.getLimit(options)
+    val selection = select.getSelection
+    val aggregate = selection.isAggregate
+    val page = if (aggregate && options.getPageSize <= 0)
+      SelectStatement.DEFAULT_PAGE_SIZE else options.getPageSize
+    val aggregation = select.getAggregationSpec(options)
+
+    // Fetch only the selected columns, which are all covered by the index
+    val columns = RegularAndStaticColumns.builder
+    selection.getColumns.forEach(column => if (!column.isPrimaryKeyColumn) columns.add(column))
+    val filter = ColumnFilter.selection(columns.build)
+    val query = select.getQuery(options, state.getClientState, filter,
+      now, limit, select.getPerPartitionLimit(options), page, aggregation)
+    if (options.isReadThresholdsEnabled) query.trackWarnings()
+    IndexPagingState.indexOnly(query)
+
+    // Read data
+    val pager = query.getPager(if (aggregate) null else options.getPagingState,
+      options.getProtocolVersion)
+    val data = if (aggregate) new PartitionIterator {
+      private[this] var current: PartitionIterator = _
+
+      override def hasNext: Boolean = {
+        while ((current == null || !current.hasNext) && !pager.isExhausted) {
+          if (current != null) current.close()
+          current = pager.fetchPage(page, consistency, state.getClientState, queryStartNanoTime)
+        }
+        current != null && current.hasNext
+      }
+
+      override def next(): RowIterator = {
+        if (!hasNext) throw new NoSuchElementException
+        current.next()
+      }
+
+      override def close(): Unit = if (current != null) current.close()
+    } else if (page > 0) {
+      pager.fetchPage(page, consistency, state.getClientState, queryStartNanoTime)
+    } else {
+      query.execute(consistency, state.getClientState, queryStartNanoTime)
+    }
+
+    try {
+      val rows = processResults.invoke(
+        select,
+        data,
+        options,
+        selection.newSelectors(options),
+        now.asInstanceOf[AnyRef],
+        limit.asInstanceOf[AnyRef],
+        aggregation
+      ).asInstanceOf[Rows]
+      if (!aggregate && page > 0 && !pager.isExhausted) {
+        rows.result.metadata.setHasMorePages(pager.state)
+      }
+      rows
+    } finally data.close()
+  }
+
+  /** Returns if the replicas can attach to the rows of the specified query the sort values with
+    * which they have been found, so the post processing can merge them without searching them
+    * again. That requires that the sort values can be held by the fetched base column of the index,
+    * that the query is post processed, that the index allows the compact expressions understood by
+    * the upgraded replicas, and that there are no digest comparisons nor read repairs that could
+    * propagate the attached values.
+    *
+    * @param query       the query
+    * @param consistency the query consistency level
+    * @param service     the service of the queried index
+    * @param filter      the fetched columns
+    * @return `true` if the rows of the query can carry their sort values, `false` otherwise
+    */
+  def attachesSortKeys(
+      query: ReadQuery,
+      consistency: ConsistencyLevel,
+      service: IndexService,
+      filter: ColumnFilter): Boolean = {
+    val postProcessed = query match {
+      case group: Group => group.queries.size > 1
+      case _: PartitionRangeReadCommand => true
+      case _ => false
+    }
+    postProcessed && service.options.compactExpressions &&
+      (consistency == ConsistencyLevel.ONE || consistency == ConsistencyLevel.LOCAL_ONE) &&
+      service.expressionMapper.columnDefinition.exists(filter.fetches)
+  }
+
   def executeSortedLuceneQuery(
       select: SelectStatement,
       state: QueryState,
       options: QueryOptions,
-      partitioner: Partitioner,
+      service: IndexService,
+      search: Search,
       queryStartNanoTime: Long): Rows = {
 
     // Check consistency level
@@ -210,12 +367,18 @@ class IndexQueryHandler extends QueryHandler with Logging {
     val remaining = Math.min(page, pagingState.remaining)
     val query = select.getQuery(options, ClientState.forInternalCalls(), filter,
       now, remaining, userPerPartitionLimit, page, select.getAggregationSpec(options))
-    pagingState.rewrite(query)
+    pagingState.rewrite(query, service.options.compactExpressions)
+    if (attachesSortKeys(query, consistency, service, filter)) {
+      IndexPagingState.sortKeys(query)
+    }
 
     // Read data
     val data = query match {
       case group: Group if group.queries.size > 1 =>
         LuceneStorageProxy.read(group, consistency, queryStartNanoTime)
+      case command: PartitionRangeReadCommand =>
+        LuceneStorageProxy.read(command, consistency, queryStartNanoTime,
+          service.options.rangeParallelism, service.options.rangeMaxRows)
       case _ => query.execute(consistency, state.getClientState, queryStartNanoTime)
     }
 
@@ -223,7 +386,7 @@ class IndexQueryHandler extends QueryHandler with Logging {
 
     // Process data updating paging state
     try {
-      val processedData = pagingState.update(query, data, consistency, partitioner)
+      val processedData = pagingState.update(query, data, consistency, service, search)
       val rows = processResults.invoke(
         select,
         processedData,
@@ -233,7 +396,8 @@ class IndexQueryHandler extends QueryHandler with Logging {
         page.asInstanceOf[AnyRef],
         select.getAggregationSpec(options)
       ).asInstanceOf[Rows]
-      rows.result.metadata.setHasMorePages(pagingState.toPagingState)
+      rows.result.metadata.setHasMorePages(
+        pagingState.toPagingState(service.options.compactExpressions))
       rows
     } finally {
       if (data != null) data.close()
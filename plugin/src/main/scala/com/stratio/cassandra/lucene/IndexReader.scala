@@ -16,31 +16,52 @@
 package com.stratio.cassandra.lucene
 
 import com.stratio.cassandra.lucene.index.DocumentIterator
+import com.stratio.cassandra.lucene.mapping.ExpressionMapper
+import com.stratio.cassandra.lucene.util.SearchPhase
 import org.apache.cassandra.db._
 import org.apache.cassandra.db.filter.ClusteringIndexFilter
 import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator
-import org.apache.cassandra.db.rows.UnfilteredRowIterator
+import org.apache.cassandra.db.rows.{Row, UnfilteredRowIterator}
+import org.apache.cassandra.db.transform.Transformation
 import org.apache.cassandra.schema.TableMetadata
+import org.apache.lucene.search.{FieldDoc, ScoreDoc}
 
 /** [[UnfilteredPartitionIterator]] for retrieving rows from a [[DocumentIterator]].
   *
-  * @param command    the read command
-  * @param table      the base table
-  * @param controller the read execution controller
-  * @param documents  the documents iterator
+  * Partitions can be read in batches of several keys looked ahead from the documents iterator.
+  * The reads of each batch are issued in token order, so the random lookups of the partitions in
+  * the SSTables are done in disk order, and the resulting row iterators are buffered to be returned
+  * in the original order.
+  *
+  * If the coordinator has requested the sort keys of the rows, the live rows are decorated with the
+  * sort values of their documents, so the coordinator can merge them without searching them again.
+  *
+  * @param command      the read command
+  * @param table        the base table
+  * @param controller   the read execution controller
+  * @param documents    the documents iterator
+  * @param prefetchSize the max number of partition reads to be issued in each batch
+  * @param sortKeys     the mapper attaching the sort values to the rows, if they are requested
   * @author Andres de la Pena `adelapena@stratio.com`
   */
 abstract class IndexReader(
     command: ReadCommand,
     table: ColumnFamilyStore,
     controller: ReadExecutionController,
-    documents: DocumentIterator)
+    documents: DocumentIterator,
+    prefetchSize: Int = 1,
+    sortKeys: Option[ExpressionMapper] = None)
   extends UnfilteredPartitionIterator {
 
   private lazy val metadataVal: TableMetadata = table.metadata.get()
 
   protected var nextData: Option[UnfilteredRowIterator] = None
 
+  private[this] val prefetched = new java.util.ArrayDeque[UnfilteredRowIterator]
+
+  private[this] val sortValues =
+    new java.util.HashMap[DecoratedKey, java.util.TreeMap[Clustering[_], Array[AnyRef]]]
+
   /** @inheritdoc */
   override def metadata: TableMetadata = {
     metadataVal
@@ -66,20 +87,102 @@ abstract class IndexReader(
 
   /** @inheritdoc */
   override def close() = {
-    try nextData.foreach(_.close()) finally documents.close()
+    try {
+      nextData.foreach(_.close())
+      while (!prefetched.isEmpty) prefetched.poll.close()
+    } finally {
+      documents.close()
+      documents.profile.trace("Lucene search profile")
+      documents.profile.complete()
+    }
   }
 
   protected def prepareNext(): Boolean
 
   protected def read(key: DecoratedKey, filter: ClusteringIndexFilter): UnfilteredRowIterator = {
-    SinglePartitionReadCommand.create(
+    documents.profile.time(SearchPhase.Read)(SinglePartitionReadCommand.create(
       metadataVal,
       command.nowInSec,
       command.columnFilter,
       command.rowFilter,
       command.limits,
       key,
-      filter).queryMemtableAndDisk(table, controller)
+      filter).queryMemtableAndDisk(table, controller))
+  }
+
+  /** Returns the max number of partition reads to be issued in each batch.
+    *
+    * @return the prefetch size, always strictly positive
+    */
+  protected def batchSize: Int = Math.max(prefetchSize, 1)
+
+  /** Returns if there are prefetched partitions pending to be returned.
+    *
+    * @return `true` if there are prefetched partitions, `false` otherwise
+    */
+  protected def hasPrefetched: Boolean = !prefetched.isEmpty
+
+  /** Issues the specified partition reads in token order and buffers the results in the specified
+    * order, to be retrieved with [[nextPrefetched]].
+    *
+    * @param reads the partition keys and clustering filters to be read
+    */
+  protected def prefetch(reads: Seq[(DecoratedKey, ClusteringIndexFilter)]) {
+    val results = new Array[UnfilteredRowIterator](reads.size)
+    try {
+      reads.indices
+        .sortWith((i, j) => reads(i)._1.compareTo(reads(j)._1) < 0)
+        .foreach(i => results(i) = read(reads(i)._1, reads(i)._2))
+    } catch {
+      case e: Throwable =>
+        results.filter(_ != null).foreach(_.close())
+        throw e
+    }
+    results.foreach(prefetched.add)
+  }
+
+  /** Returns the next prefetched partition, if any. The live rows returned by the partition are
+    * reported to the documents iterator as they are read, to track the yield of the documents.
+    *
+    * @return the next prefetched partition
+    */
+  protected def nextPrefetched(): Option[UnfilteredRowIterator] = Option(prefetched.poll).map {
+    data =>
+      val key = data.partitionKey
+      val mapper = sortKeys.filter(_ => sortValues.containsKey(key))
+      Transformation.apply(data, new Transformation[UnfilteredRowIterator] {
+        override def applyToRow(row: Row): Row = {
+          if (row.hasLiveData(command.nowInSec, metadataVal.enforceStrictLiveness)) {
+            documents.collected(1)
+          }
+          mapper.map(decorate(_, key, row)).getOrElse(row)
+        }
+      })
+  }
+
+  /** Keeps the sort values of the document identifying the specified row, if the coordinator has
+    * requested them, to be attached to the row when it is read.
+    *
+    * @param key        the partition key
+    * @param clustering the clustering key
+    * @param score      the score of the document, containing the sort values
+    */
+  protected def found(key: DecoratedKey, clustering: Clustering[_], score: ScoreDoc): Unit = {
+    if (sortKeys.isDefined) score match {
+      case fieldDoc: FieldDoc => sortValues
+        .computeIfAbsent(key, _ => new java.util.TreeMap(metadataVal.comparator))
+        .put(clustering, fieldDoc.fields)
+      case _ =>
+    }
+  }
+
+  private[this] def decorate(mapper: ExpressionMapper, key: DecoratedKey, row: Row): Row = {
+    val clusterings = sortValues.get(key)
+    if (clusterings == null) return row
+    val values = clusterings.remove(row.clustering)
+    if (clusterings.isEmpty) sortValues.remove(key)
+    if (values == null || !row.hasLiveData(command.nowInSec, metadataVal.enforceStrictLiveness)) row
+    else mapper.withSortKey(row, values)
   }
 
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene
+
+import com.stratio.cassandra.lucene.index.DocumentIterator
+import org.apache.cassandra.db._
+import org.apache.cassandra.db.filter.ClusteringIndexNamesFilter
+import org.apache.cassandra.db.partitions.PartitionUpdate
+import org.apache.cassandra.db.rows.{BTreeRow, Row}
+import org.apache.cassandra.schema.ColumnMetadata
+import org.apache.cassandra.utils.btree.{BTree, BTreeSet}
+import org.apache.lucene.document.Document
+
+/** [[IndexReader]] building the rows identified by a [[DocumentIterator]] from the primary keys and
+  * doc values stored in the index, without reading them from the SSTables. The rows only contain
+  * the specified covered columns, and the timestamp of their liveness info and cells is the command
+  * time, so they can't be reconciled with the rows read from other replicas.
+  *
+  * A document without the doc values of a covered column can't tell a null value apart from a
+  * value that couldn't be indexed, so the partitions having any such document are read from the
+  * SSTables instead, keeping only the clusterings matched by the search.
+  *
+  * @param service    the index service
+  * @param command    the read command
+  * @param table      the base table
+  * @param controller the read execution controller
+  * @param documents  the documents iterator, loading the doc values of the covered columns
+  * @param columns    the covered regular columns to be read from the documents
+  */
+class IndexReaderIndexOnly(
+    service: IndexService,
+    command: ReadCommand,
+    table: ColumnFamilyStore,
+    controller: ReadExecutionController,
+    documents: DocumentIterator,
+    columns: List[ColumnMetadata])
+  extends IndexReader(command, table, controller, documents) {
+
+  private[this] val timestamp = command.nowInSec * 1000000L
+  private[this] val liveness = LivenessInfo.create(timestamp, command.nowInSec)
+  private[this] val regulars = {
+    val builder = RegularAndStaticColumns.builder
+    columns.foreach(builder.add)
+    builder.build
+  }
+  private[this] var nextDoc: Document = _
+
+  private[this] val order = metadata.comparator.asInstanceOf[java.util.Comparator[Clustering[_]]]
+
+  /** Returns the row of the next document, or none if any of the covered columns is missing. */
+  private[this] def row(clustering: Clustering[_]): Option[Row] = {
+    if (columns.isEmpty) return Some(BTreeRow.noCellLiveRow(clustering, liveness))
+    val cells = columns.flatMap(service.coveringMapper.cell(nextDoc, _, timestamp))
+    if (cells.size < columns.size) return None
+    val builder = BTreeRow.sortedBuilder
+    builder.newRow(clustering)
+    builder.addPrimaryKeyLivenessInfo(liveness)
+    cells.foreach(builder.addCell)
+    Some(builder.build)
+  }
+
+  /** @inheritdoc */
+  override protected def prepareNext(): Boolean = {
+    while (nextData.isEmpty && (hasPrefetched || nextDoc != null || documents.hasNext)) {
+      if (hasPrefetched) {
+        nextPrefetched().foreach(data => if (data.isEmpty) data.close() else nextData = Some(data))
+      } else {
+        if (nextDoc == null) nextDoc = documents.next._1
+        val key = service.decoratedKey(nextDoc)
+        val builder = new PartitionUpdate.Builder(metadata, key, regulars, 1)
+        val clusterings = new java.util.ArrayList[Clustering[_]]
+        var covered = true
+        while (nextDoc != null && key.getKey == service.decoratedKey(nextDoc).getKey) {
+          val clustering = service.clustering(nextDoc)
+          if (command.selectsKey(key) && command.selectsClustering(key, clustering)) {
+            clusterings.add(clustering)
+            if (covered) row(clustering) match {
+              case Some(row) => builder.add(row)
+              case None => covered = false
+            }
+          }
+          nextDoc = if (documents.hasNext) documents.next._1 else null
+        }
+        if (!clusterings.isEmpty) {
+          if (covered) {
+            documents.collected(clusterings.size)
+            nextData = Some(builder.build.unfilteredIterator)
+          } else {
+            clusterings.sort(order)
+            val filter = new ClusteringIndexNamesFilter(BTreeSet.wrap(BTree.build(clusterings), order), false)
+            prefetch(Seq((key, filter)))
+          }
+        }
+      }
+    }
+    nextData.isDefined
+  }
+
+}
@@ -17,6 +17,9 @@ package com.stratio.cassandra.lucene
 
 import com.stratio.cassandra.lucene.index.DocumentIterator
 import org.apache.cassandra.db._
+import org.apache.cassandra.db.filter.ClusteringIndexFilter
+
+import scala.collection.mutable
 
 /** [[IndexReader]] for skinny rows.
   *
@@ -33,15 +36,33 @@ class IndexReaderSkinny(
     table: ColumnFamilyStore,
     controller: ReadExecutionController,
     documents: DocumentIterator)
-  extends IndexReader(command, table, controller, documents) {
+  extends IndexReader(
+    command,
+    table,
+    controller,
+    documents,
+    service.options.prefetchSize,
+    Some(service.expressionMapper).filter(_.sortKeys(command))) {
+
+  /** Returns the partition reads for the next documents, looking ahead no further than the
+    * current page of documents.
+    */
+  private[this] def reads(): Seq[(DecoratedKey, ClusteringIndexFilter)] = {
+    val reads = mutable.ListBuffer[(DecoratedKey, ClusteringIndexFilter)]()
+    do {
+      val (document, score) = documents.next
+      val key = service.decoratedKey(document)
+      found(key, Clustering.EMPTY, score)
+      reads += ((key, command.clusteringIndexFilter(key)))
+    } while (reads.size < batchSize && !documents.needsFetch && documents.hasNext)
+    reads.toList
+  }
 
   /** @inheritdoc */
   override protected def prepareNext(): Boolean = {
-    while (nextData.isEmpty && documents.hasNext) {
-      val nextDoc = documents.next
-      val key = service.decoratedKey(nextDoc._1)
-      val filter = command.clusteringIndexFilter(key)
-      nextData = Some(read(key, filter))
+    while (nextData.isEmpty && (hasPrefetched || documents.hasNext)) {
+      if (!hasPrefetched) prefetch(reads())
+      nextData = nextPrefetched()
       nextData.foreach(d => if (d.isEmpty) d.close())
     }
     nextData.isDefined
@@ -19,8 +19,12 @@ import java.{util => java}
 
 import com.stratio.cassandra.lucene.index.DocumentIterator
 import org.apache.cassandra.db._
-import org.apache.cassandra.db.filter.ClusteringIndexNamesFilter
+import org.apache.cassandra.db.filter.{ClusteringIndexFilter, ClusteringIndexNamesFilter}
+import org.apache.cassandra.utils.btree.{BTree, BTreeSet}
 import org.apache.lucene.document.Document
+import org.apache.lucene.search.ScoreDoc
+
+import scala.collection.mutable
 
 /** [[IndexReader]] for wide rows.
   *
@@ -37,56 +41,77 @@ class IndexReaderWide(
     table: ColumnFamilyStore,
     controller: ReadExecutionController,
     documents: DocumentIterator)
-  extends IndexReader(command, table, controller, documents) {
+  extends IndexReader(
+    command,
+    table,
+    controller,
+    documents,
+    service.options.prefetchSize,
+    Some(service.expressionMapper).filter(_.sortKeys(command))) {
 
   private[this] val comparator = service.metadata.comparator
+  private[this] val order = comparator.asInstanceOf[java.Comparator[Clustering[_]]]
   private[this] var nextDoc: Document = _
+  private[this] var nextScore: ScoreDoc = _
+  private[this] val clusterings = new java.ArrayList[Clustering[_]]
+
+  private[this] def advance(): Unit = {
+    val (document, score) = documents.next
+    nextDoc = document
+    nextScore = score
+  }
 
+  /** Returns the clusterings of the consecutive documents of the specified partition, starting at
+    * the next document, for as long as they are in clustering order, which is always the case for
+    * searches sorted by primary key. The documents are compared with the partition by their raw key
+    * bytes, and the clusterings are collected in order, so they don't need to be sorted. A partition
+    * is never split at the end of a page of documents, to avoid reading it again for the next page.
+    */
   private[this] def readClusterings(key: DecoratedKey): java.NavigableSet[Clustering[_]] = {
-    val clusterings = new java.TreeSet[Clustering[_]](comparator)
-    var clustering = service.clustering(nextDoc)
+    clusterings.clear()
+    val selectsKey = command.selectsKey(key)
     var lastClustering: Clustering[_] = null
     var continue = true
-    while (continue && nextDoc != null && key.getKey == service.decoratedKey(nextDoc).getKey &&
-      (lastClustering == null || comparator.compare(lastClustering, clustering) < 0)) {
-      if (command.selectsKey(key) && command.selectsClustering(key, clustering)) {
-        lastClustering = clustering
-        clusterings.add(clustering)
-      }
-      if (documents.hasNext) {
-        nextDoc = documents.next._1
-        clustering = service.clustering(nextDoc)
+    while (continue && nextDoc != null && service.partitionMapper.hasKey(nextDoc, key)) {
+      val clustering = service.clustering(nextDoc)
+      if (lastClustering != null && comparator.compare(lastClustering, clustering) >= 0) {
+        continue = false
+      } else {
+        if (selectsKey && command.selectsClustering(key, clustering)) {
+          lastClustering = clustering
+          clusterings.add(clustering)
+          found(key, clustering, nextScore)
+        }
+        if (documents.hasNext) advance() else nextDoc = null
       }
-      else nextDoc = null
-      continue = !documents.needsFetch
     }
-    clusterings
+    BTreeSet.wrap(BTree.build(clusterings), order)
+  }
+
+  /** Returns the partition reads for the next documents, grouping the documents of the same
+    * partition and looking ahead no further than the current page of documents.
+    */
+  private[this] def reads(): Seq[(DecoratedKey, ClusteringIndexFilter)] = {
+    val reads = mutable.ListBuffer[(DecoratedKey, ClusteringIndexFilter)]()
+    do {
+      if (nextDoc == null) advance()
+      val key = service.decoratedKey(nextDoc)
+      val clusterings = readClusterings(key)
+      if (!clusterings.isEmpty) reads += ((key, new ClusteringIndexNamesFilter(clusterings, false)))
+    } while (reads.size < batchSize && !documents.needsFetch &&
+      (nextDoc != null || documents.hasNext))
+    reads.toList
   }
 
   /** @inheritdoc */
   override protected def prepareNext(): Boolean = {
-
-    if (nextData.isDefined) return true
-
-    if (nextDoc == null) {
-      if (!documents.hasNext) return false
-      nextDoc = documents.next._1
+    while (nextData.isEmpty) {
+      if (!hasPrefetched) {
+        if (nextDoc == null && !documents.hasNext) return false
+        prefetch(reads())
+      }
+      nextPrefetched().foreach(data => if (data.isEmpty) data.close() else nextData = Some(data))
     }
-
-    val key = service.decoratedKey(nextDoc)
-    val clusterings = readClusterings(key)
-
-    if (clusterings.isEmpty) return prepareNext()
-
-    val filter = new ClusteringIndexNamesFilter(clusterings, false)
-    nextData = Some(read(key, filter))
-
-    nextData.foreach(
-      data => if (data.isEmpty) {
-        data.close()
-        return prepareNext()
-      })
-
     true
   }
 
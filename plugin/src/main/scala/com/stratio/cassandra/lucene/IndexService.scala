@@ -16,11 +16,19 @@
 package com.stratio.cassandra.lucene
 
 import java.lang.management.ManagementFactory
+import java.nio.file.{Files, Path}
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicLong}
+import java.util.concurrent.locks.ReentrantReadWriteLock
 
 import javax.management.{JMException, ObjectName}
-import com.stratio.cassandra.lucene.index.{DocumentIterator, PartitionedIndex}
+import com.stratio.cassandra.lucene.IndexService._
+import com.stratio.cassandra.lucene.index.{DocumentIterator, PartitionedIndex, RAMIndex, SegmentFilterCache}
 import com.stratio.cassandra.lucene.mapping._
+import com.stratio.cassandra.lucene.partitioning.Partitioner
 import com.stratio.cassandra.lucene.search.Search
+import com.stratio.cassandra.lucene.util.SearchPhase.{Build, Parse}
 import com.stratio.cassandra.lucene.util._
 import org.apache.cassandra.config.DatabaseDescriptor
 import org.apache.cassandra.db._
@@ -31,12 +39,14 @@ import org.apache.cassandra.index.transactions.IndexTransaction
 import org.apache.cassandra.schema.{ColumnMetadata, IndexMetadata}
 import org.apache.cassandra.utils.FBUtilities
 import org.apache.cassandra.utils.concurrent.OpOrder
-import org.apache.lucene.document.Document
-import org.apache.lucene.index.{IndexableField, Term}
-import org.apache.lucene.search.{Query, Sort, SortField}
+import org.apache.lucene.document.{Document, StoredField}
+import org.apache.commons.io.FileUtils
+import org.apache.lucene.index.{DocValues, IndexableField, LeafReader, Term}
+import org.apache.lucene.search.{FieldDoc, MatchAllDocsQuery, Query, Sort, SortField}
 
 import scala.jdk.CollectionConverters._
 import scala.collection.mutable
+import scala.util.Try
 
 /** Lucene index service provider.
   *
@@ -68,21 +78,31 @@ abstract class IndexService(
 
   // Setup mapping
   val tokenMapper = new TokenMapper
-  val partitionMapper = new PartitionMapper(metadata)
+  val partitionMapper = new PartitionMapper(metadata, options.storedKeys)
   val columnsMapper = new ColumnsMapper(schema, metadata)
-  val expressionMapper = ExpressionMapper(metadata, indexMetadata)
+  val coveringMapper = new CoveringMapper(schema, metadata)
+  val searchCache = new SearchCache(schema, options.searchCacheMB)
+  val expressionMapper = ExpressionMapper(metadata, indexMetadata, searchCache)
 
-  // Setup FS index and write queue
+  // Setup FS index and write queue, sharing the filter cache across partitioning layouts
   val queue = TaskQueue.build(options.indexingThreads, options.indexingQueuesSize)
-  val partitioner = options.partitioner
-  val lucene = new PartitionedIndex(partitioner.numPartitions,
-    idxName,
-    options.path,
-    options.schema.analyzer,
-    options.refreshSeconds,
-    options.ramBufferMB,
-    options.maxMergeMB,
-    options.maxCachedMB)
+  val filterCache = new SegmentFilterCache(options.filterCacheMB)
+  private[this] val abortedSearches = new AtomicLong
+  private[this] val searchMetrics = new SearchMetrics(ksName, cfName, idxName)
+  private[this] val slowSearchLog =
+    new SlowSearchLog(qualifiedName, options.slowSearchMs, options.slowSearchLuceneMs)
+  private[this] val sortedSearches =
+    new SearchLimiter("sorted", options.maxSortedSearches, options.maxQueuedSortedSearches)
+  private[this] val filterSearches =
+    new SearchLimiter("filter", options.maxFilterSearches, options.maxQueuedFilterSearches)
+  @volatile var partitioner = options.partitioner
+  @volatile var lucene = index(partitioner, options.path, options.hotPaths, options.coldPaths)
+  @volatile private[this] var layout = options.layout
+
+  // Setup online repartitioning, guarding the switch between partitioning layouts
+  private[this] val layoutLock = new ReentrantReadWriteLock(true)
+  private[this] val repartitionLock = new Object
+  @volatile private[this] var repartitioning: Option[(Partitioner, RepartitionLog)] = None
 
   // Delay JMX MBean creation
   var mBean: ObjectName = _
@@ -90,13 +110,50 @@ abstract class IndexService(
   // Setup indexing read-before-write lock provider
   val readBeforeWriteLocker = new Locker(DatabaseDescriptor.getConcurrentWriters * 128)
 
+  /** Returns a new [[PartitionedIndex]] with the specified partitioning and location.
+    *
+    * @param partitioner the index partitioner
+    * @param path        the directory path
+    * @param hotPaths    the directory paths across which the partitions are spread
+    * @param coldPaths   the directory paths for large merged segments
+    * @return a new partitioned index
+    */
+  private[this] def index(
+      partitioner: Partitioner,
+      path: Path,
+      hotPaths: List[Path],
+      coldPaths: List[Path]): PartitionedIndex = {
+    new PartitionedIndex(partitioner.numPartitions,
+      idxName,
+      path,
+      options.schema.analyzer,
+      options.refreshSeconds,
+      options.ramBufferMB,
+      options.maxMergeMB,
+      options.maxCachedMB,
+      options.searchThreads,
+      options.searchQueueSize,
+      options.searchParallelism,
+      options.searchSlices,
+      options.searchSliceMinDocs,
+      hotPaths,
+      coldPaths,
+      options.coldSegmentMinMB,
+      options.searchPrefetchPages,
+      options.searchMinPageSize,
+      options.searchMaxPageSize,
+      Some(filterCache))
+  }
+
   def init() {
 
     // Initialize index
     try {
       val sort = new Sort(keySortFields.toArray: _*)
-      if (!excludedDataCenter)
+      if (!excludedDataCenter) {
+        deletePreviousLayout()
         lucene.init(sort, fieldsToLoad)
+      }
     } catch {
       case e: Exception =>
         logger.error(s"Initialization of Lucene FS directory for index '$idxName' has failed", e)
@@ -142,7 +199,7 @@ abstract class IndexService(
     * @return the validated expression
     */
   def validate(expression: RowFilter.Expression): Search = {
-    expressionMapper.search(expression).validate(schema)
+    expressionMapper.search(expression)
   }
 
   /** Returns a Lucene term uniquely identifying the specified row.
@@ -194,6 +251,13 @@ abstract class IndexService(
     partitionMapper.decoratedKey(document)
   }
 
+  /** Returns the clustering key contained in the specified Lucene document.
+    *
+    * @param document a document containing the clustering key to be get
+    * @return the clustering key contained in `document`
+    */
+  def clustering(document: Document): Clustering[_] = Clustering.EMPTY
+
   /** Creates an new [[IndexWriter]] object for updates to a given partition.
     *
     * @param key             key of the partition being modified
@@ -223,8 +287,11 @@ abstract class IndexService(
     } catch {
       case e: JMException => logger.error("Error while unregistering Lucene index MBean", e)
     } finally {
-      if (!excludedDataCenter)
+      searchMetrics.release()
+      if (!excludedDataCenter) {
         lucene.delete()
+        Option(options.basePath).foreach(path => Files.deleteIfExists(IndexOptions.layoutFile(path)))
+      }
     }
   }
 
@@ -237,19 +304,18 @@ abstract class IndexService(
   def upsert(key: DecoratedKey, row: Row, nowInSec: Int) {
     if (!excludedDataCenter) {
       queue.submitAsynchronous(key, () => {
-          val partition = partitioner.partition(key)
           val clustering = row.clustering()
           val term = this.term(key, clustering)
           try {
             val columns = columnsMapper.columns(key, row, nowInSec)
             val fields = schema.indexableFields(columns)
             if (fields.isEmpty) {
-              lucene.delete(partition, term)
+              write(key)(_.delete(_, term))
             } else {
               val doc = new Document
               keyIndexableFields(key, clustering).foreach(doc.add)
               fields.forEach(f => doc.add(f))
-              lucene.upsert(partition, term, doc)
+              write(key)(_.upsert(_, term, doc))
             }
           } catch {
             case ex: Throwable => {
@@ -270,9 +336,8 @@ abstract class IndexService(
   def delete(key: DecoratedKey, clustering: Clustering[_]) {
     if (!excludedDataCenter)
       queue.submitAsynchronous(key, () => {
-        val partition = partitioner.partition(key)
         val term = this.term(key, clustering)
-        lucene.delete(partition, term)
+        write(key)(_.delete(_, term))
       })
   }
 
@@ -283,12 +348,29 @@ abstract class IndexService(
   def delete(key: DecoratedKey) {
     if (!excludedDataCenter)
       queue.submitAsynchronous(key, () => {
-        val partition = partitioner.partition(key)
         val term = this.term(key)
-        lucene.delete(partition, term)
+        write(key)(_.delete(_, term))
       })
   }
 
+  /** Applies the specified write operation to the index partition owning the specified key. If
+    * the index is being repartitioned, the operation is also logged to be later replayed over the
+    * new partitioning layout.
+    *
+    * @param key       the partition key
+    * @param operation the write operation, receiving the index and the partition owning `key`
+    */
+  protected def write(key: DecoratedKey)(operation: (PartitionedIndex, Int) => Unit) {
+    layoutLock.readLock.lock()
+    try {
+      operation(lucene, partitioner.partition(key))
+      repartitioning.foreach { case (newPartitioner, log) =>
+        val partition = newPartitioner.partition(key)
+        log.add(index => operation(index, partition))
+      }
+    } finally layoutLock.readLock.unlock()
+  }
+
   /** Returns a new index searcher for the specified read command.
     *
     * @param command    the read command being executed
@@ -302,10 +384,13 @@ abstract class IndexService(
     if (!excludedDataCenter) {
       // Parse search
       tracer.trace("Building Lucene search")
+      val start = System.nanoTime
       val search = expressionMapper.search(command)
-      val query = search.query(schema, this.query(command).orNull)
-      val afters = this.after(search.paging, command)
-      val sort = this.sort(search)
+      val profile = this.profile(search)
+      profile.record(Parse, System.nanoTime - start)
+      val (query, sort) = profile.time(Build) {
+        (search.query(schema, this.query(command).orNull), this.sort(search))
+      }
       val count = command.limits.count
 
       // Refresh if required
@@ -315,18 +400,137 @@ abstract class IndexService(
       }
 
 
+      // Check if the rows can be built from the index
+      val covered = if (expressionMapper.indexOnly(command) && !search.requiresFullScan) {
+        covering(command)
+      } else None
+      val docValues = covered.map(coveringMapper.fields).getOrElse(Set.empty[String])
+
       // Search
       tracer.trace(s"Lucene index searching for $count rows")
-      val partitions = partitioner.partitions(command)
-      val readers = afters.filter(a => partitions.contains(a._1))
-      val documents = lucene.search(readers, query, sort, count)
-      reader(documents, command, controller)
+      val documents = this.documents(
+        command, search, profile, start, query, sort, count, docValues) {
+        val partitions = partitioner.partitions(command)
+        val readers = after(search.paging, command).filter(a => partitions.contains(a._1))
+        val values = afterValues(search.paging, command).filterKeys(partitions.contains).toMap
+        (readers, values)
+      }
+
+      // Read rows, releasing the documents and the search slot if the reader can't be built
+      try {
+        covered.map(columns => {
+          tracer.trace("Building rows from Lucene index")
+          new IndexReaderIndexOnly(this, command, table, controller, documents, columns)
+        }).getOrElse(reader(documents, command, controller))
+      } catch {
+        case e: Throwable =>
+          try documents.close() finally profile.complete()
+          throw e
+      }
     } else {
       new IndexReaderExcludingDataCenter(command, table)
     }
 
   }
 
+  /** Searches the index for the specified read command, waiting for a search slot of the cost class
+    * of the search, which is released once the returned documents have been read. The search is
+    * cancelled if the command is aborted, and it is profiled and recorded in the slow search log.
+    *
+    * @param command   the read command whose timeout and abortion apply to the search
+    * @param search    the search
+    * @param profile   the profile of the search, to be completed once the documents have been read
+    * @param start     the time when the search started, in nanoseconds
+    * @param query     the Lucene query
+    * @param sort      the Lucene sort
+    * @param count     the max number of documents per page
+    * @param docValues the names of the doc values fields to be loaded
+    * @param readers   the index partitions to be searched with the position and the sort values to
+    *                  search after in each of them, computed with the index layout locked
+    * @return the found documents
+    */
+  private[this] def documents(
+      command: ReadCommand,
+      search: Search,
+      profile: SearchProfile,
+      start: Long,
+      query: Query,
+      sort: Sort,
+      count: Int,
+      docValues: Set[String])(
+      readers: => (List[(Int, Option[Term])], Map[Int, Array[AnyRef]])): DocumentIterator = {
+
+    // Wait for a search slot of the cost class, to be released when the results are read
+    val permit = limiter(search).acquire(command.getTimeout(MILLISECONDS))
+    profile.onComplete(_ => permit.close())
+
+    layoutLock.readLock.lock()
+    try {
+      val (afters, values) = readers
+      if (slowSearchLog.enabled) profile.onComplete(profile => slowSearchLog.record(
+        expressionMapper.json(command), afters.map(_._1), profile, System.nanoTime - start))
+      lucene.search(afters, query, sort, count, values, docValues, cancellation(command), profile)
+    } catch {
+      case e: Throwable =>
+        permit.close()
+        throw e
+    } finally layoutLock.readLock.unlock()
+  }
+
+  /** Returns a new profile for the specified search, recording the time spent in each execution
+    * phase in the per-index metrics, and tracing it if the search requests profiling. The profile
+    * is also accumulated if slow searches are logged.
+    *
+    * @param search a search
+    * @return a new profile for `search`
+    */
+  def profile(search: Search): SearchProfile = {
+    new SearchProfile(Some(searchMetrics), search.profile, slowSearchLog.enabled)
+  }
+
+  /** Returns the admission control of the cost class of the specified search. Searches using
+    * sorting, relevance or full scan are much more expensive than searches only using filters, so
+    * they are limited separately.
+    *
+    * @param search a search
+    * @return the limiter of the running searches like `search`
+    */
+  def limiter(search: Search): SearchLimiter = {
+    if (search.requiresFullScan) sortedSearches else filterSearches
+  }
+
+  /** Returns a function telling if the search of the specified read command should be cancelled
+    * because the command has been aborted, which happens when it exceeds its read timeout. The first
+    * time the cancellation is detected it is traced and counted as an aborted search.
+    *
+    * @param command the read command being executed
+    * @return a function returning `true` if the search should be aborted
+    */
+  def cancellation(command: ReadCommand): () => Boolean = {
+    val aborted = new AtomicBoolean(false)
+    () => aborted.get || command.isAborted && {
+      if (aborted.compareAndSet(false, true)) {
+        abortedSearches.incrementAndGet()
+        tracer.trace("Lucene search aborted after read timeout")
+      }
+      true
+    }
+  }
+
+  /** Returns the columns queried by the specified read command if all of them can be read from the
+    * index doc values. Tables with static columns are never covered, because their static rows
+    * aren't indexed.
+    *
+    * @param command a read command
+    * @return the queried columns, or none if any of them is not covered by the index
+    */
+  def covering(command: ReadCommand): Option[List[ColumnMetadata]] = {
+    val queried = command.columnFilter.queriedColumns
+    val columns = queried.regulars.asScala.toList
+    val covered = !metadata.hasStaticColumns && columns.forall(coveringMapper.covers)
+    if (queried.statics.isEmpty && covered) Some(columns) else None
+  }
+
   /** Returns the key range query represented by the specified read command.
     *
     * @param command the read command } else {
@@ -364,6 +568,22 @@ abstract class IndexService(
     partitions.map(i => (i, afters(i)))
   }
 
+  /** Returns the values of the sort fields of the last seen rows of the specified paging state for
+    * the specified read command, by index partition. These values can be used to start searching
+    * right after those rows without seeking them in the index. Old paging states, and paging states
+    * of searches sorted by relevance, don't contain sort values.
+    *
+    * @param pagingState the paging state
+    * @param command     the read command
+    * @return the sort values of the last seen rows, by partition
+    */
+  def afterValues(pagingState: IndexPagingState, command: ReadCommand): Map[Int, Array[AnyRef]] = {
+    if (pagingState == null) Map.empty
+    else pagingState.forCommand(command, partitioner).flatMap(_.flatMap { case ((p, k), _) =>
+      pagingState.sortValues(p, k).map(p -> _)
+    }).toMap
+  }
+
   /** Returns a Lucene query to retrieve the row identified by the specified paging state.
     *
     * @param key        the partition key
@@ -390,6 +610,54 @@ abstract class IndexService(
     new Sort(sortFields.toArray: _*)
   }
 
+  /** Returns a [[Document]] representing the specified row with only the fields required to
+    * satisfy the post processing of the specified [[Search]].
+    *
+    * @param key    a partition key
+    * @param row    a row
+    * @param search a search
+    * @param now    the operation time in seconds
+    * @return a document with just the fields required to satisfy the search
+    */
+  def postProcessingDocument(key: DecoratedKey, row: Row, search: Search, now: Int): Document = {
+    val document = new Document
+    val columns = columnsMapper.columns(key, row, now)
+    keyIndexableFields(key, row.clustering).foreach(document.add)
+    schema.postProcessingIndexableFields(columns, search).forEach(document add _)
+    document
+  }
+
+  /** Returns the values of the sort fields of the specified search for each of the specified rows,
+    * the same as they are collected by the searches of this index, so a next page can start right
+    * after any of them. Relevance scores depend on the searched index, so searches sorted by
+    * relevance don't produce any sort values.
+    *
+    * @param search the search defining the sort
+    * @param rows   the partition keys and rows
+    * @param now    the operation time in seconds
+    * @return the sort values of each row, in the same order as the rows
+    */
+  def sortValues(search: Search, rows: Seq[(DecoratedKey, Row)], now: Int)
+  : Seq[Option[Array[AnyRef]]] = {
+    if (search.usesRelevance || rows.isEmpty) return rows.map(_ => None)
+    val values = Array.fill[Option[Array[AnyRef]]](rows.size)(None)
+    val index = new RAMIndex(schema.analyzer)
+    try {
+      for (id <- rows.indices) {
+        val (key, row) = rows(id)
+        val document = postProcessingDocument(key, row, search, now)
+        document.add(new StoredField(IndexPostProcessor.ID_FIELD, id))
+        index.add(document)
+      }
+      val fields = IndexPostProcessor.FIELDS_TO_LOAD
+      for ((document, score) <- index.search(new MatchAllDocsQuery, sort(search), rows.size, fields)) {
+        val id = document.get(IndexPostProcessor.ID_FIELD).toInt
+        values(id) = Some(score.asInstanceOf[FieldDoc].fields)
+      }
+    } finally index.close()
+    values.toSeq
+  }
+
   /** Reads from the local SSTables the rows identified by the specified search.
     *
     * @param documents  the Lucene documents
@@ -432,6 +700,51 @@ abstract class IndexService(
     } else 0
   }
 
+  /** @inheritdoc */
+  override def getSearchCacheHits: Long = searchCache.hits
+
+  /** @inheritdoc */
+  override def getSearchCacheMisses: Long = searchCache.misses
+
+  /** @inheritdoc */
+  override def getSearchCacheSize: Long = searchCache.size
+
+  /** @inheritdoc */
+  override def getFilterCacheHits: Long = filterCache.hits
+
+  /** @inheritdoc */
+  override def getFilterCacheMisses: Long = filterCache.misses
+
+  /** @inheritdoc */
+  override def getFilterCacheHitRate: Double = filterCache.hitRate
+
+  /** @inheritdoc */
+  override def getFilterCacheRamBytesUsed: Long = filterCache.ramBytesUsed
+
+  /** @inheritdoc */
+  override def getAbortedSearches: Long = abortedSearches.get
+
+  /** @inheritdoc */
+  override def getSlowSearches: Array[String] = slowSearchLog.fingerprints
+
+  /** @inheritdoc */
+  override def getRunningSortedSearches: Int = sortedSearches.running
+
+  /** @inheritdoc */
+  override def getQueuedSortedSearches: Int = sortedSearches.queued
+
+  /** @inheritdoc */
+  override def getRejectedSortedSearches: Long = sortedSearches.rejected
+
+  /** @inheritdoc */
+  override def getRunningFilterSearches: Int = filterSearches.running
+
+  /** @inheritdoc */
+  override def getQueuedFilterSearches: Int = filterSearches.queued
+
+  /** @inheritdoc */
+  override def getRejectedFilterSearches: Long = filterSearches.rejected
+
   /** @inheritdoc */
   override def forceMerge(maxNumSegments: Int, doWait: Boolean) {
     if (!excludedDataCenter)
@@ -450,11 +763,123 @@ abstract class IndexService(
       queue.submitSynchronous(lucene.refresh)
   }
 
+  /** @inheritdoc */
+  override def repartition(json: String) {
+    if (!excludedDataCenter)
+      repartitionLock.synchronized(repartition(json, layout + 1))
+  }
+
+  /** Rebuilds the index with the specified partitioner into the specified layout generation. The
+    * new layout is built in its own directories, next to the current ones, and it is atomically
+    * switched in only after it has been completely written, so a failure or a crash at any point
+    * leaves either the old layout or the new one in place. The old layout is deleted once the
+    * searches that were already using it have finished.
+    *
+    * @param json      the JSON representation of the new partitioner
+    * @param newLayout the generation of the new layout
+    */
+  private[this] def repartition(json: String, newLayout: Int) {
+    val newPartitioner = try Partitioner.fromJson(metadata, json) catch {
+      case e: Exception => throw new IndexException(e, s"Partitioner is invalid : ${e.getMessage}")
+    }
+    val newPath = IndexOptions.layoutPath(options.basePath, newLayout)
+    val newHotPaths = options.baseHotPaths.map(IndexOptions.layoutPath(_, newLayout))
+    val newColdPaths = options.baseColdPaths.map(IndexOptions.layoutPath(_, newLayout))
+    logger.info(s"Repartitioning $qualifiedName into ${newPartitioner.numPartitions} partitions")
+    val time = TimeCounter.start
+    (newPath :: newHotPaths ++ newColdPaths).foreach(path => FileUtils.deleteQuietly(path.toFile))
+    val target = index(newPartitioner, newPath, newHotPaths, newColdPaths)
+    target.init(new Sort(keySortFields.toArray: _*), fieldsToLoad)
+    val log = new RepartitionLog
+    try {
+
+      // Start logging the writes and then take a snapshot of the current contents, so any write is
+      // either in the snapshot or in the log, or in both of them
+      val copier = queue.submitSynchronous(() => {
+        repartitioning = Some((newPartitioner, log))
+        lucene.refresh()
+        lucene.copier(target, router(newPartitioner))
+      })
+
+      // Copy the snapshot into the new layout, while the old one keeps serving reads and writes
+      try copier.run() finally copier.close()
+
+      // Replay the logged writes, persist the new layout and switch to it
+      val oldIndex = queue.submitSynchronous(() => {
+        replay(log, target)
+        target.commit()
+        IndexOptions.writePartitioner(newPath, json)
+        layoutLock.writeLock.lock()
+        try {
+          replay(log, target)
+          target.commit()
+          IndexOptions.writeLayout(options.basePath, newLayout)
+          val oldIndex = lucene
+          lucene = target
+          partitioner = newPartitioner
+          layout = newLayout
+          repartitioning = None
+          oldIndex
+        } finally layoutLock.writeLock.unlock()
+      })
+
+      // Delete the old layout once the searches using it have finished
+      oldIndex.retire(_.delete())
+      logger.info(s"Repartitioned $qualifiedName in $time")
+    } catch {
+      case e: Exception =>
+        repartitioning = None
+        logger.error(s"Repartitioning of $qualifiedName has failed", e)
+        Try(target.delete())
+        (newPath :: newHotPaths ++ newColdPaths)
+          .foreach(path => FileUtils.deleteQuietly(path.toFile))
+        throw new IndexException(e, s"Repartitioning of $qualifiedName has failed")
+    }
+  }
+
+  /** Applies the logged writes to the specified index, removing them from the log.
+    *
+    * @param log   the logged writes
+    * @param index the index where the writes are applied
+    */
+  private[this] def replay(log: RepartitionLog, index: PartitionedIndex) {
+    Iterator.continually(log.poll()).takeWhile(_ != null).foreach(_.apply(index))
+  }
+
+  /** Deletes the files of the partitioning layout previous to the current one, that could have been
+    * left behind by a failure after switching to the current layout.
+    */
+  private[this] def deletePreviousLayout() {
+    if (layout > 0) {
+      val paths = options.basePath :: options.baseHotPaths ++ options.baseColdPaths
+      paths.map(IndexOptions.layoutPath(_, layout - 1))
+        .filter(path => Files.exists(path))
+        .foreach(path => {
+          logger.info(s"Deleting previous layout of $qualifiedName at $path")
+          FileUtils.deleteQuietly(path.toFile)
+        })
+    }
+  }
+
+  /** Returns a function returning, for each index segment, the partition of each document
+    * according to the specified partitioner.
+    *
+    * @param partitioner the partitioner
+    * @return the partition of each document of each segment
+    */
+  private[this] def router(partitioner: Partitioner): LeafReader => Int => Int = leaf => {
+    val keys = DocValues.getSorted(leaf, PartitionMapper.FIELD_NAME)
+    doc => partitioner.partition(partitionMapper.decoratedKey(keys.get(doc)))
+  }
+
 }
 
 /** Companion object for [[IndexService]]. */
 object IndexService {
 
+  /** The ordered writes done to an index during its repartitioning. */
+  private class RepartitionLog extends ConcurrentLinkedQueue[PartitionedIndex => Unit]
+
   /** Returns a new index service for the specified indexed table and index metadata.
     *
     * @param table         the indexed table
@@ -36,6 +36,102 @@ trait IndexServiceMBean {
     */
   def getNumDeletedDocs: Long
 
+  /** Returns the number of searches whose parsed and validated form was found in the cache.
+    *
+    * @return the number of search cache hits
+    */
+  def getSearchCacheHits: Long
+
+  /** Returns the number of searches that had to be parsed and validated because they were not
+    * found in the cache.
+    *
+    * @return the number of search cache misses
+    */
+  def getSearchCacheMisses: Long
+
+  /** Returns the approximate number of parsed and validated searches in the cache.
+    *
+    * @return the number of cached searches
+    */
+  def getSearchCacheSize: Long
+
+  /** Returns the number of lookups of a filter clause in an index segment that have found its
+    * cached set of matching documents.
+    *
+    * @return the number of filter cache hits
+    */
+  def getFilterCacheHits: Long
+
+  /** Returns the number of lookups of a filter clause in an index segment that haven't found its
+    * cached set of matching documents.
+    *
+    * @return the number of filter cache misses
+    */
+  def getFilterCacheMisses: Long
+
+  /** Returns the ratio of lookups of filter clauses that have found a cached set of documents.
+    *
+    * @return the filter cache hit rate, between 0 and 1
+    */
+  def getFilterCacheHitRate: Double
+
+  /** Returns the memory used by the cached sets of documents matching filter clauses.
+    *
+    * @return the filter cache size in bytes
+    */
+  def getFilterCacheRamBytesUsed: Long
+
+  /** Returns the number of searches aborted because their read command exceeded its timeout.
+    *
+    * @return the number of aborted searches
+    */
+  def getAbortedSearches: Long
+
+  /** Returns the aggregated latencies of the searches logged as slow, grouped by the fingerprints
+    * of their JSON searches, which are the searches without the values of their conditions.
+    *
+    * @return the count, median and 99th percentile latency of each slow search fingerprint
+    */
+  def getSlowSearches: Array[String]
+
+  /** Returns the number of running searches using sorting, relevance or full scan.
+    *
+    * @return the number of running sorted searches
+    */
+  def getRunningSortedSearches: Int
+
+  /** Returns the number of searches using sorting, relevance or full scan waiting to run.
+    *
+    * @return the number of queued sorted searches
+    */
+  def getQueuedSortedSearches: Int
+
+  /** Returns the number of searches using sorting, relevance or full scan rejected because there
+    * were too many of them running and queued.
+    *
+    * @return the number of rejected sorted searches
+    */
+  def getRejectedSortedSearches: Long
+
+  /** Returns the number of running searches only using filters.
+    *
+    * @return the number of running filter searches
+    */
+  def getRunningFilterSearches: Int
+
+  /** Returns the number of searches only using filters waiting to run.
+    *
+    * @return the number of queued filter searches
+    */
+  def getQueuedFilterSearches: Int
+
+  /** Returns the number of searches only using filters rejected because there were too many of
+    * them running and queued.
+    *
+    * @return the number of rejected filter searches
+    */
+  def getRejectedFilterSearches: Long
+
   /** Optimizes the index forcing merge segments leaving the specified number of segments. This
     * operation may block until all merging completes.
     *
@@ -53,4 +149,17 @@ trait IndexServiceMBean {
 
   /** Refreshes the index readers. */
   def refresh()
+
+  /** Rebuilds the index with the specified partitioner, without re-reading the indexed data. The
+    * existing index keeps serving reads and writes until the new partitioning layout is ready,
+    * and the writes done in the meantime are replayed over the new layout before switching to it.
+    * The new partitioner is kept across restarts, overriding the one in the index options.
+    *
+    * This is a node-local operation that should be run in all the nodes with the same partitioner.
+    * Paged queries are rejected while the involved nodes use different partitioners. The copied
+    * segments aren't sorted, so sorted searches can't terminate early over them until merged.
+    *
+    * @param partitioner the JSON representation of the new partitioner
+    */
+  def repartition(partitioner: String)
 }
@@ -42,7 +42,7 @@ import scala.collection.mutable
 class IndexServiceWide(table: ColumnFamilyStore, index: IndexMetadata)
   extends IndexService(table, index) {
 
-  val clusteringMapper = new ClusteringMapper(metadata)
+  val clusteringMapper = new ClusteringMapper(metadata, options.storedKeys)
   val keyMapper = new KeyMapper(metadata)
 
   init()
@@ -62,7 +62,7 @@ class IndexServiceWide(table: ColumnFamilyStore, index: IndexMetadata)
     * @param document a document containing the clustering key to be get
     * @return the clustering key contained in `document`
     */
-  def clustering(document: Document): Clustering[_] = {
+  override def clustering(document: Document): Clustering[_] = {
     clusteringMapper.clustering(document)
   }
 
@@ -173,9 +173,8 @@ class IndexServiceWide(table: ColumnFamilyStore, index: IndexMetadata)
 
   def delete(key: DecoratedKey, slice: Slice) {
     queue.submitAsynchronous(key, () => {
-      val partition = partitioner.partition(key)
       val query = clusteringMapper.query(key, slice)
-      lucene.delete(partition, query)
+      write(key)(_.delete(_, query))
     })
   }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import com.stratio.cassandra.lucene.IndexException
+import com.stratio.cassandra.lucene.index.CancellableCollector._
+import org.apache.lucene.index.LeafReaderContext
+import org.apache.lucene.search.{Collector, FilterCollector, FilterLeafCollector, LeafCollector}
+
+/** [[Collector]] aborting the collection of documents as soon as the search is cancelled, for
+  * example because the read command that started it has exceeded its read timeout. The cancellation
+  * is checked before collecting each index segment, and then every `interval` collected documents.
+  *
+  * @param in        the wrapped collector
+  * @param cancelled a function returning `true` if the search should be aborted
+  * @param interval  the number of collected documents between cancellation checks
+  */
+class CancellableCollector(
+    in: Collector,
+    cancelled: () => Boolean,
+    interval: Int = CHECK_INTERVAL)
+  extends FilterCollector(in) {
+
+  /** @inheritdoc */
+  override def getLeafCollector(context: LeafReaderContext): LeafCollector = {
+    check(cancelled)
+    new FilterLeafCollector(super.getLeafCollector(context)) {
+      private[this] var count = 0
+
+      override def collect(doc: Int): Unit = {
+        count += 1
+        if (count == interval) {
+          count = 0
+          check(cancelled)
+        }
+        super.collect(doc)
+      }
+    }
+  }
+
+}
+
+/** Companion object for [[CancellableCollector]]. */
+object CancellableCollector {
+
+  /** The default number of collected documents between cancellation checks. */
+  val CHECK_INTERVAL = 1024
+
+  /** Throws an [[IndexException]] if the search has been cancelled.
+    *
+    * @param cancelled a function returning `true` if the search should be aborted
+    */
+  def check(cancelled: () => Boolean): Unit = {
+    if (cancelled.apply()) throw new IndexException("Lucene search cancelled after read timeout")
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import java.util.concurrent.TimeUnit.MINUTES
+import java.util.concurrent._
+
+import com.stratio.cassandra.lucene.IndexException
+import com.stratio.cassandra.lucene.util.Logging
+import org.apache.commons.lang3.concurrent.BasicThreadFactory
+
+/** Node-wide coordinator for committing and maintaining [[FSIndex]]es concurrently.
+  *
+  * Commits of all the indexes in the node run in a shared pool, so the fsyncs of the partitions of
+  * an index, and those of the indexes flushed together, overlap instead of queuing. A commit
+  * requested for an index while a previous commit of the same index is still waiting to start is
+  * satisfied by that pending commit, so concurrent requests are grouped into a single commit.
+  */
+object CommitCoordinator extends Logging {
+
+  private[this] val threads = Runtime.getRuntime.availableProcessors
+
+  private[this] lazy val committers = pool("lucene-committer-%d")
+  private[this] lazy val maintainers = pool("lucene-maintainer-%d")
+
+  /** The commits waiting to be started, by index. */
+  private[this] val pending = new ConcurrentHashMap[FSIndex, CompletableFuture[Unit]]
+
+  private[this] def pool(name: String): ThreadPoolExecutor = {
+    val factory = new BasicThreadFactory.Builder().namingPattern(name).daemon(true).build()
+    val executor = new ThreadPoolExecutor(
+      threads, threads, 1, MINUTES, new LinkedBlockingQueue[Runnable], factory)
+    executor.allowCoreThreadTimeOut(true)
+    executor
+  }
+
+  private[this] def run(executor: Executor, task: () => Unit): CompletableFuture[Unit] = {
+    val future = new CompletableFuture[Unit]
+    executor.execute(() => try {
+      task.apply()
+      future.complete(())
+    } catch {
+      case e: Throwable => future.completeExceptionally(e)
+    })
+    future
+  }
+
+  private[this] def await(futures: Seq[CompletableFuture[Unit]]): Unit = {
+    try CompletableFuture.allOf(futures: _*).get catch {
+      case e: ExecutionException =>
+        val cause = Option(e.getCause).getOrElse(e)
+        throw new IndexException(cause, "Index task failed: {}", cause)
+      case e: InterruptedException => throw new IndexException(e, "Index task interrupted")
+    }
+  }
+
+  /** Returns a future for a commit of the specified index started after this call, reusing the
+    * already pending commit of the index if there is any.
+    *
+    * @param index the index to be committed
+    * @return a future for the commit
+    */
+  private[this] def commit(index: FSIndex): CompletableFuture[Unit] = {
+    val future = new CompletableFuture[Unit]
+    val existing = pending.putIfAbsent(index, future)
+    if (existing != null) return existing
+    committers.execute(() => {
+      pending.remove(index, future)
+      try {
+        index.commit()
+        future.complete(())
+      } catch {
+        case e: Throwable => future.completeExceptionally(e)
+      }
+    })
+    future
+  }
+
+  /** Commits the pending changes of the specified indexes concurrently, waiting for all of them.
+    *
+    * @param indexes the indexes to be committed
+    */
+  def commit(indexes: Seq[FSIndex]): Unit = {
+    await(indexes.map(commit))
+  }
+
+  /** Runs the specified maintenance operation on each of the specified indexes concurrently,
+    * waiting for all of them. Maintenance operations, such as merges, don't share threads with
+    * commits, so they can't delay the flush of other indexes.
+    *
+    * @param indexes   the indexes
+    * @param operation the operation to be run on each index
+    */
+  def execute(indexes: Seq[FSIndex], operation: FSIndex => Unit): Unit = indexes match {
+    case Seq(index) => operation.apply(index)
+    case _ => await(indexes.map(index => run(maintainers, () => operation.apply(index))))
+  }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import com.stratio.cassandra.lucene.util.Tracing
+import org.apache.lucene.index.IndexReader
+import org.apache.lucene.search.BooleanClause.Occur.{FILTER, MUST}
+import org.apache.lucene.search._
+
+import scala.jdk.CollectionConverters._
+
+/** A range filter that can be run either with the postings of the indexed terms or with the doc
+  * values of the field, whichever is estimated to be cheaper. Postings visit all the documents in
+  * the range, so their cost is proportional to the selectivity of the range and to the number of
+  * segments to be seeked. Doc values check the value of each document proposed by the other
+  * required clauses of the query, so their cost is proportional to the cost of those clauses.
+  *
+  * The choice is made by [[CostBasedRangeQuery.plan]] with the statistics of the searched index and
+  * the other clauses of the query. If the query is rewritten without planning, it assumes that all
+  * the documents in the index have to be checked.
+  *
+  * @param postings    the query using postings
+  * @param docValues   the equivalent query using doc values
+  * @param selectivity the estimated fraction of the documents matched by the range, from 0 to 1
+  */
+class CostBasedRangeQuery(val postings: Query, val docValues: Query, val selectivity: Double)
+  extends Query {
+
+  /** @inheritdoc */
+  override def rewrite(reader: IndexReader): Query = {
+    CostBasedRangeQuery.choose(this, reader.maxDoc, reader)._1
+  }
+
+  /** @inheritdoc */
+  override def toString(field: String): String = {
+    f"CostBasedRangeQuery(${postings.toString(field)}, selectivity=$selectivity%.4f)"
+  }
+
+  /** @inheritdoc */
+  override def equals(other: Any): Boolean = other match {
+    case q: CostBasedRangeQuery =>
+      super.equals(q) && postings == q.postings && docValues == q.docValues &&
+        selectivity == q.selectivity
+    case _ => false
+  }
+
+  /** @inheritdoc */
+  override def hashCode: Int = {
+    31 * (31 * (31 * super.hashCode + postings.hashCode) + docValues.hashCode) +
+      selectivity.hashCode
+  }
+
+}
+
+/** Companion object for [[CostBasedRangeQuery]], planning the implementation of the cost-based
+  * ranges of queries.
+  */
+object CostBasedRangeQuery extends Tracing {
+
+  /** The cost of checking the doc values of a document, relative to the cost of visiting a document
+    * in the postings. It places the crossover point of unfiltered token range searches at ranges
+    * spanning two thirds of the ring, as the empirical heuristic previously used for them did.
+    */
+  val DOC_VALUES_COST = 0.66
+
+  /** The cost of seeking the terms dictionary of a segment, in visited documents. */
+  val SEGMENT_COST = 128
+
+  /** Returns the specified query with each of its cost-based ranges replaced by the cheapest of its
+    * implementations in the specified index, tracing the chosen plans.
+    *
+    * @param query  a query
+    * @param reader the reader of the index to be searched
+    * @return the planned query, or `query` itself if it has no cost-based ranges
+    */
+  def plan(query: Query, reader: IndexReader): Query = plan(query, reader.maxDoc, reader)
+
+  private[this] def plan(query: Query, lead: Long, reader: IndexReader): Query = query match {
+    case q: CostBasedRangeQuery =>
+      val (planned, description) = choose(q, lead, reader)
+      tracer.trace(s"Lucene index plans $description")
+      planned
+    case q: BooleanQuery =>
+      val clauses = q.clauses.asScala.toList
+      val costs = clauses.map(c => if (required(c)) estimate(c.getQuery, reader) else Long.MaxValue)
+      val planned = clauses.zipWithIndex.map { case (clause, i) =>
+        val siblings = costs.zipWithIndex.filter(_._2 != i).map(_._1)
+        val childLead = if (required(clause)) (lead :: siblings).min else lead
+        plan(clause.getQuery, childLead, reader)
+      }
+      if (planned.zip(clauses).forall { case (p, c) => p eq c.getQuery }) q else {
+        val builder = new BooleanQuery.Builder
+        builder.setDisableCoord(q.isCoordDisabled)
+        builder.setMinimumNumberShouldMatch(q.getMinimumNumberShouldMatch)
+        planned.zip(clauses).foreach { case (p, c) => builder.add(p, c.getOccur) }
+        val result = builder.build
+        result.setBoost(q.getBoost)
+        result
+      }
+    case q: ConstantScoreQuery =>
+      val planned = plan(q.getQuery, lead, reader)
+      if (planned eq q.getQuery) q else {
+        val result = new ConstantScoreQuery(planned)
+        result.setBoost(q.getBoost)
+        result
+      }
+    case _ => query
+  }
+
+  private[this] def required(clause: BooleanClause): Boolean = {
+    clause.getOccur == MUST || clause.getOccur == FILTER
+  }
+
+  /** Returns the estimated number of documents matched by the specified query in the specified
+    * index, based on the frequency of its terms. Queries that can't be estimated are assumed to
+    * match all the documents.
+    *
+    * @param query  a query
+    * @param reader an index reader
+    * @return the estimated number of matched documents
+    */
+  def estimate(query: Query, reader: IndexReader): Long = query match {
+    case q: TermQuery => reader.docFreq(q.getTerm)
+    case q: CostBasedRangeQuery => (q.selectivity * reader.maxDoc).toLong
+    case q: ConstantScoreQuery => estimate(q.getQuery, reader)
+    case q: BooleanQuery =>
+      val clauses = q.clauses.asScala
+      val required = clauses.filter(this.required)
+      if (required.nonEmpty) required.map(c => estimate(c.getQuery, reader)).min
+      else Math.min(reader.maxDoc, clauses.map(c => estimate(c.getQuery, reader)).sum)
+    case _ => reader.maxDoc
+  }
+
+  /** Returns the cheapest implementation of the specified range and a description of the choice.
+    *
+    * @param query  a cost-based range
+    * @param lead   the estimated number of documents proposed by the other required clauses
+    * @param reader the reader of the index to be searched
+    * @return the cheapest implementation of `query` and its description
+    */
+  private def choose(
+      query: CostBasedRangeQuery,
+      lead: Long,
+      reader: IndexReader): (Query, String) = {
+    val numDocs = reader.maxDoc
+    val numSegments = reader.leaves.size
+    val postingsCost = query.selectivity * numDocs + numSegments * SEGMENT_COST
+    val docValuesCost = Math.min(lead, numDocs) * DOC_VALUES_COST
+    val useDocValues = docValuesCost < postingsCost
+    val description = f"${if (useDocValues) "doc values" else "postings"} for " +
+      f"${query.postings} (selectivity=${query.selectivity}%.4f, docs=$numDocs, " +
+      f"segments=$numSegments, lead=$lead, postings cost=$postingsCost%.0f, " +
+      f"doc values cost=$docValuesCost%.0f)"
+    (if (useDocValues) query.docValues else query.postings, description)
+  }
+
+}
@@ -15,47 +15,85 @@
  */
 package com.stratio.cassandra.lucene.index
 
+import java.util.concurrent.{ExecutionException, Future}
+
 import com.stratio.cassandra.lucene.IndexException
 import com.stratio.cassandra.lucene.index.DocumentIterator._
-import com.stratio.cassandra.lucene.util.{Logging, TimeCounter, Tracing}
+import com.stratio.cassandra.lucene.util.SearchPhase._
+import com.stratio.cassandra.lucene.util._
 import org.apache.cassandra.utils.CloseableIterator
-import org.apache.lucene.document.Document
-import org.apache.lucene.index.Term
+import org.apache.lucene.document.{Document, StoredField}
+import org.apache.lucene.index.{DocValuesType, ReaderUtil, SortedSetDocValues, Term}
 import org.apache.lucene.search.BooleanClause.Occur._
 import org.apache.lucene.search.EarlyTerminatingSortingCollector._
 import org.apache.lucene.search._
+import org.apache.lucene.util.BytesRef
+
+import scala.jdk.CollectionConverters._
 
 /** [[CloseableIterator]] for retrieving Lucene documents satisfying a query.
   *
-  * @param cursors   the searcher managers and pointers of the involved indexes
-  * @param indexSort the sort of the index
-  * @param querySort the sort in which the documents are going to be retrieved
-  * @param query     the query to be satisfied by the documents
-  * @param limit     the iteration page size
-  * @param fields    the names of the document fields to be loaded
+  * @param cursors     the searcher managers and start positions of the involved indexes, given
+  *                    either by the term of the last seen document or by its sort values
+  * @param indexSort   the sort of the index
+  * @param querySort   the sort in which the documents are going to be retrieved
+  * @param query       the query to be satisfied by the documents
+  * @param limit       the iteration page size
+  * @param fields      the names of the document fields to be loaded from their sorted doc values
+  * @param executor    the optional executor for searching the involved indexes concurrently
+  * @param parallelism the max number of indexes to be concurrently searched by this iterator
+  * @param prefetch    if the next page should be searched in background while consuming the current
+  * @param minPageSize the min number of documents to be searched per page, after the first one
+  * @param maxPageSize the max number of documents to be searched per page
+  * @param cancelled   a function returning `true` if the search should be aborted
+  * @param profile     the profile where the time spent in each search phase is recorded
+  * @param released    the callback to be run once the searchers have been released
   * @author Andres de la Pena `adelapena@stratio.com`
   */
 class DocumentIterator(
-    cursors: List[(SearcherManager, Option[Term])],
+    cursors: List[(SearcherManager, Option[Term], Option[Array[AnyRef]])],
     indexSort: Sort,
     querySort: Sort,
     query: Query,
     limit: Int,
-    fields: java.util.Set[String])
+    fields: java.util.Set[String],
+    executor: Option[SearchExecutor] = None,
+    parallelism: Int = 1,
+    prefetch: Boolean = false,
+    minPageSize: Int = DEFAULT_MIN_PAGE_SIZE,
+    maxPageSize: Int = MAX_PAGE_SIZE,
+    cancelled: () => Boolean = () => false,
+    val profile: SearchProfile = SearchProfile.NONE,
+    released: () => Unit = () => {})
   extends Iterator[(Document, ScoreDoc)] with AutoCloseable with Logging with Tracing {
 
-  private[this] val pageSize = Math.min(limit, MAX_PAGE_SIZE) + 1
+  private[this] var pageSize = Math.min(limit, maxPageSize)
+  private[this] var numConsumed = 0L
+  private[this] var numCollected = 0L
+  private[this] var reported = false
   private[this] val documents = new java.util.LinkedList[(Document, ScoreDoc)]
   private[this] val indices = cursors.indices
   private[this] val managers = cursors.map(_._1)
   private[this] val searchers = managers.map(_.acquire())
+  private[this] val leaves = searchers.map(_.getIndexReader.leaves)
   private[this] val afterTerms = cursors.map(_._2)
+  private[this] val afterValues = cursors.map(_._3)
   private[this] val offsets = cursors.map(_ => 0).toArray
   private[this] var finished = false
-  private[this] var closed = false
+  private[this] var pending: Option[Future[Page]] = None
+  @volatile private[this] var closed = false
 
   private[this] def releaseSearchers(): Unit =
-    indices.foreach(i => managers(i).release(searchers(i)))
+    try indices.foreach(i => managers(i).release(searchers(i))) finally released.apply()
+
+  /** Applies the specified function to each of the involved indexes, concurrently if there is an
+    * executor, and returns the results in the order of the indexes.
+    */
+  private[this] def forEachIndex[A](f: Int => A): IndexedSeq[A] = executor match {
+    case Some(e) if indices.size > 1 && parallelism > 1 =>
+      e.invokeAll(indices.map(i => () => f(i)), parallelism, () => closed || cancelled.apply())
+    case _ => indices.map(f)
+  }
 
   /** The sort of the query rewritten by the searcher. */
   private[this] val sort = try {
@@ -66,68 +104,237 @@ class DocumentIterator(
       throw new IndexException(e, s"Error rewriting sort $indexSort")
   }
 
-  /** The start after positions. */
-  private[this] val afters = try {
-    indices.map(i => afterTerms(i).map(term => {
-      val time = TimeCounter.start
-      val builder = new BooleanQuery.Builder
-      builder.add(new TermQuery(term), FILTER)
-      builder.add(query, MUST)
-      val scores = searchers(i).search(builder.build, 1, sort).scoreDocs
-      if (scores.nonEmpty) {
-        tracer.trace("Lucene index seeks last index position")
-        logger.debug(s"Start position found in $time")
-        scores.head
-      } else throw new IndexException("Last page position not found")
-    })).toArray
+  /** The query planned for each searcher, choosing the cheapest implementation of its ranges
+    * according to the statistics of each index.
+    */
+  private[this] val queries = try {
+    searchers.map(searcher => CostBasedRangeQuery.plan(query, searcher.getIndexReader)).toArray
+  } catch {
+    case e: Exception =>
+      releaseSearchers()
+      throw new IndexException(e, s"Error planning query $query")
+  }
+
+  /** Returns the position of the document identified by the specified term in the specified index.
+    *
+    * @param i    the index of the searcher
+    * @param term the term identifying the last seen document
+    * @return the position of the document in the index
+    */
+  private[this] def seek(i: Int, term: Term): ScoreDoc = {
+    val time = TimeCounter.start
+    val builder = new BooleanQuery.Builder
+    builder.add(new TermQuery(term), FILTER)
+    builder.add(queries(i), MUST)
+    val scores = searchers(i).search(builder.build, 1, sort).scoreDocs
+    if (scores.nonEmpty) {
+      tracer.trace("Lucene index seeks last index position")
+      logger.debug(s"Start position found in $time")
+      scores.head
+    } else throw new IndexException("Last page position not found")
+  }
+
+  /** The start after positions, built from the sort values of the last seen documents if they are
+    * known and match the sort, or otherwise seeking the terms of those documents. A position built
+    * from sort values points to the last document of the index, so any document with the same sort
+    * values as the last seen one is considered already seen.
+    */
+  private[this] val afters = try profile.time(Seek) {
+    val sortFields = sort.getSort
+    val sortable = !sortFields.exists(_.getType == SortField.Type.SCORE)
+    forEachIndex(i => afterValues(i) match {
+      case Some(values) if sortable && values.length == sortFields.length =>
+        val maxDoc = searchers(i).getIndexReader.maxDoc
+        tracer.trace("Lucene index starts after last sort values")
+        if (maxDoc == 0) None else Some(new FieldDoc(maxDoc - 1, Float.NaN, values))
+      case _ => afterTerms(i).map(seek(i, _))
+    }).toArray
   } catch {
     case e: Exception =>
       releaseSearchers()
       throw new IndexException(e, "Error while searching for the last page position")
   }
 
-  private[this] def fetch() = {
-    try {
-      val fetchTime = TimeCounter.start
-
-      val fieldDocs = indices.map(i => {
-        val afterTerm = afterTerms(i)
-        if (afterTerm.isEmpty && canEarlyTerminate(sort, indexSort)) {
-          val fieldDoc = afters(i).map(_.asInstanceOf[FieldDoc]).orNull
-          val collect = TopFieldCollector.create(sort, pageSize, fieldDoc, true, false, false)
-          val hits = offsets(i) + pageSize
-          val earlyCollect = new EarlyTerminatingSortingCollector(collect, sort, hits, indexSort)
-          searchers(i).search(query, earlyCollect)
-          val topDocs = collect.topDocs
-          offsets(i) += topDocs.scoreDocs.length
-          topDocs
-        } else searchers(i).searchAfter(afters(i).orNull, query, pageSize, sort, false, false)
-      }).toArray
-
-      // Merge partitions results
-      val scoreDocs = TopDocs.merge(sort, pageSize, fieldDocs).scoreDocs
-
-      val numFetched = scoreDocs.length
-      finished = numFetched < pageSize
-
-      for (scoreDoc <- scoreDocs) {
+  /** Searches the next page of documents, updating the start after positions. Only one page is
+    * searched at a time, either in the calling thread or in background if prefetching is enabled.
+    *
+    * @param size the number of documents to be searched
+    * @return the documents of the page and if it is the last one
+    */
+  private[this] def search(size: Int): Page = {
+    val fetchTime = TimeCounter.start
+    val pageSize = size + 1
+
+    val fieldDocs = forEachIndex(i => profile.time(Search) {
+      val started = afterTerms(i).isDefined || afterValues(i).isDefined
+      if (!started && canEarlyTerminate(sort, indexSort)) {
+        val fieldDoc = afters(i).map(_.asInstanceOf[FieldDoc]).orNull
+        val collect = TopFieldCollector.create(sort, pageSize, fieldDoc, true, false, false)
+        val hits = offsets(i) + pageSize
+        val earlyCollect = new EarlyTerminatingSortingCollector(collect, sort, hits, indexSort)
+        searchers(i).search(queries(i), new CancellableCollector(earlyCollect, cancelled))
+        val topDocs = collect.topDocs
+        offsets(i) += topDocs.scoreDocs.length
+        topDocs
+      } else searchAfter(i, afters(i).map(_.asInstanceOf[FieldDoc]).orNull, pageSize)
+    }).toArray
+
+    // Merge partitions results
+    val scoreDocs = TopDocs.merge(sort, pageSize, fieldDocs).scoreDocs
+
+    val page = profile.time(Load) {
+      for (scoreDoc <- scoreDocs) yield {
         val shard = scoreDoc.shardIndex
         afters(shard) = Some(scoreDoc)
-        val document = searchers(shard).doc(scoreDoc.doc, fields)
-        documents.add((document, scoreDoc))
+        (this.document(shard, scoreDoc.doc), scoreDoc)
+      }
+    }
+    profile.fetched(scoreDocs.view.map(_.shardIndex))
+
+    logger.debug(s"Page fetched with ${page.length} documents in $fetchTime")
+    (page.toSeq, page.length < pageSize)
+  }
+
+  /** Returns the top documents after the specified position in the specified index, in the same
+    * way as [[IndexSearcher.searchAfter]], but checking for cancellation while collecting them.
+    *
+    * @param i     the index of the searcher
+    * @param after the position to start searching after, maybe `null`
+    * @param size  the max number of documents to be collected
+    * @return the top documents after `after`
+    */
+  private[this] def searchAfter(i: Int, after: FieldDoc, size: Int): TopFieldDocs = {
+    val searcher = searchers(i)
+    val hits = Math.min(size, Math.max(1, searcher.getIndexReader.maxDoc))
+    val collectors = new java.util.concurrent.ConcurrentLinkedQueue[TopFieldCollector]
+    searcher.search(queries(i), new CollectorManager[Collector, TopFieldDocs] {
+      override def newCollector: Collector = {
+        val collector = TopFieldCollector.create(sort, hits, after, true, false, false)
+        collectors.add(collector)
+        new CancellableCollector(collector, cancelled)
+      }
+
+      override def reduce(cancellables: java.util.Collection[Collector]): TopFieldDocs = {
+        TopDocs.merge(sort, hits, collectors.asScala.map(_.topDocs).toArray)
+      }
+    })
+  }
+
+  private[this] def fetch() = {
+    try {
+      CancellableCollector.check(cancelled)
+      val (page, last) = pending match {
+        case Some(future) =>
+          pending = None
+          try future.get catch {
+            case e: ExecutionException => throw new IndexException(
+              Option(e.getCause).getOrElse(e), s"Error searching next page with $query and $sort")
+          }
+        case None => search(pageSize)
       }
+      finished = last
+      page.foreach(documents.add)
+      tracer.trace(s"Lucene index fetches ${page.length} documents with page size $pageSize")
 
-      tracer.trace(s"Lucene index fetches $numFetched documents")
-      logger.debug(s"Page fetched with $numFetched documents in $fetchTime")
+      // Adapt the size of the next page and start searching it while this one is consumed, if the
+      // fetched documents are not expected to produce enough rows
+      pageSize = nextPageSize
+      if (!finished && prefetch && expectsMorePages) {
+        val size = pageSize
+        pending = Some(PREFETCHER.submit(() => search(size)))
+      }
 
     } catch {
       case e: Exception =>
         close()
+        if (cancelled.apply()) throw new IndexException(e, "Lucene search cancelled after read timeout")
         throw new IndexException(e, s"Error searching with $query and $sort")
     }
     if (finished) close()
   }
 
+  /** Returns a document containing the values of the loaded fields of the specified document.
+    * Fields with sorted doc values, such as the primary key fields, are read from their doc values
+    * instead of from stored fields, so there is no need for decompressing a stored fields block per
+    * hit. Fields with sorted numeric or sorted set doc values get their first value, if any. Any
+    * other fields are read from stored fields.
+    *
+    * @param shard the index of the searcher where the document was found
+    * @param doc   the top-level id of the document in the searcher
+    * @return a document with the loaded fields
+    */
+  private[this] def document(shard: Int, doc: Int): Document = {
+    val leaves = this.leaves(shard)
+    val leaf = leaves.get(ReaderUtil.subIndex(doc, leaves))
+    val reader = leaf.reader
+    val document = new Document
+    val stored = new java.util.HashSet[String]
+    fields.forEach(field => {
+      val info = reader.getFieldInfos.fieldInfo(field)
+      if (info == null) stored.add(field) else info.getDocValuesType match {
+        case DocValuesType.SORTED =>
+          val value = reader.getSortedDocValues(field).get(doc - leaf.docBase)
+          document.add(new StoredField(field, BytesRef.deepCopyOf(value)))
+        case DocValuesType.SORTED_NUMERIC =>
+          val values = reader.getSortedNumericDocValues(field)
+          values.setDocument(doc - leaf.docBase)
+          if (values.count > 0) document.add(new StoredField(field, values.valueAt(0)))
+        case DocValuesType.SORTED_SET =>
+          val values = reader.getSortedSetDocValues(field)
+          values.setDocument(doc - leaf.docBase)
+          val ord = values.nextOrd
+          if (ord != SortedSetDocValues.NO_MORE_ORDS) {
+            document.add(new StoredField(field, BytesRef.deepCopyOf(values.lookupOrd(ord))))
+          }
+        case _ => stored.add(field)
+      }
+    })
+    if (!stored.isEmpty) reader.document(doc - leaf.docBase, stored).forEach(f => document.add(f))
+    document
+  }
+
+  /** Returns the size of the next page, estimated as the number of documents required to collect
+    * the remaining rows according to the yield observed so far, in the configured bounds. If the
+    * consumer doesn't report the collected rows, each document is assumed to produce a row.
+    */
+  private[this] def nextPageSize: Int = {
+    val remaining = Math.max(limit - collectedRows, 1)
+    val size = Math.ceil(remaining / yieldRate).min(Int.MaxValue).toInt
+    Math.max(minPageSize, Math.min(maxPageSize, size))
+  }
+
+  /** Returns the number of rows collected so far, assuming a row per consumed document if the
+    * consumer doesn't report the collected rows.
+    */
+  private[this] def collectedRows: Long = if (reported) numCollected else numConsumed
+
+  /** Returns the observed ratio of consumed documents producing rows, or one if there are no
+    * observations yet.
+    */
+  private[this] def yieldRate: Double = {
+    if (numConsumed == 0) 1D else Math.max(MIN_YIELD, collectedRows.toDouble / numConsumed)
+  }
+
+  /** Returns if more pages are expected to be needed after the already fetched documents, that is,
+    * if these documents are not expected to produce the requested number of rows according to the
+    * yield observed so far. The first page is expected to be enough.
+    */
+  private[this] def expectsMorePages: Boolean = {
+    collectedRows + documents.size * yieldRate < limit
+  }
+
+  /** Notifies that the consumer of this iterator has collected the specified number of rows from
+    * the documents returned so far, so the size of the next pages can be adapted to the ratio of
+    * documents that produce rows.
+    *
+    * @param rows the number of collected rows
+    */
+  def collected(rows: Int) {
+    reported = true
+    numCollected += rows
+    profile.collected(rows)
+  }
+
   /** Returns if more documents should be fetched from the Lucene index.
     *
     * @return `true` if more documents should be fetched, `false` otherwise
@@ -149,12 +356,26 @@ class DocumentIterator(
     * @throws NoSuchElementException if the iteration has no more documents
     */
   override def next: (Document, ScoreDoc) = {
-    if (hasNext) documents.poll else throw new NoSuchElementException
+    if (hasNext) {
+      numConsumed += 1
+      profile.consumed(1)
+      documents.poll
+    } else throw new NoSuchElementException
   }
 
-  /** Closes the [[IndexSearcher]] and any other resources */
+  /** Closes the [[IndexSearcher]] and any other resources, waiting for any page being searched in
+    * background before releasing the searchers.
+    */
   override def close(): Unit = {
-    if (!closed) try releaseSearchers() finally closed = true
+    if (!closed) {
+      closed = true
+      try pending.foreach(future => try future.get catch {
+        case _: Exception =>
+      }) finally {
+        pending = None
+        releaseSearchers()
+      }
+    }
   }
 
 }
@@ -164,4 +385,19 @@ object DocumentIterator {
 
   /** The max number of rows to be read per iteration. */
   val MAX_PAGE_SIZE = 10000
+
+  /** The default min number of rows to be read per iteration, after the first one. */
+  val DEFAULT_MIN_PAGE_SIZE = 100
+
+  /** The min ratio of documents producing rows considered when estimating the next page size. */
+  val MIN_YIELD = 0.01
+
+  /** The documents of a page and if it is the last page. */
+  type Page = (Seq[(Document, ScoreDoc)], Boolean)
+
+  /** The node-wide executor for searching the next pages in background. */
+  lazy val PREFETCHER: SearchExecutor = {
+    val threads = Runtime.getRuntime.availableProcessors
+    new SearchExecutor(threads, threads * 16, "lucene-page-prefetcher-%d")
+  }
 }
@@ -26,13 +26,18 @@ import org.apache.lucene.store.{Directory, FSDirectory, NRTCachingDirectory}
 
 /** Class wrapping a Lucene file system-based directory and its readers, writers and searchers.
   *
-  * @param name           the index name
-  * @param path           the directory path
-  * @param analyzer       the index writer analyzer
-  * @param refreshSeconds the index reader refresh frequency in seconds
-  * @param ramBufferMB    the index writer RAM buffer size in MB
-  * @param maxMergeMB     the directory max merge size in MB
-  * @param maxCachedMB    the directory max cache size in MB
+  * @param name            the index name
+  * @param path            the directory path
+  * @param analyzer        the index writer analyzer
+  * @param refreshSeconds  the index reader refresh frequency in seconds
+  * @param ramBufferMB     the index writer RAM buffer size in MB
+  * @param maxMergeMB      the directory max merge size in MB
+  * @param maxCachedMB     the directory max cache size in MB
+  * @param maxSlices       the max number of segment slices concurrently searched by a query
+  * @param minDocsPerSlice the min number of documents per concurrently searched segment slice
+  * @param coldPath        the optional directory path for large merged segments
+  * @param coldMinMB       the min estimated size in MB of a merged segment to be stored in `coldPath`
+  * @param filterCache     the optional cache of the sets of documents matching non-scoring clauses
   * @author Andres de la Pena `adelapena@stratio.com`
   */
 class FSIndex(
@@ -42,7 +47,12 @@ class FSIndex(
     refreshSeconds: Double,
     ramBufferMB: Int,
     maxMergeMB: Int,
-    maxCachedMB: Int) extends Logging {
+    maxCachedMB: Int,
+    maxSlices: Int = 1,
+    minDocsPerSlice: Int = SlicedIndexSearcher.DEFAULT_MIN_DOCS_PER_SLICE,
+    coldPath: Option[Path] = None,
+    coldMinMB: Int = TieredDirectory.DEFAULT_COLD_MIN_MB,
+    filterCache: Option[SegmentFilterCache] = None) extends Logging {
 
   private[this] var mergeSort: Sort = _
   private[this] var fields: java.util.Set[String] = _
@@ -61,7 +71,12 @@ class FSIndex(
     this.fields = fields
 
     // Open or create directory
-    directory = new NRTCachingDirectory(FSDirectory.open(path), maxMergeMB, maxCachedMB)
+    val fsDirectory = coldPath match {
+      case Some(cold) => new TieredDirectory(
+        FSDirectory.open(path), FSDirectory.open(cold), coldMinMB.toLong * 1024 * 1024)
+      case None => FSDirectory.open(path)
+    }
+    directory = new NRTCachingDirectory(fsDirectory, maxMergeMB, maxCachedMB)
 
     // Setup index writer
     val indexWriterConfig = new IndexWriterConfig(analyzer)
@@ -74,8 +89,11 @@ class FSIndex(
     // Setup NRT search
     val searcherFactory: SearcherFactory = new SearcherFactory {
       override def newSearcher(reader: IndexReader, previousReader: IndexReader): IndexSearcher = {
-        val searcher = new IndexSearcher(reader)
+        val searcher = if (maxSlices > 1) {
+          new SlicedIndexSearcher(reader, maxSlices, minDocsPerSlice)
+        } else new IndexSearcher(reader)
         searcher.setSimilarity(new NoIDFSimilarity)
+        filterCache.foreach(_.configure(searcher))
         searcher
       }
     }
@@ -119,6 +137,14 @@ class FSIndex(
     writer.deleteDocuments(query)
   }
 
+  /** Adds the live documents of the specified readers to this index, without analyzing them.
+    *
+    * @param readers the readers containing the documents to be added
+    */
+  def addIndexes(readers: CodecReader*) {
+    writer.addIndexes(readers: _*)
+  }
+
   /** Deletes all the documents. */
   def truncate() {
     writer.deleteAll()
@@ -142,7 +168,10 @@ class FSIndex(
 
   /** Closes the index and removes all its files. */
   def delete() {
-    try close() finally FileUtils.forceDelete(path.toFile)
+    try close() finally {
+      FileUtils.forceDelete(path.toFile)
+      coldPath.foreach(cold => FileUtils.deleteQuietly(cold.toFile))
+    }
   }
 
   /** Returns the total number of documents in this index.
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import com.stratio.cassandra.lucene.util.{Logging, TimeCounter}
+import org.apache.lucene.index._
+import org.apache.lucene.search.SearcherManager
+import org.apache.lucene.util.{Bits, FixedBitSet}
+
+import scala.jdk.CollectionConverters._
+
+/** Copies the documents of some indexes into the partitions of a [[PartitionedIndex]], routing
+  * each document to the partition returned by a routing function. The copied documents are those
+  * visible to the searchers at the moment of the creation of the copier, so writes done after that
+  * are not copied. Existing segments are added to the target partitions through filtered readers,
+  * so documents are neither re-read from SSTables nor re-analyzed.
+  *
+  * @param managers the searcher managers of the source indexes
+  * @param target   the index receiving the documents
+  * @param router   a function returning, for each segment, the target partition of each document
+  */
+class IndexCopier(
+    managers: List[SearcherManager],
+    target: PartitionedIndex,
+    router: LeafReader => Int => Int) extends AutoCloseable with Logging {
+
+  private[this] val searchers = managers.map(_.acquire)
+
+  /** Copies the documents into the target index.
+    *
+    * @return the number of copied documents
+    */
+  def run(): Long = {
+    val time = TimeCounter.start
+    var count = 0L
+    for (leaf <- searchers.flatMap(_.getIndexReader.leaves.asScala).map(_.reader)) {
+      val reader = SlowCodecReaderWrapper.wrap(leaf)
+      val route = router.apply(leaf)
+      val liveDocs = Option(leaf.getLiveDocs)
+      val partitions = (0 until target.numPartitions).map(_ => new FixedBitSet(leaf.maxDoc))
+      for (doc <- 0 until leaf.maxDoc if liveDocs.forall(_.get(doc))) {
+        partitions(route.apply(doc)).set(doc)
+      }
+      for ((bits, partition) <- partitions.zipWithIndex if bits.cardinality > 0) {
+        target.addIndexes(partition, new IndexCopier.FilteredReader(reader, bits))
+        count += bits.cardinality
+      }
+    }
+    logger.info(s"Copied $count documents in $time")
+    count
+  }
+
+  /** @inheritdoc */
+  override def close(): Unit = {
+    managers.zip(searchers).foreach { case (manager, searcher) => manager.release(searcher) }
+  }
+}
+
+/** Companion object for [[IndexCopier]]. */
+object IndexCopier {
+
+  /** [[CodecReader]] exposing only the documents of the specified bit set.
+    *
+    * @param in   the wrapped reader
+    * @param bits the live documents
+    */
+  class FilteredReader(in: CodecReader, bits: FixedBitSet) extends FilterCodecReader(in) {
+
+    private[this] val count = bits.cardinality
+
+    /** @inheritdoc */
+    override def getLiveDocs: Bits = bits
+
+    /** @inheritdoc */
+    override def numDocs: Int = count
+  }
+
+}
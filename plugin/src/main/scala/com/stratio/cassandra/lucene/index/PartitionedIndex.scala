@@ -15,27 +15,43 @@
  */
 package com.stratio.cassandra.lucene.index
 
-import java.io.File
-import java.nio.file.{Path, Paths}
+import java.nio.file.{Files, Path}
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger, AtomicReference}
 import com.stratio.cassandra.lucene.IndexException
-import com.stratio.cassandra.lucene.util.Logging
+import com.stratio.cassandra.lucene.util.{Logging, SearchExecutor, SearchProfile}
 import org.apache.cassandra.io.util
 import org.apache.commons.io.FileUtils
 import org.apache.lucene.analysis.Analyzer
 import org.apache.lucene.document.Document
-import org.apache.lucene.index.Term
+import org.apache.lucene.index.{CodecReader, LeafReader, Term}
 import org.apache.lucene.search.{Query, Sort}
 
+import scala.jdk.CollectionConverters._
+
 /** An [[FSIndex]] partitioned by some not specified criterion.
   *
-  * @param partitions     the number of index partitions
-  * @param name           the index name
-  * @param path           the directory path
-  * @param analyzer       the index writer analyzer
-  * @param refreshSeconds the index reader refresh frequency in seconds
-  * @param ramBufferMB    the index writer RAM buffer size in MB
-  * @param maxMergeMB     the directory max merge size in MB
-  * @param maxCachedMB    the directory max cache size in MB
+  * @param partitions        the number of index partitions
+  * @param name              the index name
+  * @param path              the directory path
+  * @param analyzer          the index writer analyzer
+  * @param refreshSeconds    the index reader refresh frequency in seconds
+  * @param ramBufferMB       the index writer RAM buffer size in MB
+  * @param maxMergeMB        the directory max merge size in MB
+  * @param maxCachedMB       the directory max cache size in MB
+  * @param searchThreads     the number of threads of a dedicated pool for concurrently searching
+  *                          partitions, or none to use the pool shared by all the node indexes
+  * @param searchQueueSize   the max number of queued partition searches
+  * @param searchParallelism the max number of partitions concurrently searched by a query
+  * @param maxSlices         the max number of segment slices concurrently searched by a query
+  * @param minDocsPerSlice   the min number of documents per concurrently searched segment slice
+  * @param hotPaths          the directory paths across which the partitions are spread, or none to
+  *                          store all of them under `path`
+  * @param coldPaths         the directory paths for large merged segments, spread across partitions
+  * @param coldMinMB         the min estimated size in MB of a merged segment to be stored as cold
+  * @param prefetchPages     if the next page of results should be searched in background
+  * @param minPageSize       the min number of documents per searched page, after the first one
+  * @param maxPageSize       the max number of documents per searched page
+  * @param filterCache       the optional cache of the sets of documents matching filter clauses
   * @author Andres de la Pena `adelapena@stratio.com`
   */
 class PartitionedIndex(
@@ -46,25 +62,75 @@ class PartitionedIndex(
     refreshSeconds: Double,
     ramBufferMB: Int,
     maxMergeMB: Int,
-    maxCachedMB: Int) extends Logging {
+    maxCachedMB: Int,
+    searchThreads: Option[Int] = Some(0),
+    searchQueueSize: Int = 1,
+    searchParallelism: Int = 1,
+    maxSlices: Int = 1,
+    minDocsPerSlice: Int = SlicedIndexSearcher.DEFAULT_MIN_DOCS_PER_SLICE,
+    hotPaths: List[Path] = Nil,
+    coldPaths: List[Path] = Nil,
+    coldMinMB: Int = TieredDirectory.DEFAULT_COLD_MIN_MB,
+    prefetchPages: Boolean = false,
+    minPageSize: Int = DocumentIterator.DEFAULT_MIN_PAGE_SIZE,
+    maxPageSize: Int = DocumentIterator.MAX_PAGE_SIZE,
+    filterCache: Option[SegmentFilterCache] = None) extends Logging {
 
   private[this] val indexes: List[FSIndex] = partitions match {
     case 1 =>
-      List(new FSIndex(name, path, analyzer, refreshSeconds, ramBufferMB, maxMergeMB, maxCachedMB))
+      List(new FSIndex(name, path, analyzer, refreshSeconds, ramBufferMB, maxMergeMB, maxCachedMB,
+        maxSlices, minDocsPerSlice, coldPaths.headOption, coldMinMB, filterCache))
     case n if n > 1 =>
-      val root = path.toFile.getAbsolutePath + File.separator
       (0 until n)
-        .map(root + File.separator + _)
-        .map(Paths.get(_))
-        .map(new FSIndex(name, _, analyzer, refreshSeconds, ramBufferMB, maxMergeMB, maxCachedMB))
+        .map(i => (hotPath(i), coldPath(i)))
+        .map { case (hot, cold) => new FSIndex(name, hot, analyzer, refreshSeconds, ramBufferMB,
+          maxMergeMB, maxCachedMB, maxSlices, minDocsPerSlice, cold, coldMinMB, filterCache)
+        }
         .toList
     case _ => throw new IndexException(
       s"The number of partitions should be strictly positive but found $partitions")
     }
 
+  /** Returns the directory path of the specified partition, spreading partitions across the hot
+    * directories in a round-robin fashion. A partition already stored in the index directory or in
+    * any hot directory stays there, so the partitions written before the hot directories changed
+    * are still found.
+    */
+  private[this] def hotPath(partition: Int): Path = {
+    val existing = (path :: hotPaths).map(_.resolve(partition.toString)).find(Files.exists(_))
+    existing.getOrElse(hotPaths match {
+      case Nil => path.resolve(partition.toString)
+      case paths => paths(partition % paths.size).resolve(partition.toString)
+    })
+  }
+
+  /** Returns the cold directory path of the specified partition, spreading partitions across the
+    * cold directories in a round-robin fashion.
+    */
+  private[this] def coldPath(partition: Int): Option[Path] = coldPaths match {
+    case Nil => None
+    case paths => Some(paths(partition % paths.size).resolve(partition.toString))
+  }
+
+  private[this] val concurrent = partitions > 1 && searchParallelism > 1
+
+  private[this] val ownSearchExecutor = searchThreads
+    .filter(threads => concurrent && threads > 0)
+    .map(threads => new SearchExecutor(threads, searchQueueSize))
+
+  private[this] val searchExecutor =
+    if (concurrent && searchThreads.isEmpty) Some(PartitionedIndex.SEARCH_EXECUTOR)
+    else ownSearchExecutor
+
   private[this] var mergeSort: Sort = _
   private[this] var fields: java.util.Set[String] = _
 
+  // The number of searches in progress plus one for the owner, so a retired index is closed only
+  // after the searches started before its retirement have finished
+  private[this] val references = new AtomicInteger(1)
+  private[this] val retirement = new AtomicReference[PartitionedIndex => Unit]
+  @volatile private[this] var retired = false
+
   /** Initializes this index with the specified merge sort and fields to be loaded.
     *
     * @param mergeSort the sort to be applied to the index during merges
@@ -78,13 +144,13 @@ class PartitionedIndex(
 
   /** Deletes all the documents. */
   def truncate() {
-    indexes.foreach(_.truncate())
+    CommitCoordinator.execute(indexes, _.truncate())
     logger.info(s"Truncated $name")
   }
 
   /** Commits the pending changes. */
   def commit() {
-    indexes.foreach(_.commit())
+    CommitCoordinator.commit(indexes)
     logger.debug(s"Committed $name")
   }
 
@@ -92,16 +158,40 @@ class PartitionedIndex(
     * associated resources.
     */
   def close() {
-    indexes.foreach(_.close())
+    try ownSearchExecutor.foreach(_.close()) finally indexes.foreach(_.close())
     logger.info(s"Closed $name")
   }
 
   /** Closes the index and removes all its files. */
   def delete() {
-    try indexes.foreach(_.delete()) finally if (partitions > 1) FileUtils.forceDelete(path.toFile)
+    ownSearchExecutor.foreach(_.close())
+    try indexes.foreach(_.delete()) finally if (partitions > 1) {
+      FileUtils.forceDelete(path.toFile)
+      hotPaths.foreach(hot => FileUtils.deleteQuietly(hot.toFile))
+      coldPaths.foreach(cold => FileUtils.deleteQuietly(cold.toFile))
+    }
     logger.info(s"Deleted $name")
   }
 
+  /** Retires this index, rejecting new searches and running the specified action, such as closing
+    * or deleting the index, as soon as the searches in progress have finished.
+    *
+    * @param action the action to be run once there are no searches in progress
+    */
+  def retire(action: PartitionedIndex => Unit) {
+    retirement.set(action)
+    retired = true
+    release()
+  }
+
+  /** Releases a reference to this index, running its retirement action if it was the last one. */
+  private[this] def release() {
+    if (references.decrementAndGet == 0) Option(retirement.getAndSet(null)).foreach(action =>
+      try action(this) catch {
+        case e: Exception => logger.error(s"Error while retiring $name", e)
+      })
+  }
+
   /** Optimizes the index forcing merge segments leaving the specified number of segments.
     * This operation may block until all merging completes.
     *
@@ -110,7 +200,7 @@ class PartitionedIndex(
     */
   def forceMerge(maxNumSegments: Int, doWait: Boolean) {
     logger.info(s"Merging $name segments to $maxNumSegments")
-    indexes.foreach(_.forceMerge(maxNumSegments, doWait))
+    CommitCoordinator.execute(indexes, _.forceMerge(maxNumSegments, doWait))
     logger.info(s"Merged $name segments to $maxNumSegments")
   }
 
@@ -121,13 +211,13 @@ class PartitionedIndex(
     */
   def forceMergeDeletes(doWait: Boolean) {
     logger.info(s"Merging $name segments with deletions")
-    indexes.foreach(_.forceMergeDeletes(doWait))
+    CommitCoordinator.execute(indexes, _.forceMergeDeletes(doWait))
     logger.info(s"Merged $name segments with deletions")
   }
 
   /** Refreshes the index readers. */
   def refresh(): Unit = {
-    indexes.foreach(_.refresh())
+    CommitCoordinator.execute(indexes, _.refresh())
     logger.debug(s"Refreshed $name readers")
   }
 
@@ -182,16 +272,55 @@ class PartitionedIndex(
     indexes(partition).delete(query)
   }
 
+  /** Returns the number of partitions of this index.
+    *
+    * @return the number of partitions
+    */
+  def numPartitions: Int = partitions
+
+  /** Adds the live documents of the specified readers to the specified partition, without
+    * analyzing them.
+    *
+    * @param partition the index partition where the operation will be done
+    * @param readers   the readers containing the documents to be added
+    */
+  def addIndexes(partition: Int, readers: CodecReader*) {
+    logger.debug(s"Adding indexes to $name in partition $partition")
+    indexes(partition).addIndexes(readers: _*)
+  }
+
+  /** Returns an [[IndexCopier]] for copying the documents currently visible in this index into the
+    * specified index, which can have a different number of partitions.
+    *
+    * @param target the index receiving the documents
+    * @param router a function returning, for each segment, the target partition of each document
+    * @return a copier of the currently visible documents
+    */
+  def copier(target: PartitionedIndex, router: LeafReader => Int => Int): IndexCopier = {
+    new IndexCopier(indexes.map(_.searcherManager), target, router)
+  }
+
   /** Finds the top hits for a query and sort, starting from an optional position.
     *
     * @param partitions the index partitions where the operation will be done
     * @param query      the query to search for
     * @param sort       the sort to be applied
     * @param count      the max number of results to be collected
+    * @param values     the sort values of the start positions by partition, preferred over terms
+    * @param docValues  the names of additional fields to be loaded from their doc values
+    * @param cancelled  a function returning `true` if the search should be aborted
+    * @param profile    the profile where the time spent in each search phase is recorded
     * @return the found documents, sorted first by `sort`, then by `query` relevance
     */
-  def search(partitions: List[(Int, Option[Term])], query: Query, sort: Sort, count: Int)
-  : DocumentIterator = {
+  def search(
+      partitions: List[(Int, Option[Term])],
+      query: Query,
+      sort: Sort,
+      count: Int,
+      values: Map[Int, Array[AnyRef]] = Map.empty,
+      docValues: Set[String] = Set.empty,
+      cancelled: () => Boolean = () => false,
+      profile: SearchProfile = SearchProfile.NONE): DocumentIterator = {
     logger.debug(
       s"""Searching in $name
          | partitions : ${partitions.map(_._1).mkString(", ")}
@@ -200,8 +329,33 @@ class PartitionedIndex(
          |      count : $count
          |       sort : $sort
        """.stripMargin)
-    val cursors = partitions.map { case (p, a) => (indexes(p).searcherManager, a) }
-    new DocumentIterator(cursors, mergeSort, sort, query, count, fields)
+    val released = new AtomicBoolean(false)
+    val releaser = () => if (released.compareAndSet(false, true)) release()
+    references.incrementAndGet
+    try {
+      if (retired) throw new IndexException(s"Index $name has been retired")
+      val cursors = partitions.map { case (p, a) => (indexes(p).searcherManager, a, values.get(p)) }
+      val loaded = if (docValues.isEmpty) fields else (fields.asScala ++ docValues).asJava
+      new DocumentIterator(cursors, mergeSort, sort, query, count, loaded, searchExecutor,
+        searchParallelism, prefetchPages, minPageSize, maxPageSize, cancelled, profile, releaser)
+    } catch {
+      case e: Throwable =>
+        releaser.apply()
+        throw e
+    }
+  }
+
+}
+
+/** Companion object for [[PartitionedIndex]]. */
+object PartitionedIndex {
+
+  /** The node-wide executor for searching partitions, shared by all the indexes not configuring a
+    * dedicated one, so the number of search threads doesn't grow with the number of indexes.
+    */
+  lazy val SEARCH_EXECUTOR: SearchExecutor = {
+    val threads = Runtime.getRuntime.availableProcessors
+    new SearchExecutor(threads, threads * 16, "lucene-partition-searcher-%d")
   }
 
-}
\ No newline at end of file
+}
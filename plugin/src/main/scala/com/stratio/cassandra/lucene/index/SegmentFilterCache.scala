@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+import com.stratio.cassandra.lucene.index.SegmentFilterCache._
+import org.apache.lucene.index.LeafReader.CoreClosedListener
+import org.apache.lucene.search.{IndexSearcher, LRUQueryCache, Query, UsageTrackingQueryCachingPolicy}
+
+/** Cache of the per-segment sets of documents matching the non-scoring clauses of the searches,
+  * such as the conditions of the search filters. The sets are evicted in LRU order when the cache
+  * exceeds its memory bound, and they are discarded when their segment is closed. A clause is
+  * cached only after it has been repeatedly used, the more times the cheaper it is to evaluate, and
+  * only in segments that are large enough.
+  *
+  * The same cache is shared by all the searchers of all the partitions of an index. By default, the
+  * sets are stored in a node-wide cache shared by all the indexes, so the memory used by the cached
+  * sets doesn't grow with the number of indexes, and this only keeps the statistics of the index.
+  *
+  * @param maxMB          the max memory used by a cache dedicated to the index, in MB, or none to
+  *                       use the cache shared by all the node indexes
+  * @param maxQueries     the max number of distinct cached clauses in a dedicated cache
+  * @param minSegmentDocs the min number of documents of a segment for caching its sets
+  */
+class SegmentFilterCache(
+    maxMB: Option[Int] = None,
+    maxQueries: Int = DEFAULT_MAX_QUERIES,
+    minSegmentDocs: Int = DEFAULT_MIN_SEGMENT_DOCS) {
+
+  private[this] val cache = maxMB.map(mb => new SharedCache(maxQueries, mb * 1024L * 1024L))
+    .getOrElse(SHARED_CACHE)
+  private[this] val policy =
+    new UsageTrackingQueryCachingPolicy(minSegmentDocs, MIN_SEGMENT_RATIO, HISTORY_SIZE)
+
+  private[index] val hitCount = new LongAdder
+  private[index] val missCount = new LongAdder
+  private[index] val cacheSize = new LongAdder
+  private[index] val cacheBytes = new LongAdder
+
+  /** Sets this cache and its caching policy in the specified searcher.
+    *
+    * @param searcher a searcher
+    */
+  def configure(searcher: IndexSearcher): Unit = {
+    searcher.getIndexReader.leaves.forEach(leaf => cache.register(leaf.reader.getCoreCacheKey, this,
+      listener => leaf.reader.addCoreClosedListener(listener)))
+    searcher.setQueryCache(cache)
+    searcher.setQueryCachingPolicy(policy)
+  }
+
+  /** Returns the number of lookups of a clause in a segment that have found a cached set.
+    *
+    * @return the number of cache hits
+    */
+  def hits: Long = hitCount.sum
+
+  /** Returns the number of lookups of a clause in a segment that haven't found a cached set.
+    *
+    * @return the number of cache misses
+    */
+  def misses: Long = missCount.sum
+
+  /** Returns the ratio of lookups that have found a cached set.
+    *
+    * @return the cache hit rate, between 0 and 1
+    */
+  def hitRate: Double = {
+    val (hits, total) = (this.hits, this.hits + this.misses)
+    if (total == 0) 0 else hits.toDouble / total
+  }
+
+  /** Returns the number of cached per-segment sets.
+    *
+    * @return the number of cached sets
+    */
+  def size: Long = cacheSize.sum
+
+  /** Returns the memory used by the cached sets, in bytes.
+    *
+    * @return the used memory in bytes
+    */
+  def ramBytesUsed: Long = cacheBytes.sum
+
+}
+
+/** Companion object for [[SegmentFilterCache]]. */
+object SegmentFilterCache {
+
+  /** The default max number of distinct cached clauses. */
+  val DEFAULT_MAX_QUERIES = 1000
+
+  /** The default min number of documents of a segment for caching its sets. */
+  val DEFAULT_MIN_SEGMENT_DOCS = 10000
+
+  /** The min ratio of the documents of the index in a segment for caching its sets. */
+  val MIN_SEGMENT_RATIO = 0.03F
+
+  /** The number of recently used clauses tracked to decide if a clause should be cached. */
+  val HISTORY_SIZE = 256
+
+  /** The max memory used by the node-wide cache, which is the same fraction of the heap used by the
+    * default Lucene cache, but without its fixed cap, because it is shared by all the indexes.
+    */
+  val SHARED_CACHE_MAX_BYTES: Long = Runtime.getRuntime.maxMemory / 20
+
+  /** The node-wide cache shared by all the indexes not configuring a dedicated one. */
+  lazy val SHARED_CACHE = new SharedCache(DEFAULT_MAX_QUERIES, SHARED_CACHE_MAX_BYTES)
+
+  /** [[LRUQueryCache]] that can be shared by several indexes, keeping the statistics of the cached
+    * sets of each index segment in the [[SegmentFilterCache]] of its index.
+    *
+    * @param maxQueries  the max number of distinct cached clauses
+    * @param maxRamBytes the max memory used by the cached sets, in bytes
+    */
+  class SharedCache(maxQueries: Int, maxRamBytes: Long)
+    extends LRUQueryCache(maxQueries, maxRamBytes) {
+
+    private[this] val owners = new ConcurrentHashMap[AnyRef, SegmentFilterCache]
+
+    /** Associates the specified segment with the specified index cache, until the segment is
+      * closed.
+      *
+      * @param key      the core cache key of the segment
+      * @param owner    the index cache
+      * @param listener a function adding a listener to be called when the segment is closed
+      */
+    private[index] def register(
+        key: AnyRef,
+        owner: SegmentFilterCache,
+        listener: CoreClosedListener => Unit): Unit = {
+      if (owners.putIfAbsent(key, owner) == null) listener.apply(key => {
+        clearCoreCacheKey(key)
+        owners.remove(key)
+      })
+    }
+
+    private[this] def owner(key: AnyRef)(f: SegmentFilterCache => Unit): Unit = {
+      val owner = owners.get(key)
+      if (owner != null) f(owner)
+    }
+
+    /** @inheritdoc */
+    override protected def onHit(key: AnyRef, query: Query): Unit = {
+      super.onHit(key, query)
+      owner(key)(_.hitCount.increment())
+    }
+
+    /** @inheritdoc */
+    override protected def onMiss(key: AnyRef, query: Query): Unit = {
+      super.onMiss(key, query)
+      owner(key)(_.missCount.increment())
+    }
+
+    /** @inheritdoc */
+    override protected def onDocIdSetCache(key: AnyRef, ramBytesUsed: Long): Unit = {
+      super.onDocIdSetCache(key, ramBytesUsed)
+      owner(key)(owner => {
+        owner.cacheSize.increment()
+        owner.cacheBytes.add(ramBytesUsed)
+      })
+    }
+
+    /** @inheritdoc */
+    override protected def onDocIdSetEviction(key: AnyRef, entries: Int, ramBytes: Long): Unit = {
+      super.onDocIdSetEviction(key, entries, ramBytes)
+      owner(key)(owner => {
+        owner.cacheSize.add(-entries)
+        owner.cacheBytes.add(-ramBytes)
+      })
+    }
+
+    /** @inheritdoc */
+    override protected def onClear(): Unit = {
+      super.onClear()
+      owners.values.forEach(owner => {
+        owner.cacheSize.reset()
+        owner.cacheBytes.reset()
+      })
+    }
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import com.stratio.cassandra.lucene.index.SlicedIndexSearcher._
+import com.stratio.cassandra.lucene.util.SearchExecutor
+import org.apache.lucene.index.{IndexReader, LeafReaderContext}
+import org.apache.lucene.search.IndexSearcher
+import org.apache.lucene.search.IndexSearcher.LeafSlice
+
+import scala.collection.mutable
+import scala.jdk.CollectionConverters._
+
+/** [[IndexSearcher]] searching groups of index segments concurrently in the node-wide slice
+  * executor. Segments are grouped in slices containing at least `minDocsPerSlice` documents, and
+  * there are never more than `maxSlices` slices, so a single search can't take all the threads of
+  * the shared executor.
+  *
+  * @param reader          the index reader
+  * @param maxSlices       the max number of slices to be searched concurrently
+  * @param minDocsPerSlice the min number of documents per slice
+  */
+class SlicedIndexSearcher(reader: IndexReader, maxSlices: Int, minDocsPerSlice: Int)
+  extends IndexSearcher(reader, executor.executorService) {
+
+  /** @inheritdoc */
+  override protected def slices(leaves: java.util.List[LeafReaderContext]): Array[LeafSlice] = {
+    SlicedIndexSearcher.slices(leaves.asScala.toList, maxSlices, minDocsPerSlice)
+  }
+
+}
+
+/** Companion object for [[SlicedIndexSearcher]]. */
+object SlicedIndexSearcher {
+
+  /** The default min number of documents per slice. */
+  val DEFAULT_MIN_DOCS_PER_SLICE = 250000
+
+  /** The node-wide executor shared by all sliced searches, bounding their total concurrency. */
+  lazy val executor: SearchExecutor = {
+    val threads = Runtime.getRuntime.availableProcessors
+    new SearchExecutor(threads, threads * 16, "lucene-slice-searcher-%d")
+  }
+
+  /** Groups the specified index segments in no more than the specified number of slices, each of
+    * them containing at least the specified number of documents, except maybe the last one.
+    *
+    * @param leaves          the index segments
+    * @param maxSlices       the max number of slices
+    * @param minDocsPerSlice the min number of documents per slice
+    * @return the slices
+    */
+  def slices(leaves: List[LeafReaderContext], maxSlices: Int, minDocsPerSlice: Int)
+  : Array[LeafSlice] = {
+    val totalDocs = (0L /: leaves) (_ + _.reader.maxDoc)
+    val docsPerSlice = Math.max(minDocsPerSlice, Math.ceil(totalDocs.toDouble / maxSlices).toLong)
+    val slices = mutable.ListBuffer[List[LeafReaderContext]]()
+    val slice = mutable.ListBuffer[LeafReaderContext]()
+    var sliceDocs = 0L
+    for (leaf <- leaves.sortBy(-_.reader.maxDoc)) {
+      slice += leaf
+      sliceDocs += leaf.reader.maxDoc
+      if (sliceDocs >= docsPerSlice && slices.size < maxSlices - 1) {
+        slices += slice.toList
+        slice.clear()
+        sliceDocs = 0
+      }
+    }
+    if (slice.nonEmpty) slices += slice.toList
+    slices.map(s => new LeafSlice(s: _*)).toArray
+  }
+}
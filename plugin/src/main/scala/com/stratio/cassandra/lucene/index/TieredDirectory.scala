@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import java.util
+import java.util.concurrent.ConcurrentHashMap
+
+import org.apache.lucene.store._
+import org.apache.lucene.util.IOUtils
+
+import scala.jdk.CollectionConverters._
+
+/** [[Directory]] storing the files of large merged segments in a cold directory, and the rest of
+  * files in a hot directory. This way recently flushed and small segments can live in fast storage
+  * while the bulk of the index is kept in slower or larger storage. Files are never moved between
+  * directories, so a segment reaches the cold directory when it is rewritten by a big enough merge,
+  * such as those triggered by a force merge.
+  *
+  * @param hot          the directory for flushed and small merged segments, locks and commit points
+  * @param cold         the directory for large merged segments
+  * @param coldMinBytes the min estimated size in bytes of a merged segment to be stored in `cold`
+  */
+class TieredDirectory(hot: Directory, cold: Directory, coldMinBytes: Long) extends Directory {
+
+  private[this] val coldFiles: util.Set[String] = ConcurrentHashMap.newKeySet[String]
+  coldFiles.addAll(util.Arrays.asList(cold.listAll: _*))
+
+  private[this] def directory(name: String): Directory = if (coldFiles.contains(name)) cold else hot
+
+  private[this] def isCold(context: IOContext): Boolean =
+    context.mergeInfo != null && context.mergeInfo.estimatedMergeBytes >= coldMinBytes
+
+  /** @inheritdoc */
+  override def listAll(): Array[String] = (hot.listAll ++ cold.listAll).distinct.sorted
+
+  /** @inheritdoc */
+  override def deleteFile(name: String): Unit = {
+    directory(name).deleteFile(name)
+    coldFiles.remove(name)
+  }
+
+  /** @inheritdoc */
+  override def fileLength(name: String): Long = directory(name).fileLength(name)
+
+  /** @inheritdoc */
+  override def createOutput(name: String, context: IOContext): IndexOutput = {
+    if (isCold(context)) {
+      coldFiles.add(name)
+      cold.createOutput(name, context)
+    } else hot.createOutput(name, context)
+  }
+
+  /** @inheritdoc */
+  override def sync(names: util.Collection[String]): Unit = {
+    val (coldNames, hotNames) = names.asScala.partition(coldFiles.contains)
+    if (hotNames.nonEmpty) hot.sync(hotNames.asJavaCollection)
+    if (coldNames.nonEmpty) cold.sync(coldNames.asJavaCollection)
+  }
+
+  /** @inheritdoc */
+  override def renameFile(source: String, dest: String): Unit = {
+    if (coldFiles.contains(source)) {
+      cold.renameFile(source, dest)
+      coldFiles.add(dest)
+      coldFiles.remove(source)
+    } else hot.renameFile(source, dest)
+  }
+
+  /** @inheritdoc */
+  override def openInput(name: String, context: IOContext): IndexInput = {
+    directory(name).openInput(name, context)
+  }
+
+  /** @inheritdoc */
+  override def obtainLock(name: String): Lock = hot.obtainLock(name)
+
+  /** @inheritdoc */
+  override def close(): Unit = IOUtils.close(hot, cold)
+
+  /** @inheritdoc */
+  override def toString: String = s"TieredDirectory(hot=$hot, cold=$cold)"
+
+}
+
+/** Companion object for [[TieredDirectory]]. */
+object TieredDirectory {
+
+  /** The default min estimated size in MB of a merged segment to be stored in the cold directory. */
+  val DEFAULT_COLD_MIN_MB = 1024
+
+}
@@ -20,7 +20,6 @@ import java.nio.ByteBuffer
 import com.google.common.base.MoreObjects
 import com.google.common.primitives.Longs
 import com.stratio.cassandra.lucene.mapping.ClusteringMapper._
-import com.stratio.cassandra.lucene.util.ByteBufferUtils
 import com.stratio.cassandra.lucene.util.ByteBufferUtils._
 import org.apache.cassandra.schema.TableMetadata
 import org.apache.cassandra.schema.ColumnMetadata
@@ -42,10 +41,12 @@ import scala.jdk.CollectionConverters._
 
 /** Class for several clustering key mappings between Cassandra and Lucene.
   *
-  * @param metadata the indexed table metadata
+  * @param metadata   the indexed table metadata
+  * @param storedKeys if the clustering key should also be written as a stored field, so it can be
+  *                   read by the previous versions, which don't read it from the doc values
   * @author Andres de la Pena `adelapena@stratio.com`
   */
-class ClusteringMapper(metadata: TableMetadata) {
+class ClusteringMapper(metadata: TableMetadata, storedKeys: Boolean = true) {
 
   /** The clustering key comparator */
   val comparator: ClusteringComparator = metadata.comparator
@@ -55,7 +56,9 @@ class ClusteringMapper(metadata: TableMetadata) {
 
   val clusteringColumns: List[ColumnMetadata] = metadata.clusteringColumns.asScala.toList
 
-  /** Returns a list of Lucene [[IndexableField]]s representing the specified primary key.
+  /** Returns a list of Lucene [[IndexableField]]s representing the specified primary key. The
+    * clustering key is retrieved from the doc values of the indexed field, so it is only stored if
+    * the stored keys are requested.
     *
     * @param key        the partition key
     * @param clustering the clustering key
@@ -63,16 +66,15 @@ class ClusteringMapper(metadata: TableMetadata) {
     */
   def indexableFields(key: DecoratedKey, clustering: Clustering[_]): List[IndexableField] = {
 
-    // Build stored field for clustering key retrieval
-    val plainClustering = bytesRef(byteBuffer(clustering))
-    val storedField = new StoredField(FIELD_NAME, plainClustering)
-
     // Build indexed field prefixed by token value collation
+    val plainClustering = bytesRef(byteBuffer(clustering))
     val bb = ByteBuffer.allocate(PREFIX_SIZE + plainClustering.length)
     bb.put(prefix(key.getToken)).put(plainClustering.bytes).flip
     val indexedField = new Field(FIELD_NAME, bytesRef(bb), FIELD_TYPE)
 
-    List(indexedField, storedField)
+    // Build stored field for clustering key retrieval by previous versions
+    if (storedKeys) List(indexedField, new StoredField(FIELD_NAME, plainClustering))
+    else List(indexedField)
   }
 
   /** Returns the [[ByteBuffer]] representation of the specified [[Clustering]].
@@ -102,14 +104,26 @@ class ClusteringMapper(metadata: TableMetadata) {
     Clustering.make(clusteringType.split(clustering): _*)
   }
 
-  /** Returns the clustering key contained in the specified [[Document]].
+  /** Returns the clustering key contained in the specified [[Document]], as loaded from the doc
+    * values of the clustering field.
     *
     * @param document a document containing the clustering key to be get
     * @return the clustering key contained in the document
     */
   def clustering(document: Document): Clustering[_] = {
-    val bytesRef = document.getBinaryValue(FIELD_NAME)
-    clustering(ByteBufferUtils.byteBuffer(bytesRef))
+    clustering(document.getBinaryValue(FIELD_NAME))
+  }
+
+  /** Returns the clustering key represented by the specified doc values, which are prefixed by the
+    * collated token.
+    *
+    * @param bytesRef the doc values of the clustering field
+    * @return the clustering key represented by the doc values
+    */
+  def clustering(bytesRef: BytesRef): Clustering[_] = {
+    val offset = bytesRef.offset + PREFIX_SIZE
+    val length = bytesRef.length - PREFIX_SIZE
+    clustering(ByteBuffer.wrap(bytesRef.bytes, offset, length).slice)
   }
 
   /** Returns a Lucene [[SortField]] to sort documents by primary key.
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.mapping
+
+import java.nio.ByteBuffer
+
+import com.stratio.cassandra.lucene.schema.Schema
+import com.stratio.cassandra.lucene.schema.mapping._
+import org.apache.cassandra.db.marshal._
+import org.apache.cassandra.db.rows.{BufferCell, Cell}
+import org.apache.cassandra.schema.{ColumnMetadata, TableMetadata}
+import org.apache.lucene.document.Document
+import org.apache.lucene.index.IndexableField
+import org.apache.lucene.util.{BytesRef, NumericUtils}
+
+import scala.jdk.CollectionConverters._
+
+/** Maps the doc values of a Lucene document to the cells of the regular columns they cover. A
+  * column is covered if it is a single cell column mapped to its own doc values field in a way
+  * that preserves its exact value, so it can be read from the index instead of from the SSTables.
+  * That is the case of `int`, `bigint`, `float` and `double` columns mapped by the mapper of the
+  * same type, and of `text` and `ascii` columns mapped by a case sensitive string mapper.
+  *
+  * @param schema   a schema
+  * @param metadata a table metadata
+  */
+class CoveringMapper(schema: Schema, metadata: TableMetadata) {
+
+  /** The doc values field name and value decoder of each covered column. */
+  private[this] val decoders: Map[ColumnMetadata, (String, IndexableField => ByteBuffer)] =
+    metadata.regularColumns.asScala.flatMap(column => decoder(column).map(column -> _)).toMap
+
+  private[this] def decoder(column: ColumnMetadata)
+  : Option[(String, IndexableField => ByteBuffer)] = {
+    if (column.isComplex) return None
+    val name = column.name.toString
+    val mappers = schema.mappers.values.asScala.collect {
+      case mapper: SingleColumnMapper[_] if mapper.column == name && mapper.field == name => mapper
+    }
+    val dataType = column.`type`
+    mappers.collectFirst {
+      case m: IntegerMapper if dataType eq Int32Type.instance =>
+        (m.field, f => Int32Type.instance.decompose(f.numericValue.intValue))
+      case m: LongMapper if dataType eq LongType.instance =>
+        (m.field, f => LongType.instance.decompose(f.numericValue.longValue))
+      case m: FloatMapper if dataType eq FloatType.instance =>
+        (m.field, f => FloatType.instance.decompose(
+          NumericUtils.sortableIntToFloat(f.numericValue.intValue)))
+      case m: DoubleMapper if dataType eq DoubleType.instance =>
+        (m.field, f => DoubleType.instance.decompose(
+          NumericUtils.sortableLongToDouble(f.numericValue.longValue)))
+      case m: StringMapper if m.caseSensitive &&
+        ((dataType eq UTF8Type.instance) || (dataType eq AsciiType.instance)) =>
+        (m.field, f => ByteBuffer.wrap(BytesRef.deepCopyOf(f.binaryValue).bytes))
+    }
+  }
+
+  /** Returns if the specified column can be read from the index doc values.
+    *
+    * @param column a column
+    * @return `true` if `column` is covered, `false` otherwise
+    */
+  def covers(column: ColumnMetadata): Boolean = decoders.contains(column)
+
+  /** Returns the names of the doc values fields covering the specified columns.
+    *
+    * @param columns covered columns
+    * @return the names of the doc values fields to be loaded
+    */
+  def fields(columns: Iterable[ColumnMetadata]): Set[String] = {
+    columns.map(decoders(_)._1).toSet
+  }
+
+  /** Returns the cell of the specified covered column contained in the specified document, if the
+    * document has a value for it.
+    *
+    * @param document  a document with the doc values fields covering `column`
+    * @param column    a covered column
+    * @param timestamp the timestamp of the cell
+    * @return the cell of `column` in `document`
+    */
+  def cell(document: Document, column: ColumnMetadata, timestamp: Long): Option[Cell[_]] = {
+    val (field, decode) = decoders(column)
+    Option(document.getField(field)).map(f => BufferCell.live(column, timestamp, decode(f)))
+  }
+
+}
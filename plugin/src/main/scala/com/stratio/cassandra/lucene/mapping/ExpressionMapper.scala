@@ -15,16 +15,18 @@
  */
 package com.stratio.cassandra.lucene.mapping
 
-import com.stratio.cassandra.lucene.IndexException
-import com.stratio.cassandra.lucene.mapping.ExpressionMapper.parse
+import java.nio.ByteBuffer
+
+import com.stratio.cassandra.lucene.{IndexException, IndexPagingState}
 import com.stratio.cassandra.lucene.search.{Search, SearchBuilder}
 import org.apache.cassandra.cql3.Operator
 import org.apache.cassandra.cql3.statements.schema.IndexTarget._
-import org.apache.cassandra.db.ReadCommand
+import org.apache.cassandra.db.{LivenessInfo, ReadCommand}
 import org.apache.cassandra.db.filter.RowFilter
 import org.apache.cassandra.db.filter.RowFilter.{CustomExpression, Expression}
 import org.apache.cassandra.db.marshal.UTF8Type
 import org.apache.cassandra.db.rows.{BTreeRow, BufferCell, Row}
+import org.apache.cassandra.io.util.{DataInputBuffer, DataOutputBuffer}
 import org.apache.cassandra.schema.{ColumnMetadata, IndexMetadata, TableMetadata}
 import org.apache.commons.lang3.StringUtils.isBlank
 import org.apache.lucene.search.ScoreDoc
@@ -35,30 +37,60 @@ import scala.jdk.CollectionConverters._
   *
   * @param tableMetadata the indexed table metadata
   * @param indexMetadata the index metadata
+  * @param searches      the cache of parsed and validated searches
   * @author Andres de la Pena `adelapena@stratio.com`
   */
-case class ExpressionMapper(tableMetadata: TableMetadata, indexMetadata: IndexMetadata) {
+case class ExpressionMapper(
+    tableMetadata: TableMetadata,
+    indexMetadata: IndexMetadata,
+    searches: SearchCache) {
 
   val name = indexMetadata.name
   val column = Option(indexMetadata.options.get(TARGET_OPTION_NAME)).filterNot(isBlank)
   val columns = tableMetadata.columns().asScala.toSet
   val columnDefinition = column.flatMap(name => columns.find(_.name.toString == name))
 
-  /** Returns the first [[Search]] contained in the specified read command.
+  /** Returns the first validated [[Search]] contained in the specified read command, with the
+    * paging state attached to the expression, if any.
     *
     * @param command a command
     * @return the `string` JSON search represented by `command`
     * @throws IndexException if there is no such search
     */
-  def search(command: ReadCommand): Search = parse(json(command))
+  def search(command: ReadCommand): Search = search(value(command))
 
-  /** Returns the [[Search]] represented by the specified CQL expression.
+  /** Returns the validated [[Search]] represented by the specified CQL expression, with the paging
+    * state attached to the expression, if any.
     *
     * @param expression a expression
     * @return the `string` JSON search represented by `expression`
     * @throws IndexException if there is no such search
     */
-  def search(expression: Expression): Search = parse(json(expression))
+  def search(expression: Expression): Search = search(value(expression))
+
+  private def search(value: ByteBuffer): Search = {
+    val search = searches.get(IndexPagingState.detach(value))
+    IndexPagingState.attached(value).map(search.paging).getOrElse(search)
+  }
+
+  /** Returns if the rows of the specified read command can be built from the index, without
+    * reading them from the SSTables, because only their primary keys are going to be counted.
+    *
+    * @param command a command
+    * @return `true` if the command has been marked as index only, `false` otherwise
+    */
+  def indexOnly(command: ReadCommand): Boolean = IndexPagingState.isIndexOnly(value(command))
+
+  /** Returns if the rows of the specified read command should carry the sort values with which
+    * they have been found, so the coordinator can merge them without searching them again. That
+    * requires a base column to hold the values.
+    *
+    * @param command a command
+    * @return `true` if the command has been marked as requesting sort keys, `false` otherwise
+    */
+  def sortKeys(command: ReadCommand): Boolean = {
+    columnDefinition.isDefined && IndexPagingState.hasSortKeys(value(command))
+  }
 
   /** Returns the first `string` JSON search contained in the specified read command.
     *
@@ -67,10 +99,7 @@ case class ExpressionMapper(tableMetadata: TableMetadata, indexMetadata: IndexMe
     * @throws IndexException if there is no such expression
     */
   def json(command: ReadCommand): String = {
-    command.rowFilter.getExpressions.asScala.collect {
-      case e: CustomExpression if name == e.getTargetIndex.name => e.getValue
-      case e if supports(e) => e.getIndexValue
-    }.map(UTF8Type.instance.compose).head
+    UTF8Type.instance.compose(IndexPagingState.detach(value(command)))
   }
 
   /** Returns the `string` JSON search represented by the specified CQL expression.
@@ -80,12 +109,20 @@ case class ExpressionMapper(tableMetadata: TableMetadata, indexMetadata: IndexMe
     * @throws IndexException if there is no such expression
     */
   def json(expression: Expression): String = {
-    UTF8Type.instance.compose(
-      expression match {
-        case e: CustomExpression if name == e.getTargetIndex.name => e.getValue
-        case e if supports(e) => e.getIndexValue
-        case _ => throw new IndexException(s"Unsupported expression $expression")
-      })
+    UTF8Type.instance.compose(IndexPagingState.detach(value(expression)))
+  }
+
+  private def value(command: ReadCommand): ByteBuffer = {
+    command.rowFilter.getExpressions.asScala.collect {
+      case e: CustomExpression if name == e.getTargetIndex.name => e.getValue
+      case e if supports(e) => e.getIndexValue
+    }.head
+  }
+
+  private def value(expression: Expression): ByteBuffer = expression match {
+    case e: CustomExpression if name == e.getTargetIndex.name => e.getValue
+    case e if supports(e) => e.getIndexValue
+    case _ => throw new IndexException(s"Unsupported expression $expression")
   }
 
   /** Returns if the specified expression is targeted to this index
@@ -130,17 +167,54 @@ case class ExpressionMapper(tableMetadata: TableMetadata, indexMetadata: IndexMe
     // Skip if there is no base column or score
     if (columnDefinition.isEmpty) return row
 
-    // Copy row
+    // Add score cell
+    val scoreCellValue = UTF8Type.instance.decompose(score.score.toString)
+    withBaseCell(row, scoreCellValue)
+  }
+
+  /** Returns a new row decorating the specified row with the specified sort values, encoded in a
+    * cell of the base column, which should be replaced by the score cell once the rows have been
+    * merged by the coordinator.
+    *
+    * @param row    the row to be decorated
+    * @param values the sort values with which the row has been found
+    * @return a new decorated row
+    */
+  def withSortKey(row: Row, values: Array[AnyRef]): Row = {
+    if (columnDefinition.isEmpty) return row
+    val out = new DataOutputBuffer
+    try {
+      IndexPagingState.writeSortValues(out, Some(values))
+      withBaseCell(row, out.asNewBuffer)
+    } finally out.close()
+  }
+
+  /** Returns the sort values attached to the specified row with [[withSortKey]], if any.
+    *
+    * @param row a row
+    * @return the sort values of the row, if they are known
+    */
+  def sortKey(row: Row): Option[Array[AnyRef]] = {
+    columnDefinition.flatMap(column => Option(row.getCell(column))).flatMap(cell => {
+      IndexPagingState.readSortValues(new DataInputBuffer(cell.buffer, false))
+    })
+  }
+
+  private def withBaseCell(row: Row, value: ByteBuffer): Row = {
+
+    // Copy row without any previous base column cell
+    val column = columnDefinition.get
     val builder = BTreeRow.unsortedBuilder()
     builder.newRow(row.clustering())
     builder.addRowDeletion(row.deletion)
     builder.addPrimaryKeyLivenessInfo(row.primaryKeyLivenessInfo)
-    row.cells.forEach(builder addCell _)
+    row.cells.forEach(cell => if (cell.column != column) builder.addCell(cell))
 
-    // Add score cell
-    val timestamp = row.primaryKeyLivenessInfo.timestamp
-    val scoreCellValue = UTF8Type.instance.decompose(score.score.toString)
-    builder.addCell(BufferCell.live(columnDefinition.get, timestamp, scoreCellValue))
+    // Add base column cell, with the newest timestamp of the row if it has no primary key liveness
+    val liveness = row.primaryKeyLivenessInfo
+    val timestamp = if (!liveness.isEmpty) liveness.timestamp
+    else (LivenessInfo.NO_TIMESTAMP /: row.cells.asScala) ((t, cell) => Math.max(t, cell.timestamp))
+    builder.addCell(BufferCell.live(column, timestamp, value))
 
     builder.build
   }
@@ -22,6 +22,7 @@ import com.stratio.cassandra.lucene.util.ByteBufferUtils
 import org.apache.cassandra.config.DatabaseDescriptor
 import org.apache.cassandra.db.DecoratedKey
 import org.apache.cassandra.schema.TableMetadata
+import org.apache.cassandra.utils.FastByteOperations.compareUnsigned
 import org.apache.lucene.document.{Document, Field, FieldType}
 import org.apache.lucene.index.{DocValuesType, IndexOptions, IndexableField, Term}
 import org.apache.lucene.search.FieldComparator.TermValComparator
@@ -32,10 +33,12 @@ import scala.jdk.CollectionConverters._
 
 /** Class for several partition key mappings between Cassandra and Lucene.
   *
-  * @param metadata the indexed table metadata
+  * @param metadata   the indexed table metadata
+  * @param storedKeys if the partition key should also be written as a stored field, so it can be
+  *                   read by the previous versions, which don't read it from the doc values
   * @author Andres de la Pena `adelapena@stratio.com`
   */
-class PartitionMapper(metadata: TableMetadata) {
+class PartitionMapper(metadata: TableMetadata, storedKeys: Boolean = true) {
 
   val partitioner = DatabaseDescriptor.getPartitioner
   val validator = metadata.partitionKeyType
@@ -49,7 +52,7 @@ class PartitionMapper(metadata: TableMetadata) {
   def indexableField(partitionKey: DecoratedKey): IndexableField = {
     val bb = partitionKey.getKey
     val bytesRef = ByteBufferUtils.bytesRef(bb)
-    new Field(FIELD_NAME, bytesRef, FIELD_TYPE)
+    new Field(FIELD_NAME, bytesRef, if (storedKeys) FIELD_TYPE else UNSTORED_FIELD_TYPE)
   }
 
   /** Returns the specified raw partition key as a Lucene term.
@@ -89,13 +92,37 @@ class PartitionMapper(metadata: TableMetadata) {
     new TermQuery(term(partitionKey))
   }
 
-  /** Returns the partition key contained in the specified Lucene document.
+  /** Returns the partition key contained in the specified Lucene document, as loaded from the doc
+    * values of the partition key field.
     *
     * @param document the document containing the partition key to be get
     * @return the key contained in the specified Lucene document
     */
   def decoratedKey(document: Document): DecoratedKey = {
+    decoratedKey(document.getBinaryValue(FIELD_NAME))
+  }
+
+  /** Returns if the specified Lucene document belongs to the specified partition, comparing the
+    * raw bytes of the partition key instead of decoding and decorating the key of the document.
+    *
+    * @param document a document loaded with its partition key
+    * @param key      a partition key
+    * @return `true` if `document` belongs to the partition of `key`, `false` otherwise
+    */
+  def hasKey(document: Document, key: DecoratedKey): Boolean = {
     val bytesRef = document.getBinaryValue(FIELD_NAME)
+    val bb = key.getKey
+    bytesRef.length == bb.remaining &&
+      compareUnsigned(bytesRef.bytes, bytesRef.offset, bytesRef.length, bb) == 0
+  }
+
+  /** Returns the [[DecoratedKey]] represented by the specified raw partition key bytes, such as
+    * those stored in the partition key doc values.
+    *
+    * @param bytesRef the raw partition key
+    * @return the partition key represented by `bytesRef`
+    */
+  def decoratedKey(bytesRef: BytesRef): DecoratedKey = {
     val bb = ByteBufferUtils.byteBuffer(bytesRef)
     partitioner.decorateKey(bb)
   }
@@ -124,6 +151,11 @@ object PartitionMapper {
   FIELD_TYPE.setStored(true)
   FIELD_TYPE.setDocValuesType(DocValuesType.SORTED)
   FIELD_TYPE.freeze()
+
+  /** The Lucene field type without stored value. */
+  val UNSTORED_FIELD_TYPE = new FieldType(FIELD_TYPE)
+  UNSTORED_FIELD_TYPE.setStored(false)
+  UNSTORED_FIELD_TYPE.freeze()
 }
 
 /** [[SortField]] to sort by partition key.
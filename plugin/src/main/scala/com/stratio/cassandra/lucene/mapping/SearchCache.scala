@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.mapping
+
+import java.nio.ByteBuffer
+
+import com.github.benmanes.caffeine.cache.{Cache, Caffeine}
+import com.stratio.cassandra.lucene.mapping.SearchCache._
+import com.stratio.cassandra.lucene.schema.Schema
+import com.stratio.cassandra.lucene.search.{Search, SearchBuilder}
+import org.apache.cassandra.db.marshal.UTF8Type
+import org.apache.cassandra.utils.ByteBufferUtil
+
+/** LRU cache of the validated [[Search]]s represented by UTF-8 JSON search expression values, so
+  * repeated searches don't need to be parsed and validated again. The cache is bounded by an
+  * estimation of the memory used by the cached searches, proportional to the size of their JSON.
+  *
+  * @param schema the schema used to validate the searches
+  * @param maxMB  the max estimated size of the cached searches, in MB
+  */
+class SearchCache(schema: Schema, maxMB: Int) {
+
+  private[this] val cache: Cache[ByteBuffer, Search] = Caffeine.newBuilder
+    .maximumWeight(maxMB * 1024L * 1024L)
+    .weigher[ByteBuffer, Search]((json: ByteBuffer, _: Search) => weight(json))
+    .executor(task => task.run())
+    .recordStats
+    .build[ByteBuffer, Search]
+
+  /** Returns the validated search represented by the specified JSON, parsing and validating it
+    * only if it is not already cached.
+    *
+    * @param json a UTF-8 JSON search
+    * @return the validated search represented by `json`
+    */
+  def get(json: ByteBuffer): Search = {
+    val cached = cache.getIfPresent(json)
+    if (cached != null) cached else {
+      val search = SearchBuilder.fromJson(UTF8Type.instance.compose(json)).build.validate(schema)
+      cache.put(ByteBufferUtil.clone(json), search)
+      search
+    }
+  }
+
+  /** Discards all the cached searches, to be called when the schema of the index changes. */
+  def invalidate(): Unit = cache.invalidateAll()
+
+  /** Returns the number of searches found in the cache.
+    *
+    * @return the number of cache hits
+    */
+  def hits: Long = cache.stats.hitCount
+
+  /** Returns the number of searches not found in the cache.
+    *
+    * @return the number of cache misses
+    */
+  def misses: Long = cache.stats.missCount
+
+  /** Returns the approximate number of cached searches.
+    *
+    * @return the number of cached searches
+    */
+  def size: Long = cache.estimatedSize
+
+}
+
+/** Companion object for [[SearchCache]]. */
+object SearchCache {
+
+  /** The estimated size of a parsed search per byte of its JSON representation. */
+  val BYTES_PER_JSON_BYTE = 8
+
+  /** The estimated fixed size of a parsed search. */
+  val BASE_BYTES = 512
+
+  private def weight(json: ByteBuffer): Int = BASE_BYTES + BYTES_PER_JSON_BYTE * json.remaining
+
+}
@@ -16,6 +16,7 @@
 package com.stratio.cassandra.lucene.mapping
 
 import com.stratio.cassandra.lucene.IndexException
+import com.stratio.cassandra.lucene.index.CostBasedRangeQuery
 import com.stratio.cassandra.lucene.mapping.TokenMapper._
 import org.apache.cassandra.config.DatabaseDescriptor
 import org.apache.cassandra.db.DecoratedKey
@@ -75,12 +76,12 @@ class TokenMapper {
     val min: java.lang.Long = if (lower.isMinimum) Long.MinValue else longValue(lower)
     val max: java.lang.Long = if (upper.isMinimum) Long.MaxValue else longValue(upper)
 
-    // Do query using doc values or inverted index depending on empirical heuristic
-    if (max / 10 - min / 10 > 1222337203685480000L) {
-      Some(DocValuesRangeQuery.newLongRange(FIELD_NAME, min, max, includeLower, includeUpper))
-    } else {
-      Some(NumericRangeQuery.newLongRange(FIELD_NAME, min, max, includeLower, includeUpper))
-    }
+    // Let the searched index choose between doc values and inverted index
+    val selectivity = Math.max(0, max.toDouble - min.toDouble) / TOKEN_SPACE
+    Some(new CostBasedRangeQuery(
+      NumericRangeQuery.newLongRange(FIELD_NAME, min, max, includeLower, includeUpper),
+      DocValuesRangeQuery.newLongRange(FIELD_NAME, min, max, includeLower, includeUpper),
+      selectivity))
   }
 
   /** Returns a Lucene query to find the documents containing the specified token.
@@ -100,6 +101,9 @@ object TokenMapper {
   /** The Lucene field name */
   val FIELD_NAME = "_token"
 
+  /** The size of the Murmur3 token ring */
+  val TOKEN_SPACE: Double = Math.pow(2, 64)
+
   /** The Lucene field type */
   val FIELD_TYPE = new FieldType
   FIELD_TYPE.setTokenized(true)
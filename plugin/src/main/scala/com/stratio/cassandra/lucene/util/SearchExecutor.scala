@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.util
+
+import java.io.Closeable
+import java.util.concurrent.TimeUnit.MINUTES
+import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicBoolean
+
+import com.stratio.cassandra.lucene.IndexException
+import org.apache.commons.lang3.concurrent.BasicThreadFactory
+
+/** A bounded thread pool for running independent search tasks concurrently, such as the searches
+  * over each of the partitions of an index. Tasks are rejected to the calling thread when the
+  * queue is full, so the caller never blocks waiting for queue space. Once the pool has been shut
+  * down, rejected tasks are cancelled instead, so nobody waits for tasks that will never run.
+  *
+  * @param numThreads the number of executor threads
+  * @param queueSize  the max number of queued tasks before running them in the calling thread
+  * @param name       the naming pattern of the executor threads
+  */
+class SearchExecutor(numThreads: Int, queueSize: Int, name: String = "lucene-searcher-%d")
+  extends Closeable with Logging {
+
+  if (numThreads <= 0) throw new IllegalArgumentException(
+    s"The number of search threads should be strictly positive but found $numThreads")
+
+  /** Runs the rejected tasks in the calling thread while the pool is open, and cancels them once it
+    * has been shut down. The tasks submitted as futures are cancelled, so their waiters are released
+    * with a [[CancellationException]].
+    */
+  private[this] val rejectionHandler = new RejectedExecutionHandler {
+    override def rejectedExecution(task: Runnable, executor: ThreadPoolExecutor): Unit = {
+      if (!executor.isShutdown) task.run() else task match {
+        case future: Future[_] => future.cancel(false)
+        case _ => throw new RejectedExecutionException("Search executor has been shut down")
+      }
+    }
+  }
+
+  private[this] val pool = {
+    val queue = new ArrayBlockingQueue[Runnable](queueSize)
+    val factory = new BasicThreadFactory.Builder().namingPattern(name).daemon(true).build()
+    val executor = new ThreadPoolExecutor(
+      numThreads, numThreads, 1, MINUTES, queue, factory, rejectionHandler)
+    executor.allowCoreThreadTimeOut(true)
+    executor
+  }
+
+  /** Returns the underlying [[ExecutorService]], to be used by Lucene's `IndexSearcher`.
+    *
+    * @return the underlying executor service
+    */
+  def executorService: ExecutorService = pool
+
+  /** Submits the specified task for asynchronous execution.
+    *
+    * @param task the task to be executed
+    * @return a future for the task result
+    */
+  def submit[A](task: () => A): Future[A] = pool.submit(new Callable[A] {
+    override def call(): A = task.apply()
+  })
+
+  /** Runs the specified tasks with no more than the specified number of them running at the same
+    * time, and returns their results in the same order as the tasks. If any of the tasks fails or
+    * the iteration is cancelled, the tasks that have not started yet are cancelled, and this waits
+    * for the already running ones, so the caller can safely release any resources they use. If this
+    * executor is shut down meanwhile, the tasks that can't be submitted anymore are cancelled and
+    * the search fails.
+    *
+    * @param tasks       the tasks to be run
+    * @param parallelism the max number of tasks running at the same time
+    * @param cancelled   a function returning `true` if the remaining tasks should not be run
+    * @return the results of the tasks
+    */
+  def invokeAll[A](tasks: IndexedSeq[() => A], parallelism: Int, cancelled: () => Boolean)
+  : IndexedSeq[A] = {
+    val results = new Array[Any](tasks.size)
+    val finished = new LinkedBlockingQueue[Future[(Int, A)]]
+    val futures = new java.util.ArrayList[Future[(Int, A)]](tasks.size)
+    val aborted = new AtomicBoolean(false)
+    var submitted = 0
+    var completed = 0
+    def submitNext(): Unit = {
+      val i = submitted
+      val future = new FutureTask[(Int, A)](new Callable[(Int, A)] {
+        override def call(): (Int, A) = {
+          if (aborted.get || cancelled.apply()) {
+            throw new CancellationException("Search has been cancelled")
+          }
+          (i, tasks(i).apply())
+        }
+      }) {
+        // Also called if the task is cancelled because the pool has been shut down
+        override def done(): Unit = finished.add(this)
+      }
+      futures.add(future)
+      pool.execute(future)
+      submitted += 1
+    }
+    try {
+      while (submitted < Math.min(parallelism, tasks.size)) submitNext()
+      while (completed < tasks.size) {
+        val (i, result) = finished.take.get
+        results(i) = result
+        completed += 1
+        if (submitted < tasks.size && !cancelled.apply()) submitNext()
+        else if (submitted < tasks.size) throw new CancellationException("Search has been cancelled")
+      }
+      results.toIndexedSeq.asInstanceOf[IndexedSeq[A]]
+    } catch {
+      case e: ExecutionException => throw new IndexException(e.getCause, "Concurrent search failed")
+      case e: CancellationException if pool.isShutdown =>
+        throw new IndexException(e, "Search executor has been shut down")
+      case e: InterruptedException => throw new IndexException(e, "Concurrent search interrupted")
+    } finally {
+      if (completed < tasks.size) {
+        aborted.set(true)
+        futures.forEach(f => try f.get catch {
+          case _: Exception =>
+        })
+      }
+    }
+  }
+
+  /** Returns if this executor has been shut down.
+    *
+    * @return `true` if this has been closed, `false` otherwise
+    */
+  def isShutdown: Boolean = pool.isShutdown
+
+  /** @inheritdoc */
+  override def close(): Unit = {
+    pool.shutdown()
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.util
+
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger, AtomicLong}
+
+import com.stratio.cassandra.lucene.IndexException
+import com.stratio.cassandra.lucene.util.SearchLimiter._
+
+/** Admission control for a class of searches of an index, limiting the number of them running at
+  * the same time. Searches exceeding the limit wait for a running one to finish in a bounded queue,
+  * and they are rejected if the queue is full or if they wait longer than a small fraction of their
+  * read timeout, so a burst of expensive searches can't hold all the read threads.
+  *
+  * @param name          the name of the limited searches, as it is shown in errors
+  * @param maxConcurrent the max number of running searches, unlimited if not positive
+  * @param maxQueued     the max number of searches waiting to run
+  */
+class SearchLimiter(name: String, maxConcurrent: Int, maxQueued: Int) extends Tracing {
+
+  private[this] val permits = new Semaphore(Math.max(maxConcurrent, 0), true)
+  private[this] val numRunning = new AtomicInteger
+  private[this] val numQueued = new AtomicInteger
+  private[this] val numRejected = new AtomicLong
+
+  /** If the number of running searches is limited. */
+  val enabled: Boolean = maxConcurrent > 0
+
+  /** Waits until a new search can run, and returns the permit to be closed when it finishes. The
+    * wait is bounded by [[SearchLimiter.MAX_WAIT_RATIO]] of the read timeout of the search, so the
+    * queued searches don't hold their read threads for the whole read timeout.
+    *
+    * @param readTimeout the read timeout of the search in milliseconds
+    * @return the permit to run the search
+    * @throws IndexException if the queue is full or the wait times out
+    */
+  def acquire(readTimeout: Long): AutoCloseable = {
+    val timeout = (readTimeout * MAX_WAIT_RATIO).toLong
+    if (enabled && !permits.tryAcquire(0, MILLISECONDS)) {
+      if (numQueued.incrementAndGet() > maxQueued) {
+        numQueued.decrementAndGet()
+        reject(s"$maxQueued are already queued")
+      }
+      tracer.trace(s"Lucene index queueing $name search")
+      val acquired = try permits.tryAcquire(timeout, MILLISECONDS) catch {
+        case e: InterruptedException => throw new IndexException(e, s"Interrupted $name search")
+      } finally numQueued.decrementAndGet()
+      if (!acquired) reject(s"none finished in $timeout ms")
+    }
+    numRunning.incrementAndGet()
+    val released = new AtomicBoolean(false)
+    () => if (released.compareAndSet(false, true)) {
+      numRunning.decrementAndGet()
+      if (enabled) permits.release()
+    }
+  }
+
+  private[this] def reject(reason: String): Nothing = {
+    numRejected.incrementAndGet()
+    throw new IndexException(
+      s"Too many concurrent $name searches: $maxConcurrent are running and $reason")
+  }
+
+  /** Returns the number of running searches.
+    *
+    * @return the number of running searches
+    */
+  def running: Int = numRunning.get
+
+  /** Returns the number of searches waiting to run.
+    *
+    * @return the number of queued searches
+    */
+  def queued: Int = numQueued.get
+
+  /** Returns the number of searches rejected because of a full queue or a wait timeout.
+    *
+    * @return the number of rejected searches
+    */
+  def rejected: Long = numRejected.get
+
+}
+
+/** Companion object for [[SearchLimiter]]. */
+object SearchLimiter {
+
+  /** The max fraction of the read timeout of a search that it can wait to run. */
+  val MAX_WAIT_RATIO = 0.1
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.util
+
+import com.codahale.metrics.Timer
+import org.apache.cassandra.metrics.CassandraMetricsRegistry.{MetricName, Metrics}
+
+/** The per-index latency metrics of each of the execution phases of the searches, registered in
+  * the Cassandra metrics registry as `<phase>Latency` timers. Each timer is exposed through JMX as
+  * its own MBean, named as the index MBean with an additional `name=<phase>Latency` key.
+  *
+  * @param keyspace the name of the keyspace
+  * @param table    the name of the table
+  * @param index    the name of the index
+  */
+class SearchMetrics(keyspace: String, table: String, index: String) {
+
+  private[this] val names = SearchPhase.values.map(phase => {
+    val name = s"${phase}Latency"
+    val mBean = s"com.stratio.cassandra.lucene:type=Lucene," +
+      s"keyspace=$keyspace,table=$table,index=$index,name=$name"
+    new MetricName("com.stratio.cassandra.lucene", "Lucene", name, s"$keyspace.$table.$index", mBean)
+  })
+
+  private[this] val timers = names.map(Metrics.timer).toArray
+
+  /** Returns the latency timer of the specified phase.
+    *
+    * @param phase a search phase
+    * @return the timer of `phase`
+    */
+  def timer(phase: SearchPhase): Timer = timers(phase.id)
+
+  /** Removes the metrics from the registry. */
+  def release(): Unit = names.foreach(Metrics.remove)
+
+}
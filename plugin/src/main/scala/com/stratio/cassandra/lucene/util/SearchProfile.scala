@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.util
+
+import java.util.concurrent.{ConcurrentHashMap, ConcurrentLinkedQueue}
+import java.util.concurrent.TimeUnit.NANOSECONDS
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicLong, AtomicLongArray}
+
+import com.stratio.cassandra.lucene.util.SearchPhase._
+
+import scala.jdk.CollectionConverters._
+
+/** A phase of the execution of a search.
+  *
+  * @param id   the ordinal of the phase
+  * @param name the name of the phase, as it is shown in metrics and traces
+  */
+sealed abstract class SearchPhase(val id: Int, val name: String) {
+
+  /** @inheritdoc */
+  override def toString: String = name
+
+}
+
+/** Companion object for [[SearchPhase]]. */
+object SearchPhase {
+
+  /** The parsing and validation of the JSON search. */
+  case object Parse extends SearchPhase(0, "Parse")
+
+  /** The building and rewriting of the Lucene query and sort. */
+  case object Build extends SearchPhase(1, "Build")
+
+  /** The seeking of the last position of the previous page. */
+  case object Seek extends SearchPhase(2, "Seek")
+
+  /** The Lucene searches of the index partitions. */
+  case object Search extends SearchPhase(3, "Search")
+
+  /** The loading of the primary keys and other fields of the found documents. */
+  case object Load extends SearchPhase(4, "Load")
+
+  /** The lookups of the partitions of the found documents in the memtables and SSTables. */
+  case object Read extends SearchPhase(5, "Read")
+
+  /** The coordinator post-processing of the merged rows of sorted searches. */
+  case object PostProcess extends SearchPhase(6, "PostProcess")
+
+  /** All the search phases, in execution order. */
+  val values: List[SearchPhase] = List(Parse, Build, Seek, Search, Load, Read, PostProcess)
+
+}
+
+/** The time spent by a search in each of its execution phases. Each measured time is recorded in
+  * the per-index latency metrics of its phase and, if the search has requested profiling, it is
+  * also accumulated to be reported in the query trace. Phases can be timed concurrently.
+  *
+  * Accumulated profiles also count the fetched pages of index results, the hits per searched index
+  * partition and the documents consumed by the reader, so slow searches can be reported.
+  *
+  * @param metrics     the per-index latency metrics, if any
+  * @param enabled     if the times should be accumulated to be traced
+  * @param accumulated if the times and counts should be accumulated even if they aren't traced
+  */
+class SearchProfile(metrics: Option[SearchMetrics], enabled: Boolean, accumulated: Boolean = false)
+  extends Tracing {
+
+  private[this] val accumulating = enabled || accumulated
+  private[this] val times = new AtomicLongArray(values.size)
+  private[this] val numPages = new AtomicLong
+  private[this] val numHits = new ConcurrentHashMap[Int, Long]
+  private[this] val numDocuments = new AtomicLong
+  private[this] val numRows = new AtomicLong
+  private[this] val completed = new AtomicBoolean(false)
+  private[this] val listeners = new ConcurrentLinkedQueue[SearchProfile => Unit]
+
+  /** Runs the specified function, timing it as the specified phase.
+    *
+    * @param phase the phase represented by `f`
+    * @param f     the function to be timed
+    * @return the result of `f`
+    */
+  def time[A](phase: SearchPhase)(f: => A): A = {
+    val start = System.nanoTime
+    try f finally record(phase, System.nanoTime - start)
+  }
+
+  /** Records the specified time spent in the specified phase.
+    *
+    * @param phase the search phase
+    * @param nanos the elapsed time in nanoseconds
+    */
+  def record(phase: SearchPhase, nanos: Long): Unit = {
+    metrics.foreach(_.timer(phase).update(nanos, NANOSECONDS))
+    if (accumulating) times.addAndGet(phase.id, nanos)
+  }
+
+  /** Records a fetched page of index results with the specified hits.
+    *
+    * @param shards the index of the searched partition of each hit of the page
+    */
+  def fetched(shards: Iterable[Int]): Unit = if (accumulating) {
+    numPages.incrementAndGet()
+    shards.foreach(shard => numHits.merge(shard, 1L, _ + _))
+  }
+
+  /** Records the specified number of documents consumed by the reader of the search results.
+    *
+    * @param documents the number of consumed documents
+    */
+  def consumed(documents: Int): Unit = if (accumulating) numDocuments.addAndGet(documents)
+
+  /** Records the specified number of rows collected by the reader of the search results.
+    *
+    * @param rows the number of collected rows
+    */
+  def collected(rows: Int): Unit = if (accumulating) numRows.addAndGet(rows)
+
+  /** Returns the accumulated time spent in the specified phase, if this profile is enabled.
+    *
+    * @param phase the search phase
+    * @return the time in nanoseconds
+    */
+  def nanos(phase: SearchPhase): Long = times.get(phase.id)
+
+  /** Returns the number of fetched pages of index results, if this profile is accumulated.
+    *
+    * @return the number of fetched pages
+    */
+  def pages: Long = numPages.get
+
+  /** Returns the number of hits per searched partition, identified by the order in which they are
+    * searched, if this profile is accumulated.
+    *
+    * @return the number of hits per searched partition
+    */
+  def hits: Map[Int, Long] = numHits.asScala.toMap
+
+  /** Returns the number of consumed documents, if this profile is accumulated.
+    *
+    * @return the number of consumed documents
+    */
+  def documents: Long = numDocuments.get
+
+  /** Returns the number of rows collected from the consumed documents, if this profile is
+    * accumulated.
+    *
+    * @return the number of collected rows
+    */
+  def rows: Long = numRows.get
+
+  /** Returns the per-phase breakdown of the accumulated times, in milliseconds, omitting the phases
+    * that haven't been run.
+    *
+    * @return the per-phase breakdown
+    */
+  def breakdown: String = values.filter(nanos(_) > 0)
+    .map(phase => f"$phase=${nanos(phase) / 1e6}%.3f ms")
+    .mkString(", ")
+
+  /** Traces the per-phase breakdown with the specified title if this profile is enabled.
+    *
+    * @param title the title of the breakdown
+    */
+  def trace(title: String): Unit = if (enabled) tracer.trace(s"$title: $breakdown")
+
+  /** Adds a function to be called with this profile when the search is completed. The functions
+    * are called in the same order as they are added.
+    *
+    * @param f the function to be called on completion
+    */
+  def onComplete(f: SearchProfile => Unit): Unit = listeners.add(f)
+
+  /** Notifies that the search is completed, calling the completion functions only once. */
+  def complete(): Unit = if (completed.compareAndSet(false, true)) listeners.forEach(_.apply(this))
+
+}
+
+/** Companion object for [[SearchProfile]]. */
+object SearchProfile {
+
+  /** A profile neither recording metrics nor accumulating times. */
+  val NONE = new SearchProfile(None, false)
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.util
+
+import java.util.concurrent.TimeUnit.{MILLISECONDS, NANOSECONDS}
+
+import com.codahale.metrics.{ExponentiallyDecayingReservoir, Histogram}
+import com.fasterxml.jackson.databind.JsonNode
+import com.github.benmanes.caffeine.cache.{Cache, Caffeine}
+import com.stratio.cassandra.lucene.common.JsonSerializer
+import com.stratio.cassandra.lucene.util.SearchPhase.{Load, Search, Seek}
+import com.stratio.cassandra.lucene.util.SlowSearchLog._
+
+import scala.jdk.CollectionConverters._
+import scala.util.Try
+
+/** Log of the searches taking longer than the configured thresholds, either in total or in the
+  * Lucene phases of seeking, searching and loading documents. Each slow search is logged with the
+  * fingerprint of its JSON, its per-phase profile, the hits per searched index partition, the
+  * fetched pages of index results and the documents read and discarded by the reader. The
+  * latencies of the slow searches are also aggregated per fingerprint, keeping only the most
+  * recently seen fingerprints.
+  *
+  * @param name            the name of the index
+  * @param totalThreshold  the min total time in ms of a slow search, disabled if not positive
+  * @param luceneThreshold the min Lucene time in ms of a slow search, disabled if not positive
+  * @param maxFingerprints the max number of fingerprints with aggregated latencies
+  */
+class SlowSearchLog(
+    name: String,
+    totalThreshold: Int,
+    luceneThreshold: Int,
+    maxFingerprints: Int = DEFAULT_MAX_FINGERPRINTS) extends Logging {
+
+  private[this] val totalNanos = NANOSECONDS.convert(totalThreshold, MILLISECONDS)
+  private[this] val luceneNanos = NANOSECONDS.convert(luceneThreshold, MILLISECONDS)
+
+  private[this] val stats: Cache[String, Histogram] = Caffeine.newBuilder
+    .maximumSize(maxFingerprints)
+    .executor(task => task.run())
+    .build[String, Histogram]
+
+  /** If any of the thresholds is enabled, so searches should be profiled. */
+  val enabled: Boolean = totalThreshold > 0 || luceneThreshold > 0
+
+  /** Logs the specified completed search if it is slower than any of the thresholds.
+    *
+    * @param json       the JSON search, only computed if the search is slow
+    * @param partitions the searched index partitions, in the order in which they are searched
+    * @param profile    the accumulated profile of the search
+    * @param total      the total time of the search in nanoseconds
+    * @return `true` if the search has been logged as slow, `false` otherwise
+    */
+  def record(json: => String, partitions: Seq[Int], profile: SearchProfile, total: Long)
+  : Boolean = {
+    val lucene = profile.nanos(Seek) + profile.nanos(Search) + profile.nanos(Load)
+    val slow = (totalThreshold > 0 && total >= totalNanos) ||
+      (luceneThreshold > 0 && lucene >= luceneNanos)
+    if (slow) {
+      val fingerprint = SlowSearchLog.fingerprint(json)
+      stats.get(fingerprint, _ => new Histogram(new ExponentiallyDecayingReservoir)).update(total)
+      val hits = profile.hits.toSeq.sorted.map { case (i, n) => s"${partitions(i)}=$n" }
+      val discarded = Math.max(0, profile.documents - profile.rows)
+      logger.warn(f"Slow search in $name took ${total / 1e6}%.3f ms " +
+        f"(Lucene ${lucene / 1e6}%.3f ms): ${profile.breakdown}; " +
+        s"hits per partition [${hits.mkString(", ")}], pages fetched ${profile.pages}, " +
+        s"documents read ${profile.documents}, discarded $discarded; fingerprint $fingerprint")
+    }
+    slow
+  }
+
+  /** Returns the aggregated latencies of the slow searches per fingerprint, ordered by count.
+    *
+    * @return the count, median and 99th percentile latency of each fingerprint
+    */
+  def fingerprints: Array[String] = stats.asMap.asScala.toSeq
+    .sortBy(-_._2.getCount)
+    .map { case (fingerprint, histogram) =>
+      val snapshot = histogram.getSnapshot
+      f"count=${histogram.getCount}, p50=${snapshot.getMedian / 1e6}%.3f ms, " +
+        f"p99=${snapshot.get99thPercentile / 1e6}%.3f ms, fingerprint=$fingerprint"
+    }.toArray
+
+}
+
+/** Companion object for [[SlowSearchLog]]. */
+object SlowSearchLog {
+
+  /** The default max number of fingerprints with aggregated latencies. */
+  val DEFAULT_MAX_FINGERPRINTS = 1000
+
+  /** The JSON properties whose values are kept in fingerprints. */
+  val STRUCTURAL_PROPERTIES = Set("type", "field")
+
+  /** The JSON properties not included in fingerprints. */
+  val IGNORED_PROPERTIES = Set("paging")
+
+  /** Returns the fingerprint of the specified JSON search, that is, its normalized representation
+    * without the values of its conditions, so searches differing only in those values share the
+    * same fingerprint. The types of the conditions and the names of the fields are kept. Arrays of
+    * values are replaced by a single placeholder, regardless of their length. Invalid JSON is
+    * returned as is.
+    *
+    * @param json a JSON search
+    * @return the fingerprint of `json`
+    */
+  def fingerprint(json: String): String = {
+    Try(normalize(JsonSerializer.INSTANCE.mapper.readTree(json))).getOrElse(json)
+  }
+
+  private def normalize(node: JsonNode): String = {
+    if (node.isObject) {
+      node.fields.asScala
+        .filterNot(e => IGNORED_PROPERTIES.contains(e.getKey))
+        .map(e => {
+          val value = e.getValue
+          val normalized = if (STRUCTURAL_PROPERTIES.contains(e.getKey) && value.isValueNode) {
+            value.toString
+          } else normalize(value)
+          s"${e.getKey}:$normalized"
+        }).mkString("{", ",", "}")
+    } else if (node.isArray) {
+      if (node.elements.asScala.forall(_.isValueNode)) "[?]"
+      else node.elements.asScala.map(normalize).mkString("[", ",", "]")
+    } else "?"
+  }
+
+}
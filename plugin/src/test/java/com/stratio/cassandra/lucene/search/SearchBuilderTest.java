@@ -67,6 +67,8 @@ public class SearchBuilderTest {
                      "filter=[], " +
                      "query=[MatchCondition{boost=null, field=f, value=1, docValues=false}], sort=[], " +
                      "refresh=false, " +
+                     "covering=false, " +
+                     "profile=false, " +
                      "paging=null}",
                      SearchBuilder.fromJson("{query:{type: \"match\", field: \"f\", value:1}}").build().toString());
     }
@@ -79,6 +81,8 @@ public class SearchBuilderTest {
                      "query=[], " +
                      "sort=[SimpleSortField{field=f, reverse=false}], " +
                      "refresh=false, " +
+                     "covering=false, " +
+                     "profile=false, " +
                      "paging=null}",
                      SearchBuilder.fromJson("{sort:{fields:[{field:\"f\"}]}}").build().toString());
     }
@@ -91,6 +95,8 @@ public class SearchBuilderTest {
                      "query=[MatchCondition{boost=null, field=f2, value=2, docValues=false}], " +
                      "sort=[SimpleSortField{field=f, reverse=false}], " +
                      "refresh=true, " +
+                     "covering=false, " +
+                     "profile=false, " +
                      "paging=null}",
                      SearchBuilder.fromJson("{filter:{type: \"match\", field: \"f1\", value:1}, " +
                                             "query:{type: \"match\", field: \"f2\", value:2}, " +
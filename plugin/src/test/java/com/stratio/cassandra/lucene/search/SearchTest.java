@@ -40,6 +40,8 @@ public class SearchTest {
     public void testBuilderEmpty() {
         Search search = search().build();
         assertFalse("Default refresh is not set", search.refresh());
+        assertFalse("Default covering is not set", search.covering());
+        assertFalse("Default profile is not set", search.profile());
     }
 
     @Test
@@ -49,6 +51,8 @@ public class SearchTest {
                                                  .sort(FIELD)
                                                  .refresh(true)
                                                  .build().refresh());
+        assertTrue("Covering is not set", search().filter(MATCH).covering(true).build().covering());
+        assertTrue("Profile is not set", search().filter(MATCH).profile(true).build().profile());
     }
 
     @Test
@@ -152,7 +156,7 @@ public class SearchTest {
                      "MatchCondition{boost=null, field=f2, value=v2, docValues=false}], " +
                      "query=[MatchCondition{boost=null, field=f3, value=v3, docValues=false}, " +
                      "MatchCondition{boost=0.3, field=f4, value=v4, docValues=false}], " +
-                     "sort=[SimpleSortField{field=f5, reverse=true}], refresh=true, paging=null}",
+                     "sort=[SimpleSortField{field=f5, reverse=true}], refresh=true, covering=false, profile=false, paging=null}",
                      search.toString());
     }
 
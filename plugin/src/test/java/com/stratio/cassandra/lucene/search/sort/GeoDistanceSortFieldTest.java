@@ -16,6 +16,7 @@
 package com.stratio.cassandra.lucene.search.sort;
 
 import com.stratio.cassandra.lucene.IndexException;
+import com.stratio.cassandra.lucene.column.Columns;
 import com.stratio.cassandra.lucene.schema.Schema;
 import org.junit.Test;
 
@@ -127,6 +128,18 @@ public class GeoDistanceSortFieldTest {
         assertFalse("SortField equals is wrong", sortField.equals(nullSortField()));
     }
 
+    @Test
+    public void testValue() {
+        Schema schema = schema().mapper("field", geoPointMapper("lat", "lon")).build();
+        GeoDistanceSortField sortField = new GeoDistanceSortField("field", false, 0.0, 0.0);
+        Comparable<?> near = sortField.value(schema, new Columns().add("lat", 1.0).add("lon", 1.0));
+        Comparable<?> far = sortField.value(schema, new Columns().add("lat", 10.0).add("lon", 10.0));
+        Comparable<?> missing = sortField.value(schema, new Columns());
+        assertEquals("Sort value is wrong", 157.2, (Double) near, 0.1);
+        assertTrue("Sort values are wrong", sortField.compare(near, far) < 0);
+        assertTrue("Sort values are wrong", sortField.compare(far, missing) < 0);
+    }
+
     @Test
     public void testEqualsWithNull() {
         GeoDistanceSortField sortField = new GeoDistanceSortField("field", true, 0.0, 0.0);
@@ -16,9 +16,11 @@
 package com.stratio.cassandra.lucene.search.sort;
 
 import com.stratio.cassandra.lucene.IndexException;
+import com.stratio.cassandra.lucene.column.Columns;
 import com.stratio.cassandra.lucene.schema.Schema;
 import org.junit.Test;
 
+import static com.stratio.cassandra.lucene.schema.SchemaBuilders.integerMapper;
 import static com.stratio.cassandra.lucene.schema.SchemaBuilders.schema;
 import static com.stratio.cassandra.lucene.schema.SchemaBuilders.stringMapper;
 import static org.apache.lucene.search.SortField.FIELD_SCORE;
@@ -151,6 +153,48 @@ public class SimpleSortFieldTest {
         return null;
     }
 
+    @Test
+    public void testValueNumeric() {
+        Schema schema = schema().mapper("field", integerMapper()).build();
+        SimpleSortField sortField = new SimpleSortField("field", false);
+        Comparable<?> a = sortField.value(schema, new Columns().add("field", -3));
+        Comparable<?> b = sortField.value(schema, new Columns().add("field", 5).add("field", 2));
+        Comparable<?> missing = sortField.value(schema, new Columns());
+        assertTrue("Sort values are wrong", sortField.compare(a, b) < 0);
+        assertTrue("Sort values are wrong", sortField.compare(b, a) > 0);
+        assertTrue("Sort values are wrong", sortField.compare(a, missing) < 0);
+        assertTrue("Sort values are wrong", sortField.compare(missing, b) < 0);
+        assertEquals("Sort values are wrong", 0, sortField.compare(b, sortField.value(schema, new Columns().add("field", 2))));
+    }
+
+    @Test
+    public void testValueString() {
+        Schema schema = schema().mapper("field", stringMapper()).build();
+        SimpleSortField sortField = new SimpleSortField("field", true);
+        Comparable<?> a = sortField.value(schema, new Columns().add("field", "a"));
+        Comparable<?> b = sortField.value(schema, new Columns().add("field", "b"));
+        Comparable<?> missing = sortField.value(schema, new Columns());
+        assertNull("Sort value is wrong", missing);
+        assertTrue("Sort values are wrong", sortField.compare(a, b) > 0);
+        assertTrue("Sort values are wrong", sortField.compare(b, missing) < 0);
+    }
+
+    @Test
+    public void testValueNotMappable() {
+        Schema schema = schema().mapper("field", integerMapper()).build();
+        SimpleSortField sortField = new SimpleSortField("field", false);
+        Comparable<?> notMappable = sortField.value(schema, new Columns().add("field", "abc"));
+        Comparable<?> missing = sortField.value(schema, new Columns());
+        assertEquals("Sort value is wrong", 0, sortField.compare(notMappable, missing));
+    }
+
+    @Test
+    public void testValueScore() {
+        Schema schema = schema().mapper("field", stringMapper()).build();
+        SimpleSortField sortField = new SimpleSortField("score", false);
+        assertNull("Sort value is wrong", sortField.value(schema, new Columns().add("field", "a")));
+    }
+
     @Test
     public void testEquals() {
         SimpleSortField sortField = new SimpleSortField("field", true);
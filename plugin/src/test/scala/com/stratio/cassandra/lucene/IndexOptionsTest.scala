@@ -15,8 +15,11 @@
  */
 package com.stratio.cassandra.lucene
 
+import java.nio.file.{Files, Paths}
+
 import com.stratio.cassandra.lucene.IndexOptions._
 import com.stratio.cassandra.lucene.partitioning.{PartitionerOnNone, PartitionerOnToken}
+import org.apache.commons.io.FileUtils
 import org.junit.runner.RunWith
 import org.scalatestplus.junit.JUnitRunner
 
@@ -227,6 +230,58 @@ class IndexOptionsTest extends BaseScalaTest {
     }.getMessage shouldBe s"'$INDEXING_QUEUES_SIZE_OPTION' must be strictly positive, found: -1"
   }
 
+  // Search threads option tests
+
+  test("parse search threads option with default") {
+    parseSearchThreads(Map()) shouldBe DEFAULT_SEARCH_THREADS
+  }
+
+  test("parse search threads option with integer") {
+    parseSearchThreads(Map(SEARCH_THREADS_OPTION -> "1")) shouldBe Some(1)
+  }
+
+  test("parse search threads option with zero value") {
+    parseSearchThreads(Map(SEARCH_THREADS_OPTION -> "0")) shouldBe Some(0)
+  }
+
+  test("parse search threads option with failing non numeric value") {
+    intercept[IndexException] {
+      parseSearchThreads(Map(SEARCH_THREADS_OPTION -> "a"))
+    }.getMessage shouldBe s"'$SEARCH_THREADS_OPTION' must be an integer, found: a"
+  }
+
+  // Search queue size option tests
+
+  test("parse search queue size option with default") {
+    parseSearchQueueSize(Map()) shouldBe DEFAULT_SEARCH_QUEUE_SIZE
+  }
+
+  test("parse search queue size option with integer") {
+    parseSearchQueueSize(Map(SEARCH_QUEUE_SIZE_OPTION -> "10")) shouldBe 10
+  }
+
+  test("parse search queue size option with failing zero value") {
+    intercept[IndexException] {
+      parseSearchQueueSize(Map(SEARCH_QUEUE_SIZE_OPTION -> "0"))
+    }.getMessage shouldBe s"'$SEARCH_QUEUE_SIZE_OPTION' must be strictly positive, found: 0"
+  }
+
+  // Search parallelism option tests
+
+  test("parse search parallelism option with default") {
+    parseSearchParallelism(Map()) shouldBe DEFAULT_SEARCH_PARALLELISM
+  }
+
+  test("parse search parallelism option with integer") {
+    parseSearchParallelism(Map(SEARCH_PARALLELISM_OPTION -> "8")) shouldBe 8
+  }
+
+  test("parse search parallelism option with failing negative value") {
+    intercept[IndexException] {
+      parseSearchParallelism(Map(SEARCH_PARALLELISM_OPTION -> "-1"))
+    }.getMessage shouldBe s"'$SEARCH_PARALLELISM_OPTION' must be strictly positive, found: -1"
+  }
+
   // Excluded data centers size option tests
 
   test("parse excluded data centers option with default") {
@@ -251,6 +306,274 @@ class IndexOptionsTest extends BaseScalaTest {
     parseExcludedDataCenters(options) shouldBe List("dc1", "dc2")
   }
 
+  // Search prefetch pages option tests
+
+  test("parse search prefetch pages option with default") {
+    parseSearchPrefetchPages(Map()) shouldBe DEFAULT_SEARCH_PREFETCH_PAGES
+  }
+
+  test("parse search prefetch pages option with true") {
+    parseSearchPrefetchPages(Map(SEARCH_PREFETCH_PAGES_OPTION -> "true")) shouldBe true
+  }
+
+  test("parse search prefetch pages option with failing non boolean value") {
+    intercept[IndexException] {
+      parseSearchPrefetchPages(Map(SEARCH_PREFETCH_PAGES_OPTION -> "a"))
+    }
+  }
+
+  // Search page size options tests
+
+  test("parse search min page size option with default") {
+    parseSearchMinPageSize(Map()) shouldBe DEFAULT_SEARCH_MIN_PAGE_SIZE
+  }
+
+  test("parse search min page size option with integer") {
+    parseSearchMinPageSize(Map(SEARCH_MIN_PAGE_SIZE_OPTION -> "10")) shouldBe 10
+  }
+
+  test("parse search max page size option with default") {
+    parseSearchMaxPageSize(Map()) shouldBe DEFAULT_SEARCH_MAX_PAGE_SIZE
+  }
+
+  test("parse search max page size option with failing zero") {
+    intercept[IndexException] {
+      parseSearchMaxPageSize(Map(SEARCH_MAX_PAGE_SIZE_OPTION -> "0"))
+    }.getMessage shouldBe s"'$SEARCH_MAX_PAGE_SIZE_OPTION' must be strictly positive, found: 0"
+  }
+
+  // Search cache size option tests
+
+  test("parse search cache size option with default") {
+    parseSearchCacheMB(Map()) shouldBe DEFAULT_SEARCH_CACHE_MB
+  }
+
+  test("parse search cache size option with integer") {
+    parseSearchCacheMB(Map(SEARCH_CACHE_MB_OPTION -> "64")) shouldBe 64
+  }
+
+  test("parse search cache size option with failing zero") {
+    intercept[IndexException] {
+      parseSearchCacheMB(Map(SEARCH_CACHE_MB_OPTION -> "0"))
+    }.getMessage shouldBe s"'$SEARCH_CACHE_MB_OPTION' must be strictly positive, found: 0"
+  }
+
+  // Filter cache size option tests
+
+  test("parse filter cache size option with default") {
+    parseFilterCacheMB(Map()) shouldBe DEFAULT_FILTER_CACHE_MB
+  }
+
+  test("parse filter cache size option with integer") {
+    parseFilterCacheMB(Map(FILTER_CACHE_MB_OPTION -> "128")) shouldBe Some(128)
+  }
+
+  test("parse filter cache size option with failing zero") {
+    intercept[IndexException] {
+      parseFilterCacheMB(Map(FILTER_CACHE_MB_OPTION -> "0"))
+    }.getMessage shouldBe s"'$FILTER_CACHE_MB_OPTION' must be strictly positive, found: 0"
+  }
+
+  // Index only count option tests
+
+  test("parse index only count option with default") {
+    parseIndexOnlyCount(Map()) shouldBe DEFAULT_INDEX_ONLY_COUNT
+  }
+
+  test("parse index only count option with true") {
+    parseIndexOnlyCount(Map(INDEX_ONLY_COUNT_OPTION -> "true")) shouldBe true
+  }
+
+  test("parse index only count option with failing non boolean value") {
+    intercept[IndexException] {
+      parseIndexOnlyCount(Map(INDEX_ONLY_COUNT_OPTION -> "a"))
+    }
+  }
+
+  // Compact expressions option tests
+
+  test("parse compact expressions option with default") {
+    parseCompactExpressions(Map()) shouldBe DEFAULT_COMPACT_EXPRESSIONS
+  }
+
+  test("parse compact expressions option with true") {
+    parseCompactExpressions(Map(COMPACT_EXPRESSIONS_OPTION -> "true")) shouldBe true
+  }
+
+  test("parse compact expressions option with failing non boolean value") {
+    intercept[IndexException] {
+      parseCompactExpressions(Map(COMPACT_EXPRESSIONS_OPTION -> "a"))
+    }
+  }
+
+  // Range parallelism option tests
+
+  test("parse range parallelism option with default") {
+    parseRangeParallelism(Map()) shouldBe DEFAULT_RANGE_PARALLELISM
+  }
+
+  test("parse range parallelism option with integer") {
+    parseRangeParallelism(Map(RANGE_PARALLELISM_OPTION -> "64")) shouldBe 64
+  }
+
+  test("parse range parallelism option with failing zero") {
+    intercept[IndexException] {
+      parseRangeParallelism(Map(RANGE_PARALLELISM_OPTION -> "0"))
+    }.getMessage shouldBe s"'$RANGE_PARALLELISM_OPTION' must be strictly positive, found: 0"
+  }
+
+  // Range max rows option tests
+
+  test("parse range max rows option with default") {
+    parseRangeMaxRows(Map()) shouldBe DEFAULT_RANGE_MAX_ROWS
+  }
+
+  test("parse range max rows option with integer") {
+    parseRangeMaxRows(Map(RANGE_MAX_ROWS_OPTION -> "5000")) shouldBe 5000
+  }
+
+  test("parse range max rows option with failing zero") {
+    intercept[IndexException] {
+      parseRangeMaxRows(Map(RANGE_MAX_ROWS_OPTION -> "0"))
+    }.getMessage shouldBe s"'$RANGE_MAX_ROWS_OPTION' must be strictly positive, found: 0"
+  }
+
+  // Prefetch size option tests
+
+  test("parse prefetch size option with default") {
+    parsePrefetchSize(Map()) shouldBe DEFAULT_PREFETCH_SIZE
+  }
+
+  test("parse prefetch size option with integer") {
+    parsePrefetchSize(Map(PREFETCH_SIZE_OPTION -> "1")) shouldBe 1
+  }
+
+  test("parse prefetch size option with failing zero") {
+    intercept[IndexException] {
+      parsePrefetchSize(Map(PREFETCH_SIZE_OPTION -> "0"))
+    }.getMessage shouldBe s"'$PREFETCH_SIZE_OPTION' must be strictly positive, found: 0"
+  }
+
+  // Slow search options tests
+
+  test("parse slow search ms option with default") {
+    parseSlowSearchMs(Map()) shouldBe DEFAULT_SLOW_SEARCH_MS
+  }
+
+  test("parse slow search ms option with integer") {
+    parseSlowSearchMs(Map(SLOW_SEARCH_MS_OPTION -> "500")) shouldBe 500
+  }
+
+  test("parse slow search ms option with failing negative") {
+    intercept[IndexException] {
+      parseSlowSearchMs(Map(SLOW_SEARCH_MS_OPTION -> "-1"))
+    }.getMessage shouldBe s"'$SLOW_SEARCH_MS_OPTION' must be non-negative, found: -1"
+  }
+
+  test("parse slow search lucene ms option with default") {
+    parseSlowSearchLuceneMs(Map()) shouldBe DEFAULT_SLOW_SEARCH_LUCENE_MS
+  }
+
+  test("parse slow search lucene ms option with integer") {
+    parseSlowSearchLuceneMs(Map(SLOW_SEARCH_LUCENE_MS_OPTION -> "0")) shouldBe 0
+  }
+
+  test("parse slow search lucene ms option with failing string") {
+    intercept[IndexException] {
+      parseSlowSearchLuceneMs(Map(SLOW_SEARCH_LUCENE_MS_OPTION -> "a"))
+    }.getMessage shouldBe
+      s"'$SLOW_SEARCH_LUCENE_MS_OPTION' must be a non-negative integer, found: a"
+  }
+
+  // Search admission options tests
+
+  test("parse max sorted searches option with default") {
+    parseMaxSortedSearches(Map()) shouldBe DEFAULT_MAX_SORTED_SEARCHES
+  }
+
+  test("parse max sorted searches option with integer") {
+    parseMaxSortedSearches(Map(MAX_SORTED_SEARCHES_OPTION -> "4")) shouldBe 4
+  }
+
+  test("parse max queued sorted searches option with default") {
+    parseMaxQueuedSortedSearches(Map()) shouldBe DEFAULT_MAX_QUEUED_SORTED_SEARCHES
+  }
+
+  test("parse max queued sorted searches option with zero") {
+    parseMaxQueuedSortedSearches(Map(MAX_QUEUED_SORTED_SEARCHES_OPTION -> "0")) shouldBe 0
+  }
+
+  test("parse max filter searches option with default") {
+    parseMaxFilterSearches(Map()) shouldBe DEFAULT_MAX_FILTER_SEARCHES
+  }
+
+  test("parse max filter searches option with failing negative") {
+    intercept[IndexException] {
+      parseMaxFilterSearches(Map(MAX_FILTER_SEARCHES_OPTION -> "-2"))
+    }.getMessage shouldBe s"'$MAX_FILTER_SEARCHES_OPTION' must be non-negative, found: -2"
+  }
+
+  test("parse max queued filter searches option with default") {
+    parseMaxQueuedFilterSearches(Map()) shouldBe DEFAULT_MAX_QUEUED_FILTER_SEARCHES
+  }
+
+  test("parse max queued filter searches option with integer") {
+    parseMaxQueuedFilterSearches(Map(MAX_QUEUED_FILTER_SEARCHES_OPTION -> "8")) shouldBe 8
+  }
+
+  // Hot directory paths tests
+
+  test("parse hot directory paths without index") {
+    parseHotPaths(Map(), null, None) shouldBe Nil
+  }
+
+  test("parse hot directory paths with directory path option") {
+    parseHotPaths(Map(DIRECTORY_PATH_OPTION -> "/mnt/a"), null, None) shouldBe Nil
+  }
+
+  // Stored keys option tests
+
+  test("parse stored keys option with default") {
+    parseStoredKeys(Map()) shouldBe DEFAULT_STORED_KEYS
+  }
+
+  test("parse stored keys option with false") {
+    parseStoredKeys(Map(STORED_KEYS_OPTION -> "false")) shouldBe false
+  }
+
+  test("parse stored keys option with failing non boolean value") {
+    intercept[IndexException] {
+      parseStoredKeys(Map(STORED_KEYS_OPTION -> "a"))
+    }
+  }
+
+  // Cold directory paths option tests
+
+  test("parse cold directory paths option with default") {
+    parseColdPaths(Map(), null, None) shouldBe DEFAULT_COLD_DIRECTORY_PATHS
+  }
+
+  test("parse cold directory paths option with multiple paths") {
+    val options = Map(COLD_DIRECTORY_PATHS_OPTION -> " /mnt/a , /mnt/b ")
+    parseColdPaths(options, null, None) shouldBe List(Paths.get("/mnt/a"), Paths.get("/mnt/b"))
+  }
+
+  // Cold segment min MB option tests
+
+  test("parse cold segment min MB option with default") {
+    parseColdSegmentMinMB(Map()) shouldBe DEFAULT_COLD_SEGMENT_MIN_MB
+  }
+
+  test("parse cold segment min MB option with integer") {
+    parseColdSegmentMinMB(Map(COLD_SEGMENT_MIN_MB_OPTION -> "512")) shouldBe 512
+  }
+
+  test("parse cold segment min MB option with failing zero") {
+    intercept[IndexException] {
+      parseColdSegmentMinMB(Map(COLD_SEGMENT_MIN_MB_OPTION -> "0"))
+    }.getMessage shouldBe s"'$COLD_SEGMENT_MIN_MB_OPTION' must be strictly positive, found: 0"
+  }
+
   // Partitioner option tests
 
   test("parse partitioner option with default") {
@@ -267,4 +590,65 @@ class IndexOptionsTest extends BaseScalaTest {
     parsePartitioner(Map(PARTITIONER_OPTION -> json), null) shouldBe PartitionerOnToken(10)
   }
 
+  test("read partitioner without persisted partitioner") {
+    val folder = Files.createTempDirectory("index")
+    try readPartitioner(folder, null) shouldBe None finally FileUtils.deleteQuietly(folder.toFile)
+  }
+
+  test("read persisted partitioner") {
+    val folder = Files.createTempDirectory("index")
+    try {
+      writePartitioner(folder, "{type:\"token\", partitions: 10}")
+      readPartitioner(folder, null) shouldBe Some(PartitionerOnToken(10))
+    } finally FileUtils.deleteQuietly(folder.toFile)
+  }
+
+  test("read invalid persisted partitioner") {
+    val folder = Files.createTempDirectory("index")
+    try {
+      writePartitioner(folder, "{type:")
+      intercept[IndexException] {
+        readPartitioner(folder, null)
+      }
+    } finally FileUtils.deleteQuietly(folder.toFile)
+  }
+
+
+  test("read layout without layout file") {
+    val folder = Files.createTempDirectory("index")
+    try readLayout(folder) shouldBe 0 finally FileUtils.deleteQuietly(folder.toFile)
+  }
+
+  test("write and read layout") {
+    val folder = Files.createTempDirectory("index")
+    try {
+      writeLayout(folder, 1)
+      readLayout(folder) shouldBe 1
+      writeLayout(folder, 2)
+      readLayout(folder) shouldBe 2
+    } finally {
+      FileUtils.deleteQuietly(folder.toFile)
+      FileUtils.deleteQuietly(layoutFile(folder).toFile)
+    }
+  }
+
+  test("read invalid layout") {
+    val folder = Files.createTempDirectory("index")
+    try {
+      Files.write(layoutFile(folder), "x".getBytes)
+      intercept[IndexException] {
+        readLayout(folder)
+      }
+    } finally {
+      FileUtils.deleteQuietly(folder.toFile)
+      FileUtils.deleteQuietly(layoutFile(folder).toFile)
+    }
+  }
+
+  test("layout path") {
+    layoutPath(Paths.get("/tmp/index"), 0) shouldBe Paths.get("/tmp/index")
+    layoutPath(Paths.get("/tmp/index"), 3) shouldBe Paths.get("/tmp/index.3")
+    layoutPath(null, 3) shouldBe null
+  }
+
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene
+
+import java.nio.ByteBuffer
+
+import com.stratio.cassandra.lucene.BaseScalaTest._
+import com.stratio.cassandra.lucene.util.ByteBufferUtils
+import org.apache.cassandra.config.DatabaseDescriptor
+import org.apache.cassandra.dht.Murmur3Partitioner
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[IndexPagingState]]. */
+@RunWith(classOf[JUnitRunner])
+class IndexPagingStateTest extends BaseScalaTest {
+
+  DatabaseDescriptor.setPartitionerUnsafe(Murmur3Partitioner.instance)
+
+  /** Returns a paging state in the legacy representation with entries sharing key prefixes. */
+  def legacy(remaining: Int, numEntries: Int): ByteBuffer = {
+    val entries = (0 until numEntries).map(i => ByteBufferUtils.compose(
+      int32.decompose(i % 3),
+      utf8.decompose(s"partition_key_$i"),
+      utf8.decompose("clustering_column"),
+      int32.decompose(i)))
+    val values = ByteBufferUtils.compose(entries: _*)
+    val out = ByteBuffer.allocate(4 + values.remaining)
+    out.putInt(remaining).put(values).flip
+    out
+  }
+
+  test("read legacy representation") {
+    val state = IndexPagingState.fromByteBuffer(legacy(Int.MaxValue, 0))
+    state.remaining shouldBe Int.MaxValue
+  }
+
+  test("write compact representation") {
+    val legacyState = legacy(100, 10)
+    val state = IndexPagingState.fromByteBuffer(legacyState.duplicate)
+    state.remaining shouldBe 100
+    val compact = state.toByteBuffer
+    compact.remaining should be < legacyState.remaining
+    val copy = IndexPagingState.fromByteBuffer(compact.duplicate)
+    copy.remaining shouldBe 100
+    copy.toByteBuffer shouldBe compact
+  }
+
+  test("write legacy representation") {
+    val legacyState = legacy(100, 10)
+    val state = IndexPagingState.fromByteBuffer(legacyState.duplicate)
+    state.toLegacyByteBuffer shouldBe legacyState
+    IndexPagingState.fromByteBuffer(state.toLegacyByteBuffer).toByteBuffer shouldBe state.toByteBuffer
+  }
+
+  test("attach to expression value") {
+    val json = utf8.decompose("{query:{type:\"all\"}}")
+    val state = IndexPagingState.fromByteBuffer(legacy(50, 3))
+    val value = IndexPagingState.attach(json, state)
+    IndexPagingState.detach(value) shouldBe json
+    IndexPagingState.attached(value).map(_.toByteBuffer) shouldBe Some(state.toByteBuffer)
+  }
+
+  test("attach to expression value with attached state") {
+    val json = utf8.decompose("{query:{type:\"all\"}}")
+    val value = IndexPagingState.attach(json, new IndexPagingState(10))
+    val newValue = IndexPagingState.attach(value, new IndexPagingState(5))
+    IndexPagingState.detach(newValue) shouldBe json
+    IndexPagingState.attached(newValue).map(_.remaining) shouldBe Some(5)
+  }
+
+  test("detach from expression value without attached state") {
+    val json = utf8.decompose("{query:{type:\"all\"}}")
+    IndexPagingState.detach(json) shouldBe json
+    IndexPagingState.attached(json) shouldBe None
+  }
+
+  test("mark expression value as index only") {
+    val json = utf8.decompose("{filter:{type:\"all\"}}")
+    val value = IndexPagingState.indexOnly(json)
+    IndexPagingState.isIndexOnly(json) shouldBe false
+    IndexPagingState.isIndexOnly(value) shouldBe true
+    IndexPagingState.detach(value) shouldBe json
+    IndexPagingState.indexOnly(value) shouldBe value
+  }
+
+  test("attach to index only expression value") {
+    val json = utf8.decompose("{filter:{type:\"all\"}}")
+    val value = IndexPagingState.attach(json, new IndexPagingState(10))
+    val marked = IndexPagingState.indexOnly(value)
+    IndexPagingState.isIndexOnly(marked) shouldBe true
+    IndexPagingState.attached(marked).map(_.remaining) shouldBe Some(10)
+    val newValue = IndexPagingState.attach(marked, new IndexPagingState(5))
+    IndexPagingState.isIndexOnly(newValue) shouldBe true
+    IndexPagingState.detach(newValue) shouldBe json
+    IndexPagingState.attached(newValue).map(_.remaining) shouldBe Some(5)
+  }
+
+  test("mark expression value as requesting sort keys") {
+    val json = utf8.decompose("{sort:{field:\"f\"}}")
+    val value = IndexPagingState.attach(json, new IndexPagingState(10))
+    val marked = IndexPagingState.sortKeys(value)
+    IndexPagingState.hasSortKeys(value) shouldBe false
+    IndexPagingState.hasSortKeys(marked) shouldBe true
+    IndexPagingState.isIndexOnly(marked) shouldBe false
+    IndexPagingState.detach(marked) shouldBe json
+    IndexPagingState.sortKeys(marked) shouldBe marked
+    val both = IndexPagingState.indexOnly(marked)
+    IndexPagingState.isIndexOnly(both) shouldBe true
+    IndexPagingState.hasSortKeys(both) shouldBe true
+    val newValue = IndexPagingState.attach(both, new IndexPagingState(5))
+    IndexPagingState.isIndexOnly(newValue) shouldBe true
+    IndexPagingState.hasSortKeys(newValue) shouldBe true
+    IndexPagingState.detach(newValue) shouldBe json
+    IndexPagingState.attached(newValue).map(_.remaining) shouldBe Some(5)
+  }
+}
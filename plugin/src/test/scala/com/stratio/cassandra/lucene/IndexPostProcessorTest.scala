@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene
+
+import com.stratio.cassandra.lucene.BaseScalaTest._
+import com.stratio.cassandra.lucene.IndexPostProcessor._
+import com.stratio.cassandra.lucene.column.Columns
+import com.stratio.cassandra.lucene.mapping.{ClusteringMapper, PartitionMapper, TokenMapper}
+import com.stratio.cassandra.lucene.schema.SchemaBuilders._
+import com.stratio.cassandra.lucene.search.sort.{SimpleSortField, SortField}
+import org.apache.cassandra.config.DatabaseDescriptor
+import org.apache.cassandra.db.Clustering
+import org.apache.cassandra.dht.Murmur3Partitioner
+import org.apache.cassandra.io.util.{DataInputBuffer, DataOutputBuffer}
+import org.apache.cassandra.schema.TableMetadata
+import org.apache.lucene.search.Sort
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+import scala.util.Random
+
+/** Tests for [[IndexPostProcessor]]. */
+@RunWith(classOf[JUnitRunner])
+class IndexPostProcessorTest extends BaseScalaTest {
+
+  DatabaseDescriptor.setPartitionerUnsafe(Murmur3Partitioner.instance)
+
+  val metadata = TableMetadata.builder("ks", "t")
+    .partitioner(Murmur3Partitioner.instance)
+    .addPartitionKeyColumn("pk", int32)
+    .addClusteringColumn("ck", int32)
+    .addRegularColumn("v", int32)
+    .addRegularColumn("w", int32)
+    .build
+
+  val indexSchema = schema().mapper("v", integerMapper()).mapper("w", integerMapper()).build
+
+  /** The test rows as (partition key, clustering key, v, w), with many ties in `v` and `w`. */
+  val rows = for (pk <- 0 until 8; ck <- 0 until 4) yield (pk, ck, (pk + ck) % 3, (pk * ck) % 2)
+
+  def token(pk: Int): Long = {
+    metadata.partitioner.decorateKey(int32.decompose(pk)).getToken.getTokenValue.asInstanceOf[Long]
+  }
+
+  def sortedRow(fields: Array[SortField], row: (Int, Int, Int, Int)): SortedRow = {
+    val (pk, ck, v, w) = row
+    val key = metadata.partitioner.decorateKey(int32.decompose(pk))
+    val columns = Columns().add("v", v).add("w", w)
+    val values = fields.map(_.value(indexSchema, columns))
+    SortedRow(key, Clustering.make(int32.decompose(ck)), values, null)
+  }
+
+  def sorted(fields: Array[SortField], limit: Int): List[(Int, Int)] = {
+    val queue = new TopQueue(limit, sortedRowOrdering(fields, metadata))
+    new Random(7).shuffle(rows).foreach(row => queue.offer(sortedRow(fields, row)))
+    queue.toList.map(row => (key(row.key.getKey), key(row.clustering.bufferAt(0))))
+  }
+
+  def key(value: java.nio.ByteBuffer): Int = int32.compose(value)
+
+  def expected(limit: Int)(values: ((Int, Int, Int, Int)) => (Int, Int)): List[(Int, Int)] = {
+    val ordered = rows.sortBy(row => (values(row), token(row._1), row._1, row._2))
+    ordered.take(limit).map(row => (row._1, row._2)).toList
+  }
+
+  test("sorted rows are bounded by the limit") {
+    val fields = Array[SortField](new SimpleSortField("v", false))
+    sorted(fields, 5) shouldBe expected(5)(row => (row._3, 0))
+  }
+
+  test("sorted rows with reverse and secondary sort fields") {
+    val fields = Array[SortField](new SimpleSortField("v", true), new SimpleSortField("w", false))
+    sorted(fields, 10) shouldBe expected(10)(row => (-row._3, row._4))
+  }
+
+  test("sorted rows with limit greater than the number of rows") {
+    val fields = Array[SortField](new SimpleSortField("w", true))
+    sorted(fields, 100) shouldBe expected(100)(row => (-row._4, 0))
+  }
+
+  test("sorted rows with zero limit") {
+    val fields = Array[SortField](new SimpleSortField("v", false))
+    sorted(fields, 0) shouldBe Nil
+  }
+
+  /** Returns the sort values that a replica attaches to the specified row, as found by the replica
+    * with the specified Lucene sort fields and read by the coordinator from the attached cell.
+    */
+  def sortKey(row: (Int, Int, Int, Int)): Array[AnyRef] = {
+    val (pk, ck, v, w) = row
+    val key = metadata.partitioner.decorateKey(int32.decompose(pk))
+    val clustering = Clustering.make(int32.decompose(ck))
+    val values = Array[AnyRef](
+      Int.box(v),
+      Int.box(w),
+      Long.box(token(pk)),
+      new PartitionMapper(metadata).indexableField(key).binaryValue,
+      new ClusteringMapper(metadata).indexableFields(key, clustering).head.binaryValue)
+    val out = new DataOutputBuffer
+    try {
+      IndexPagingState.writeSortValues(out, Some(values))
+      IndexPagingState.readSortValues(new DataInputBuffer(out.asNewBuffer, false)).get
+    } finally out.close()
+  }
+
+  test("merged rows are in the same order as the sorted rows") {
+    val fields = Array[SortField](new SimpleSortField("v", true), new SimpleSortField("w", false))
+    val sortFields = new Sort(fields.map(_.sortField(indexSchema)) ++ Array(
+      new TokenMapper().sortField,
+      new PartitionMapper(metadata).sortField,
+      new ClusteringMapper(metadata).sortField): _*).rewrite(null).getSort
+    val limit = 12
+    val expected = sorted(fields, limit)
+
+    // Each replica returns its own best rows, found in its own order
+    val ordering = sortedRowOrdering(fields, metadata)
+    val received = rows.groupBy(_._1 % 3).values.toList.flatMap(replica => {
+      replica.sortBy(sortedRow(fields, _))(ordering).take(limit)
+    })
+
+    val queue = new TopQueue(limit, mergedRowOrdering(sortFields))
+    received.zipWithIndex.foreach { case (row, position) =>
+      queue.offer(MergedRow(sortKey(row), position, null))
+    }
+    val positions = queue.toList.map(_.position)
+    positions.map(received(_)).map(row => (row._1, row._2)) shouldBe expected
+  }
+
+  test("merged rows without sort values go last in the received order") {
+    val sortFields = Array(new TokenMapper().sortField)
+    val queue = new TopQueue(3, mergedRowOrdering(sortFields))
+    queue.offer(MergedRow(null, 0, null))
+    queue.offer(MergedRow(Array[AnyRef](Long.box(5)), 1, null))
+    queue.offer(MergedRow(null, 2, null))
+    queue.offer(MergedRow(Array[AnyRef](Long.box(3)), 3, null))
+    queue.toList.map(_.position) shouldBe List(3, 1, 0)
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import com.stratio.cassandra.lucene.BaseScalaTest
+import com.stratio.cassandra.lucene.index.CostBasedRangeQuery._
+import org.apache.lucene.analysis.standard.StandardAnalyzer
+import org.apache.lucene.document.{Document, Field, LongField, NumericDocValuesField, StringField}
+import org.apache.lucene.index.{DirectoryReader, IndexWriter, IndexWriterConfig, Term}
+import org.apache.lucene.search.BooleanClause.Occur.{FILTER, MUST, SHOULD}
+import org.apache.lucene.search._
+import org.apache.lucene.store.RAMDirectory
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[CostBasedRangeQuery]]. */
+@RunWith(classOf[JUnitRunner])
+class CostBasedRangeQueryTest extends BaseScalaTest {
+
+  val numDocs = 1000
+
+  def reader(): DirectoryReader = {
+    val directory = new RAMDirectory
+    val writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer))
+    for (i <- 0 until numDocs) {
+      val document = new Document
+      document.add(new LongField("long", i, Field.Store.NO))
+      document.add(new NumericDocValuesField("long", i))
+      val value = if (i % 100 == 0) "rare" else "common"
+      document.add(new StringField("string", value, Field.Store.NO))
+      writer.addDocument(document)
+    }
+    writer.close()
+    DirectoryReader.open(directory)
+  }
+
+  def range(min: Long, max: Long): CostBasedRangeQuery = new CostBasedRangeQuery(
+    NumericRangeQuery.newLongRange("long", min, max, true, true),
+    DocValuesRangeQuery.newLongRange("long", min, max, true, true),
+    (max - min + 1).toDouble / numDocs)
+
+  def rare: Query = new TermQuery(new Term("string", "rare"))
+
+  def planned(query: Query, reader: DirectoryReader): Query = plan(query, reader) match {
+    case q: BooleanQuery => q.clauses.get(0).getQuery
+    case q => q
+  }
+
+  test("plan unfiltered ranges") {
+    val reader = this.reader()
+    try {
+      planned(range(0, 99), reader) shouldBe a[NumericRangeQuery[_]]
+      planned(range(0, 899), reader) shouldBe a[DocValuesRangeQuery]
+    } finally reader.close()
+  }
+
+  test("plan ranges filtered by selective clauses") {
+    val reader = this.reader()
+    try {
+      val query = new BooleanQuery.Builder().add(range(0, 99), FILTER).add(rare, MUST).build
+      planned(query, reader) shouldBe a[DocValuesRangeQuery]
+      val common = new TermQuery(new Term("string", "common"))
+      val other = new BooleanQuery.Builder().add(range(0, 99), FILTER).add(common, MUST).build
+      planned(other, reader) shouldBe a[NumericRangeQuery[_]]
+    } finally reader.close()
+  }
+
+  test("plan ranges nested in disjunctions") {
+    val reader = this.reader()
+    try {
+      val disjunction = new BooleanQuery.Builder()
+        .add(range(0, 99), SHOULD)
+        .add(new TermQuery(new Term("long", "none")), SHOULD)
+        .build
+      val query = new BooleanQuery.Builder().add(disjunction, FILTER).add(rare, FILTER).build
+      planned(planned(query, reader), reader) shouldBe a[DocValuesRangeQuery]
+      planned(disjunction, reader) shouldBe a[NumericRangeQuery[_]]
+    } finally reader.close()
+  }
+
+  test("plan queries without ranges") {
+    val reader = this.reader()
+    try {
+      val query = new BooleanQuery.Builder().add(rare, MUST).build
+      plan(query, reader) should be theSameInstanceAs query
+    } finally reader.close()
+  }
+
+  test("search with both plans") {
+    val reader = this.reader()
+    try {
+      val searcher = new IndexSearcher(reader)
+      searcher.count(range(10, 959)) shouldBe 950
+      searcher.count(range(10, 19)) shouldBe 10
+      val query = new BooleanQuery.Builder().add(range(0, 499), FILTER).add(rare, FILTER).build
+      searcher.count(plan(query, reader)) shouldBe 5
+      searcher.count(query) shouldBe 5
+    } finally reader.close()
+  }
+
+  test("estimate cost") {
+    val reader = this.reader()
+    try {
+      estimate(rare, reader) shouldBe 10
+      estimate(range(0, 99), reader) shouldBe 100
+      estimate(new MatchAllDocsQuery, reader) shouldBe numDocs
+      estimate(new BooleanQuery.Builder().add(range(0, 99), MUST).add(rare, FILTER).build,
+        reader) shouldBe 10
+      estimate(new BooleanQuery.Builder().add(range(0, 99), SHOULD).add(rare, SHOULD).build,
+        reader) shouldBe 110
+    } finally reader.close()
+  }
+
+  test("crossover points") {
+    val reader = this.reader()
+    try {
+      // Unfiltered ranges switch to doc values when matching about two thirds of the documents
+      val overhead = reader.leaves.size * SEGMENT_COST
+      val unfiltered = ((numDocs * DOC_VALUES_COST - overhead) max 0).toLong
+      if (unfiltered > 0) planned(range(0, unfiltered - 2), reader) shouldBe a[NumericRangeQuery[_]]
+      planned(range(0, unfiltered + 1), reader) shouldBe a[DocValuesRangeQuery]
+
+      // Ranges filtered by selective clauses switch to doc values much earlier
+      val filtered = ((10 * DOC_VALUES_COST - overhead) max 0).toLong
+      val query = (max: Long) => new BooleanQuery.Builder()
+        .add(range(0, max), FILTER)
+        .add(rare, MUST)
+        .build
+      if (filtered > 0) planned(query(filtered - 2), reader) shouldBe a[NumericRangeQuery[_]]
+      planned(query(filtered + 1), reader) shouldBe a[DocValuesRangeQuery]
+    } finally reader.close()
+  }
+
+}
@@ -15,14 +15,14 @@
  */
 package com.stratio.cassandra.lucene.index
 
-import java.nio.file.Paths
+import java.nio.file.{Files, Paths}
 import java.util.{Collections, UUID}
 
-import com.stratio.cassandra.lucene.BaseScalaTest
+import com.stratio.cassandra.lucene.{BaseScalaTest, IndexException}
 import com.stratio.cassandra.lucene.IndexOptions._
 import org.apache.lucene.analysis.standard.StandardAnalyzer
 import org.apache.lucene.document._
-import org.apache.lucene.index.Term
+import org.apache.lucene.index.{DocValues, Term}
 import org.apache.lucene.search._
 import org.apache.lucene.util.BytesRef
 import org.junit.Assert.assertEquals
@@ -47,7 +47,12 @@ class PartitionedIndexTest extends BaseScalaTest {
     assertEquals("Expected " + expected + " documents", expected, count)
   }
 
-  def doWithIndex(numPartitions: Int, f: PartitionedIndex => Unit): Unit = {
+  def doWithIndex(
+      numPartitions: Int,
+      f: PartitionedIndex => Unit,
+      searchThreads: Option[Int] = Some(0),
+      searchParallelism: Int = 1,
+      prefetchPages: Boolean = false): Unit = {
     val temporaryFolder = new TemporaryFolder
     temporaryFolder.create()
     try {
@@ -59,7 +64,11 @@ class PartitionedIndexTest extends BaseScalaTest {
         REFRESH_SECONDS,
         DEFAULT_RAM_BUFFER_MB,
         DEFAULT_MAX_MERGE_MB,
-        DEFAULT_MAX_CACHED_MB)
+        DEFAULT_MAX_CACHED_MB,
+        searchThreads,
+        DEFAULT_SEARCH_QUEUE_SIZE,
+        searchParallelism,
+        prefetchPages = prefetchPages)
       f.apply(index)
     } finally temporaryFolder.delete()
   }
@@ -226,4 +235,407 @@ class PartitionedIndexTest extends BaseScalaTest {
     })
   }
 
-}
\ No newline at end of file
+  test("pagination with sort values") {
+    doWithIndex(2, index => {
+      val sort = new Sort(new SortedNumericSortField("field", SortField.Type.INT, false))
+      val fields = Collections.singleton("field")
+      index.init(sort, fields)
+
+      for (i <- 0 until 100) {
+        val value = i.toString
+        val term = new Term("field_s", value)
+        val document = new Document
+        document.add(new StringField("field_s", value, Field.Store.NO))
+        document.add(new SortedNumericDocValuesField("field", i))
+        index.upsert(i % 2, term, document)
+      }
+
+      index.commit()
+      Thread.sleep(REFRESH_MILLISECONDS)
+      assertEquals("Expected 100 documents", 100, index.getNumDocs)
+      val query = new MatchAllDocsQuery
+      val partitions = List((0, None), (1, None))
+      val values = Map[Int, Array[AnyRef]](0 -> Array(Int.box(48)), 1 -> Array(Int.box(49)))
+      assertCount(index.search(partitions, query, sort, 1000, values), 50)
+      assertCount(index.search(partitions, query, sort, 7, values), 50)
+
+      // Sort values are preferred over terms
+      val terms = List((0, Some(new Term("field_s", "0"))), (1, Some(new Term("field_s", "1"))))
+      assertCount(index.search(terms, query, sort, 1000, values), 50)
+
+      // Terms are used if sort values don't match the sort
+      val wrong = Map[Int, Array[AnyRef]](0 -> Array(Int.box(0), Int.box(0)))
+      assertCount(index.search(terms, query, sort, 1000, wrong), 98)
+    })
+  }
+
+  test("pagination with concurrent partitions search") {
+    doWithIndex(4, index => {
+      val sort = new Sort(new SortedNumericSortField("field", SortField.Type.INT, false))
+      val fields = Collections.singleton("field")
+      index.init(sort, fields)
+
+      for (i <- 0 until 100) {
+        val value = i.toString
+        val term = new Term("field_s", value)
+        val document = new Document
+        document.add(new StringField("field_s", value, Field.Store.NO))
+        document.add(new SortedNumericDocValuesField("field", i))
+        index.upsert(i % 4, term, document)
+      }
+
+      index.commit()
+      Thread.sleep(REFRESH_MILLISECONDS)
+      assertEquals("Expected 100 documents", 100, index.getNumDocs)
+      val query = new MatchAllDocsQuery
+      val partitions = (0 until 4).map((_, None)).toList
+      assertCount(index.search(partitions, query, sort, 1000), 100)
+      assertCount(index.search(partitions, query, sort, 7), 100)
+      assertCount(index.search(List(
+        (0, Some(new Term("field_s", "48"))),
+        (1, Some(new Term("field_s", "49"))),
+        (2, Some(new Term("field_s", "46"))),
+        (3, Some(new Term("field_s", "47")))), query, sort, 1000), 50)
+      index.close()
+    }, searchThreads = Some(2), searchParallelism = 3)
+  }
+
+  test("pagination with shared concurrent partitions search") {
+    doWithIndex(4, index => {
+      val sort = new Sort(new SortedNumericSortField("field", SortField.Type.INT, false))
+      val fields = Collections.singleton("field")
+      index.init(sort, fields)
+
+      for (i <- 0 until 100) {
+        val value = i.toString
+        val term = new Term("field_s", value)
+        val document = new Document
+        document.add(new StringField("field_s", value, Field.Store.NO))
+        document.add(new SortedNumericDocValuesField("field", i))
+        index.upsert(i % 4, term, document)
+      }
+
+      index.commit()
+      Thread.sleep(REFRESH_MILLISECONDS)
+      assertEquals("Expected 100 documents", 100, index.getNumDocs)
+      val query = new MatchAllDocsQuery
+      val partitions = (0 until 4).map((_, None)).toList
+      assertCount(index.search(partitions, query, sort, 1000), 100)
+      assertCount(index.search(partitions, query, sort, 7), 100)
+      assertCount(index.search(List(
+        (0, Some(new Term("field_s", "48"))),
+        (1, Some(new Term("field_s", "49"))),
+        (2, Some(new Term("field_s", "46"))),
+        (3, Some(new Term("field_s", "47")))), query, sort, 1000), 50)
+      index.close()
+    }, searchThreads = None, searchParallelism = 3)
+  }
+
+  test("concurrent commits with partitioning") {
+    doWithIndex(4, index => {
+      val sort = new Sort(new SortedNumericSortField("field", SortField.Type.INT, false))
+      index.init(sort, Collections.singleton("field"))
+
+      val threads = (0 until 8).map(t => new Thread(() => {
+        for (i <- 0 until 25) {
+          val value = s"$t-$i"
+          val document = new Document
+          document.add(new StringField("field_s", value, Field.Store.NO))
+          document.add(new SortedNumericDocValuesField("field", i))
+          index.upsert(i % 4, new Term("field_s", value), document)
+          if (i % 5 == 0) index.commit()
+        }
+        index.commit()
+      }))
+      threads.foreach(_.start())
+      threads.foreach(_.join())
+
+      index.refresh()
+      assertEquals("Expected 200 documents", 200, index.getNumDocs)
+      index.forceMerge(1, true)
+      index.refresh()
+      assertEquals("Expected 200 documents", 200, index.getNumDocs)
+      index.truncate()
+      index.refresh()
+      assertEquals("Expected 0 documents", 0, index.getNumDocs)
+      index.close()
+    })
+  }
+
+  test("copy to a different number of partitions") {
+    val sort = new Sort(new SortedNumericSortField("field", SortField.Type.INT, false))
+    val fields = Collections.singleton("field")
+    doWithIndex(2, source => {
+      source.init(sort, fields)
+      for (i <- 0 until 100) {
+        val value = i.toString
+        val document = new Document
+        document.add(new StringField("field_s", value, Field.Store.NO))
+        document.add(new SortedNumericDocValuesField("field", i))
+        document.add(new NumericDocValuesField("field_n", i))
+        source.upsert(i % 2, new Term("field_s", value), document)
+      }
+      source.delete(0, new Term("field_s", "10"))
+      source.commit()
+      source.refresh()
+      assertEquals("Expected 99 documents", 99, source.getNumDocs)
+
+      doWithIndex(3, target => {
+        target.init(sort, fields)
+        val copier = source.copier(target, leaf => {
+          val values = DocValues.getNumeric(leaf, "field_n")
+          doc => (values.get(doc) % 3).toInt
+        })
+        try assertEquals("Expected 99 copied documents", 99, copier.run()) finally copier.close()
+        target.commit()
+        target.refresh()
+        assertEquals("Expected 99 documents", 99, target.getNumDocs)
+        val query = new MatchAllDocsQuery
+        assertCount(target.search(List((0, None)), query, sort, 1000), 34)
+        assertCount(target.search(List((1, None)), query, sort, 1000), 32)
+        assertCount(target.search(List((2, None)), query, sort, 1000), 33)
+        assertCount(target.search(List((0, None)), new TermQuery(new Term("field_s", "30")),
+          sort, 1000), 1)
+        assertCount(target.search(List((1, None)), new TermQuery(new Term("field_s", "30")),
+          sort, 1000), 0)
+        target.close()
+      })
+      source.close()
+    })
+  }
+
+  test("spread partitions across hot directories") {
+    val temporaryFolder = new TemporaryFolder
+    temporaryFolder.create()
+    try {
+      val path = Paths.get(temporaryFolder.newFolder("directory").getPath)
+      val hot = List("hot0", "hot1").map(name => Paths.get(temporaryFolder.newFolder(name).getPath))
+      Files.createDirectories(path.resolve("3"))
+      val index = new PartitionedIndex(
+        4,
+        "test_index",
+        path,
+        new StandardAnalyzer,
+        REFRESH_SECONDS,
+        DEFAULT_RAM_BUFFER_MB,
+        DEFAULT_MAX_MERGE_MB,
+        DEFAULT_MAX_CACHED_MB,
+        hotPaths = hot)
+      val sort = new Sort(new SortedSetSortField("field_s", false))
+      index.init(sort, Collections.singleton("field_s"))
+      for (i <- 0 until 4) {
+        val document = new Document
+        document.add(new StringField("field_s", f"$i%02d", Field.Store.NO))
+        document.add(new SortedSetDocValuesField("field_s", new BytesRef(f"$i%02d")))
+        index.upsert(i, new Term("field_s", f"$i%02d"), document)
+      }
+      index.commit()
+      Files.exists(hot.head.resolve("0")) shouldBe true
+      Files.exists(hot(1).resolve("1")) shouldBe true
+      Files.exists(hot.head.resolve("2")) shouldBe true
+      Files.exists(hot(1).resolve("3")) shouldBe false
+      Files.exists(path.resolve("0")) shouldBe false
+      index.refresh()
+      val partitions = (0 until 4).map((_, None)).toList
+      assertCount(index.search(partitions, new MatchAllDocsQuery, sort, 4), 4)
+      index.delete()
+      hot.foreach(Files.exists(_) shouldBe false)
+    } finally temporaryFolder.delete()
+  }
+
+  test("retire index with searches in progress") {
+    doWithIndex(2, index => {
+      val sort = new Sort(new SortedSetSortField("field_s", false))
+      index.init(sort, Collections.singleton("field_s"))
+      for (i <- 0 until 10) {
+        val document = new Document
+        document.add(new StringField("field_s", f"$i%02d", Field.Store.NO))
+        document.add(new SortedSetDocValuesField("field_s", new BytesRef(f"$i%02d")))
+        index.upsert(i % 2, new Term("field_s", f"$i%02d"), document)
+      }
+      index.commit()
+      index.refresh()
+      var retired = false
+      val documents = index.search(List((0, None), (1, None)), new MatchAllDocsQuery, sort, 2)
+      index.retire(_ => retired = true)
+      retired shouldBe false
+      intercept[IndexException] {
+        index.search(List((0, None)), new MatchAllDocsQuery, sort, 2)
+      }
+      documents.next()
+      retired shouldBe false
+      assertCount(documents, 9)
+      documents.close()
+      retired shouldBe true
+      index.close()
+    })
+  }
+
+  test("load fields from sorted doc values and stored fields") {
+    doWithIndex(2, index => {
+      val sort = new Sort(new SortField("key", SortField.Type.STRING))
+      index.init(sort, new java.util.HashSet(java.util.Arrays.asList("key", "stored")))
+      for (i <- 0 until 10) {
+        val value = f"$i%02d"
+        val document = new Document
+        document.add(new StringField("field_s", value, Field.Store.NO))
+        document.add(new SortedDocValuesField("key", new BytesRef(value)))
+        document.add(new StoredField("stored", s"stored_$value"))
+        index.upsert(i % 2, new Term("field_s", value), document)
+      }
+      index.commit()
+      index.refresh()
+      val partitions = List((0, None), (1, None))
+      val documents = index.search(partitions, new MatchAllDocsQuery, sort, 4).map(_._1).toList
+      documents.map(_.getBinaryValue("key").utf8ToString) shouldBe (0 until 10).map(i => f"$i%02d")
+      documents.map(_.get("stored")) shouldBe (0 until 10).map(i => f"stored_$i%02d")
+      index.close()
+    })
+  }
+
+  test("load additional fields from numeric and set doc values") {
+    doWithIndex(2, index => {
+      val sort = new Sort(new SortField("key", SortField.Type.STRING))
+      index.init(sort, Collections.singleton("key"))
+      for (i <- 0 until 10) {
+        val value = f"$i%02d"
+        val document = new Document
+        document.add(new StringField("field_s", value, Field.Store.NO))
+        document.add(new SortedDocValuesField("key", new BytesRef(value)))
+        document.add(new SortedNumericDocValuesField("number", i))
+        if (i % 3 == 0) document.add(new SortedSetDocValuesField("text", new BytesRef(s"text_$i")))
+        index.upsert(i % 2, new Term("field_s", value), document)
+      }
+      index.commit()
+      index.refresh()
+      val partitions = List((0, None), (1, None))
+      val query = new MatchAllDocsQuery
+      val documents = index.search(partitions, query, sort, 4, docValues = Set("number", "text"))
+        .map(_._1).toList
+      documents.map(_.getField("number").numericValue.longValue) shouldBe (0 until 10)
+      documents.map(d => Option(d.getBinaryValue("text")).map(_.utf8ToString)) shouldBe
+        (0 until 10).map(i => if (i % 3 == 0) Some(s"text_$i") else None)
+      index.search(partitions, query, sort, 4).map(_._1.getField("number")).toList shouldBe
+        List.fill(10)(null)
+      index.close()
+    })
+  }
+
+  test("pagination with pages prefetching") {
+    doWithIndex(4, index => {
+      val sort = new Sort(new SortedNumericSortField("field", SortField.Type.INT, false))
+      index.init(sort, Collections.singleton("field"))
+      for (i <- 0 until 100) {
+        val value = i.toString
+        val document = new Document
+        document.add(new StringField("field_s", value, Field.Store.NO))
+        document.add(new SortedNumericDocValuesField("field", i))
+        index.upsert(i % 4, new Term("field_s", value), document)
+      }
+      index.commit()
+      index.refresh()
+      val query = new MatchAllDocsQuery
+      val partitions = (0 until 4).map((_, None)).toList
+      assertCount(index.search(partitions, query, sort, 1000), 100)
+      assertCount(index.search(partitions, query, sort, 7), 100)
+
+      // Prefetch the next pages while the fetched ones are not expected to produce enough rows
+      val filtered = index.search(partitions, query, sort, 7)
+      var count = 0
+      filtered.foreach(_ => {
+        count += 1
+        filtered.collected(0)
+      })
+      count shouldBe 100
+
+      // Close while the next page is being searched
+      val documents = index.search(partitions, query, sort, 7)
+      (0 until 10).foreach(_ => {
+        documents.next
+        documents.collected(0)
+      })
+      documents.close()
+      index.close()
+    }, searchThreads = Some(2), searchParallelism = 2, prefetchPages = true)
+  }
+
+  test("pagination with adaptive page sizes") {
+    doWithIndex(2, index => {
+      val sort = new Sort(new SortedNumericSortField("field", SortField.Type.INT, false))
+      index.init(sort, Collections.singleton("field"))
+      for (i <- 0 until 1000) {
+        val value = i.toString
+        val document = new Document
+        document.add(new StringField("field_s", value, Field.Store.NO))
+        document.add(new SortedNumericDocValuesField("field", i))
+        index.upsert(i % 2, new Term("field_s", value), document)
+      }
+      index.commit()
+      index.refresh()
+      val query = new MatchAllDocsQuery
+      val partitions = List((0, None), (1, None))
+
+      // Consumer collecting a row for each tenth document
+      val documents = index.search(partitions, query, sort, 10)
+      var count = 0
+      var last = -1L
+      documents.foreach { case (_, scoreDoc) =>
+        val value = scoreDoc.asInstanceOf[FieldDoc].fields(0).asInstanceOf[Number].longValue
+        value should be > last
+        last = value
+        if (count % 10 == 0) documents.collected(1)
+        count += 1
+      }
+      count shouldBe 1000
+
+      // Consumer not reporting collected rows
+      assertCount(index.search(partitions, query, sort, 10), 1000)
+      index.close()
+    })
+  }
+
+  test("cancelled search") {
+    doWithIndex(2, index => {
+      val sort = new Sort(new SortedNumericSortField("field", SortField.Type.INT, false))
+      index.init(sort, Collections.singleton("field"))
+      for (i <- 0 until 5000) {
+        val value = i.toString
+        val document = new Document
+        document.add(new StringField("field_s", value, Field.Store.NO))
+        document.add(new SortedNumericDocValuesField("field", i))
+        index.upsert(i % 2, new Term("field_s", value), document)
+      }
+      index.commit()
+      index.refresh()
+      val query = new MatchAllDocsQuery
+      val partitions = List((0, None), (1, None))
+
+      // Search cancelled before starting
+      intercept[IndexException] {
+        index.search(partitions, query, sort, 10, cancelled = () => true).hasNext
+      }.getMessage shouldBe "Lucene search cancelled after read timeout"
+
+      // Search cancelled while paging
+      var cancelled = false
+      val documents = index.search(partitions, query, sort, 10, cancelled = () => cancelled)
+      documents.take(10).size shouldBe 10
+      cancelled = true
+      intercept[IndexException] {
+        documents.foreach(_ => {})
+      }
+
+      // Search cancelled while collecting
+      var checks = 0
+      val collecting = () => {
+        checks += 1
+        checks > 2
+      }
+      intercept[IndexException] {
+        index.search(partitions, new WildcardQuery(new Term("field_s", "*")), sort, 5000,
+          cancelled = collecting).hasNext
+      }
+      index.close()
+    })
+  }
+
+}
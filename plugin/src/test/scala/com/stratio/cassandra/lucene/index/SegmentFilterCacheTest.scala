@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import com.stratio.cassandra.lucene.BaseScalaTest
+import org.apache.lucene.analysis.standard.StandardAnalyzer
+import org.apache.lucene.document.{Document, Field, StringField}
+import org.apache.lucene.index.{DirectoryReader, IndexWriter, IndexWriterConfig}
+import org.apache.lucene.search._
+import org.apache.lucene.store.RAMDirectory
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[SegmentFilterCache]]. */
+@RunWith(classOf[JUnitRunner])
+class SegmentFilterCacheTest extends BaseScalaTest {
+
+  def reader(numDocs: Int): DirectoryReader = {
+    val directory = new RAMDirectory
+    val writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer))
+    for (i <- 0 until numDocs) {
+      val document = new Document
+      document.add(new StringField("field", f"$i%03d", Field.Store.NO))
+      writer.addDocument(document)
+    }
+    writer.close()
+    DirectoryReader.open(directory)
+  }
+
+  val query = new BooleanQuery.Builder()
+    .add(new MatchAllDocsQuery, BooleanClause.Occur.MUST)
+    .add(TermRangeQuery.newStringRange("field", "010", "019", true, true), BooleanClause.Occur.FILTER)
+    .build
+
+  test("cache repeated filter clauses") {
+    val cache = new SegmentFilterCache(Some(1), minSegmentDocs = 1)
+    val reader = this.reader(100)
+    try {
+      val searcher = new IndexSearcher(reader)
+      cache.configure(searcher)
+      for (_ <- 1 to 5) searcher.search(query, 10).totalHits shouldBe 10
+      cache.size should be > 0L
+      cache.hits should be > 0L
+      cache.misses should be > 0L
+      cache.hitRate should be > 0D
+      cache.ramBytesUsed should be > 0L
+    } finally reader.close()
+    cache.size shouldBe 0L
+  }
+
+  test("don't cache small segments") {
+    val cache = new SegmentFilterCache(Some(1))
+    val reader = this.reader(100)
+    try {
+      val searcher = new IndexSearcher(reader)
+      cache.configure(searcher)
+      for (_ <- 1 to 5) searcher.search(query, 10).totalHits shouldBe 10
+      cache.size shouldBe 0L
+      cache.hits shouldBe 0L
+    } finally reader.close()
+  }
+
+  test("share cache keeping the statistics of each index") {
+    val reader1 = this.reader(100)
+    val reader2 = this.reader(100)
+    try {
+      val shared1 = new SegmentFilterCache(minSegmentDocs = 1)
+      val shared2 = new SegmentFilterCache(minSegmentDocs = 1)
+      val searcher1 = new IndexSearcher(reader1)
+      val searcher2 = new IndexSearcher(reader2)
+      shared1.configure(searcher1)
+      shared2.configure(searcher2)
+      for (_ <- 1 to 5) searcher1.search(query, 10).totalHits shouldBe 10
+      shared1.size should be > 0L
+      shared1.hits should be > 0L
+      shared1.ramBytesUsed should be > 0L
+      shared2.size shouldBe 0L
+      shared2.hits shouldBe 0L
+      shared2.misses shouldBe 0L
+      for (_ <- 1 to 5) searcher2.search(query, 10).totalHits shouldBe 10
+      shared2.size should be > 0L
+      shared2.hits should be > 0L
+      reader1.close()
+      shared1.size shouldBe 0L
+      shared1.ramBytesUsed shouldBe 0L
+      shared2.size should be > 0L
+    } finally {
+      reader1.close()
+      reader2.close()
+    }
+  }
+}
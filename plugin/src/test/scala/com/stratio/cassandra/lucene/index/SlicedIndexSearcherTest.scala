@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import com.stratio.cassandra.lucene.BaseScalaTest
+import org.apache.lucene.analysis.standard.StandardAnalyzer
+import org.apache.lucene.document.{Document, Field, NumericDocValuesField, StringField}
+import org.apache.lucene.index.{DirectoryReader, IndexWriter, IndexWriterConfig, NoMergePolicy, Term}
+import org.apache.lucene.search._
+import org.apache.lucene.store.RAMDirectory
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+import scala.jdk.CollectionConverters._
+
+/** Tests for [[SlicedIndexSearcher]]. */
+@RunWith(classOf[JUnitRunner])
+class SlicedIndexSearcherTest extends BaseScalaTest {
+
+  def doWithReader(segments: Int, docsPerSegment: Int, f: DirectoryReader => Unit): Unit = {
+    val directory = new RAMDirectory
+    val config = new IndexWriterConfig(new StandardAnalyzer).setMergePolicy(NoMergePolicy.INSTANCE)
+    val writer = new IndexWriter(directory, config)
+    try {
+      for (s <- 0 until segments) {
+        for (d <- 0 until docsPerSegment) {
+          val document = new Document
+          document.add(new StringField("field", if (d % 2 == 0) "even" else "odd", Field.Store.NO))
+          document.add(new NumericDocValuesField("number", s * docsPerSegment + d))
+          writer.addDocument(document)
+        }
+        writer.commit()
+      }
+      val reader = DirectoryReader.open(directory)
+      try f.apply(reader) finally reader.close()
+    } finally {
+      writer.close()
+      directory.close()
+    }
+  }
+
+  test("slices with min docs per slice") {
+    doWithReader(6, 10, reader => {
+      val leaves = reader.leaves.asScala.toList
+      SlicedIndexSearcher.slices(leaves, 10, 20).length shouldBe 3
+      SlicedIndexSearcher.slices(leaves, 10, 1).length shouldBe 6
+      SlicedIndexSearcher.slices(leaves, 10, 100).length shouldBe 1
+    })
+  }
+
+  test("slices with max slices") {
+    doWithReader(6, 10, reader => {
+      val leaves = reader.leaves.asScala.toList
+      SlicedIndexSearcher.slices(leaves, 2, 1).length shouldBe 2
+      SlicedIndexSearcher.slices(leaves, 4, 1).length shouldBe 3
+    })
+  }
+
+  test("sliced search returns the same results as sequential search") {
+    doWithReader(5, 100, reader => {
+      val sort = new Sort(new SortField("number", SortField.Type.INT, true))
+      val query = new TermQuery(new Term("field", "even"))
+      val sliced = new SlicedIndexSearcher(reader, 3, 1)
+      val sequential = new IndexSearcher(reader)
+      val expected = sequential.search(query, 50, sort).scoreDocs.map(_.doc)
+      sliced.search(query, 50, sort).scoreDocs.map(_.doc) shouldBe expected
+      sliced.count(query) shouldBe 250
+    })
+  }
+}
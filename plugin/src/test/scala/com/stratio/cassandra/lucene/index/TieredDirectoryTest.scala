@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.index
+
+import com.stratio.cassandra.lucene.BaseScalaTest
+import org.apache.lucene.analysis.standard.StandardAnalyzer
+import org.apache.lucene.document.{Document, Field, StringField}
+import org.apache.lucene.index.{DirectoryReader, IndexWriter, IndexWriterConfig, Term}
+import org.apache.lucene.search.{IndexSearcher, TermQuery}
+import org.apache.lucene.store.{Directory, RAMDirectory}
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[TieredDirectory]]. */
+@RunWith(classOf[JUnitRunner])
+class TieredDirectoryTest extends BaseScalaTest {
+
+  def write(directory: Directory, segments: Int, forceMerge: Boolean): Unit = {
+    val writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer))
+    try {
+      for (s <- 0 until segments) {
+        val document = new Document
+        document.add(new StringField("field", s.toString, Field.Store.YES))
+        writer.addDocument(document)
+        writer.commit()
+      }
+      if (forceMerge) writer.forceMerge(1)
+      writer.commit()
+    } finally writer.close()
+  }
+
+  def count(directory: Directory, value: String): Int = {
+    val reader = DirectoryReader.open(directory)
+    try new IndexSearcher(reader).count(new TermQuery(new Term("field", value)))
+    finally reader.close()
+  }
+
+  test("flushed segments are stored in the hot directory") {
+    val hot = new RAMDirectory
+    val cold = new RAMDirectory
+    val directory = new TieredDirectory(hot, cold, 1)
+    write(directory, 3, forceMerge = false)
+    hot.listAll.exists(_.startsWith("segments")) shouldBe true
+    cold.listAll shouldBe empty
+    count(directory, "1") shouldBe 1
+    directory.close()
+  }
+
+  test("large merged segments are stored in the cold directory") {
+    val hot = new RAMDirectory
+    val cold = new RAMDirectory
+    val directory = new TieredDirectory(hot, cold, 1)
+    write(directory, 3, forceMerge = true)
+    cold.listAll should not be empty
+    hot.listAll.exists(_.startsWith("segments")) shouldBe true
+    hot.listAll.toSet.intersect(cold.listAll.toSet) shouldBe empty
+    directory.listAll.toSet shouldBe hot.listAll.toSet ++ cold.listAll.toSet
+    (0 until 3).foreach(i => count(directory, i.toString) shouldBe 1)
+
+    // Reopen over the same directories
+    val reopened = new TieredDirectory(hot, cold, 1)
+    (0 until 3).foreach(i => count(reopened, i.toString) shouldBe 1)
+    reopened.close()
+  }
+
+  test("small merged segments are stored in the hot directory") {
+    val hot = new RAMDirectory
+    val cold = new RAMDirectory
+    val directory = new TieredDirectory(hot, cold, Long.MaxValue)
+    write(directory, 3, forceMerge = true)
+    cold.listAll shouldBe empty
+    count(directory, "2") shouldBe 1
+    directory.close()
+  }
+
+}
@@ -16,7 +16,12 @@
 package com.stratio.cassandra.lucene.mapping
 
 import com.stratio.cassandra.lucene.BaseScalaTest
+import com.stratio.cassandra.lucene.BaseScalaTest._
+import com.stratio.cassandra.lucene.util.ByteBufferUtils
+import org.apache.cassandra.config.DatabaseDescriptor
+import org.apache.cassandra.db.Clustering
 import org.apache.cassandra.dht.Murmur3Partitioner
+import org.apache.cassandra.schema.TableMetadata
 import org.apache.lucene.util.BytesRef
 import org.junit.runner.RunWith
 import org.scalatestplus.junit.JUnitRunner
@@ -28,10 +33,29 @@ import org.scalatestplus.junit.JUnitRunner
 @RunWith(classOf[JUnitRunner])
 class ClusteringMapperTest extends BaseScalaTest {
 
+  DatabaseDescriptor.setPartitionerUnsafe(Murmur3Partitioner.instance)
+
+  val metadata = TableMetadata.builder("ks", "t")
+    .partitioner(Murmur3Partitioner.instance)
+    .addPartitionKeyColumn("k", utf8)
+    .addClusteringColumn("c", int32)
+    .build
+
   test("collate prefix") {
     val values = List(Long.MinValue, -10L, -2L, -1L, 0L, 1L, 2L, 10L, Long.MaxValue)
     val tokens = values.map(new Murmur3Partitioner.LongToken(_))
     val bytes = tokens.map(ClusteringMapper.prefix(_)).map(new BytesRef(_))
     bytes shouldBe bytes.reverse.sorted
   }
+
+  test("stored clustering key") {
+    val key = Murmur3Partitioner.instance.decorateKey(utf8.decompose("abc"))
+    val clustering = Clustering.make(int32.decompose(1))
+    val mapper = new ClusteringMapper(metadata)
+    val stored = mapper.indexableFields(key, clustering)
+    stored.map(_.fieldType.stored) shouldBe List(false, true)
+    stored(1).binaryValue shouldBe ByteBufferUtils.bytesRef(mapper.byteBuffer(clustering))
+    val unstored = new ClusteringMapper(metadata, false).indexableFields(key, clustering)
+    unstored.map(_.fieldType.stored) shouldBe List(false)
+  }
 }
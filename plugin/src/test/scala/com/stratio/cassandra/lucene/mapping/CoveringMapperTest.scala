@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.mapping
+
+import com.stratio.cassandra.lucene.BaseScalaTest
+import com.stratio.cassandra.lucene.BaseScalaTest._
+import com.stratio.cassandra.lucene.schema.SchemaBuilders._
+import org.apache.cassandra.db.marshal.ListType
+import org.apache.cassandra.dht.Murmur3Partitioner
+import org.apache.cassandra.schema.TableMetadata
+import org.apache.lucene.document.{Document, StoredField}
+import org.apache.lucene.util.{BytesRef, NumericUtils}
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[CoveringMapper]]. */
+@RunWith(classOf[JUnitRunner])
+class CoveringMapperTest extends BaseScalaTest {
+
+  val metadata = TableMetadata.builder("ks", "t")
+    .partitioner(Murmur3Partitioner.instance)
+    .addPartitionKeyColumn("k", int32)
+    .addRegularColumn("i", int32)
+    .addRegularColumn("l", long)
+    .addRegularColumn("f", float)
+    .addRegularColumn("d", double)
+    .addRegularColumn("s", utf8)
+    .addRegularColumn("insensitive", utf8)
+    .addRegularColumn("unmapped", utf8)
+    .addRegularColumn("date", int32)
+    .addRegularColumn("list", ListType.getInstance(int32, true))
+    .build
+
+  val indexSchema = schema()
+    .mapper("i", integerMapper())
+    .mapper("l", longMapper())
+    .mapper("f", floatMapper())
+    .mapper("d", doubleMapper())
+    .mapper("s", stringMapper().caseSensitive(true))
+    .mapper("insensitive", stringMapper().caseSensitive(false))
+    .mapper("date", dateMapper().pattern("yyyyMMdd"))
+    .mapper("list", integerMapper())
+    .build
+
+  val mapper = new CoveringMapper(indexSchema, metadata)
+
+  def column(name: String) = metadata.getColumn(utf8.decompose(name))
+
+  test("covered columns") {
+    List("i", "l", "f", "d", "s").foreach(name => mapper.covers(column(name)) shouldBe true)
+    List("insensitive", "unmapped", "date", "list", "k")
+      .foreach(name => mapper.covers(column(name)) shouldBe false)
+  }
+
+  test("fields of covered columns") {
+    mapper.fields(List("i", "s").map(column)) shouldBe Set("i", "s")
+  }
+
+  test("cells from doc values") {
+    val document = new Document
+    document.add(new StoredField("i", 7L))
+    document.add(new StoredField("l", 8L))
+    document.add(new StoredField("f", NumericUtils.floatToSortableInt(1.5F).toLong))
+    document.add(new StoredField("d", NumericUtils.doubleToSortableLong(-2.5D)))
+    document.add(new StoredField("s", new BytesRef("Abc")))
+    def value(name: String) = mapper.cell(document, column(name), 1L).map(_.buffer)
+    value("i") shouldBe Some(int32.decompose(7))
+    value("l") shouldBe Some(long.decompose(8L))
+    value("f") shouldBe Some(float.decompose(1.5F))
+    value("d") shouldBe Some(double.decompose(-2.5D))
+    value("s") shouldBe Some(utf8.decompose("Abc"))
+    mapper.cell(new Document, column("i"), 1L) shouldBe None
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.mapping
+
+import com.stratio.cassandra.lucene.BaseScalaTest
+import com.stratio.cassandra.lucene.BaseScalaTest._
+import org.apache.cassandra.db.{Clustering, LivenessInfo}
+import org.apache.cassandra.db.rows.{BTreeRow, BufferCell, Row}
+import org.apache.cassandra.dht.Murmur3Partitioner
+import org.apache.cassandra.schema.{IndexMetadata, TableMetadata}
+import org.apache.lucene.search.ScoreDoc
+import org.apache.lucene.util.BytesRef
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+import scala.jdk.CollectionConverters._
+
+/** Tests for [[ExpressionMapper]]. */
+@RunWith(classOf[JUnitRunner])
+class ExpressionMapperTest extends BaseScalaTest {
+
+  val metadata = TableMetadata.builder("ks", "t")
+    .partitioner(Murmur3Partitioner.instance)
+    .addPartitionKeyColumn("k", int32)
+    .addRegularColumn("v", int32)
+    .addRegularColumn("lucene", utf8)
+    .build
+
+  def mapper(target: Option[String]): ExpressionMapper = {
+    val options = target.map(t => Map("target" -> t)).getOrElse(Map.empty[String, String])
+    val index = IndexMetadata.fromSchemaMetadata("idx", IndexMetadata.Kind.CUSTOM, options.asJava)
+    ExpressionMapper(metadata, index, null)
+  }
+
+  def row(cells: (String, java.nio.ByteBuffer)*): Row = row(true, cells: _*)
+
+  def row(liveness: Boolean, cells: (String, java.nio.ByteBuffer)*): Row = {
+    val builder = BTreeRow.unsortedBuilder()
+    builder.newRow(Clustering.EMPTY)
+    if (liveness) builder.addPrimaryKeyLivenessInfo(LivenessInfo.create(1, 0))
+    cells.foreach { case (name, value) =>
+      builder.addCell(BufferCell.live(metadata.getColumn(utf8.decompose(name)), 1, value))
+    }
+    builder.build
+  }
+
+  test("attach sort key") {
+    val values = Array[AnyRef](Long.box(-3), new BytesRef("a"), null, Float.box(0.5f))
+    val decorated = mapper(Some("lucene")).withSortKey(row("v" -> int32.decompose(1)), values)
+    val key = mapper(Some("lucene")).sortKey(decorated)
+    key.map(_.toSeq) shouldBe Some(values.toSeq)
+    decorated.getCell(metadata.getColumn(utf8.decompose("v"))).buffer shouldBe int32.decompose(1)
+  }
+
+  test("attach sort key to row without primary key liveness") {
+    val values = Array[AnyRef](Long.box(7))
+    val decorated = mapper(Some("lucene")).withSortKey(row(false, "v" -> int32.decompose(1)), values)
+    mapper(Some("lucene")).sortKey(decorated).map(_.toSeq) shouldBe Some(values.toSeq)
+  }
+
+  test("decorate row without primary key liveness") {
+    val original = row(false, "v" -> int32.decompose(1))
+    val scored = mapper(Some("lucene")).decorate(original, new ScoreDoc(0, 2.5f), 0)
+    val cell = scored.getCell(metadata.getColumn(utf8.decompose("lucene")))
+    utf8.compose(cell.buffer) shouldBe "2.5"
+    cell.timestamp shouldBe 1
+  }
+
+  test("attach sort key without base column") {
+    val original = row("v" -> int32.decompose(1))
+    mapper(None).withSortKey(original, Array[AnyRef](Long.box(1))) shouldBe original
+    mapper(None).sortKey(original) shouldBe None
+  }
+
+  test("replace sort key with score") {
+    val expressionMapper = mapper(Some("lucene"))
+    val decorated = expressionMapper.withSortKey(row(), Array[AnyRef](Long.box(1)))
+    val scored = expressionMapper.decorate(decorated, new ScoreDoc(0, 2.5f), 0)
+    val cells = scored.cells.asScala.toList
+    cells.size shouldBe 1
+    utf8.compose(cells.head.buffer) shouldBe "2.5"
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.mapping
+
+import com.stratio.cassandra.lucene.BaseScalaTest
+import com.stratio.cassandra.lucene.BaseScalaTest._
+import com.stratio.cassandra.lucene.mapping.PartitionMapper.FIELD_NAME
+import org.apache.cassandra.config.DatabaseDescriptor
+import org.apache.cassandra.dht.Murmur3Partitioner
+import org.apache.cassandra.schema.TableMetadata
+import org.apache.lucene.document.{Document, StoredField}
+import org.apache.lucene.util.BytesRef
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[PartitionMapper]]. */
+@RunWith(classOf[JUnitRunner])
+class PartitionMapperTest extends BaseScalaTest {
+
+  DatabaseDescriptor.setPartitionerUnsafe(Murmur3Partitioner.instance)
+
+  val metadata = TableMetadata.builder("ks", "t")
+    .partitioner(Murmur3Partitioner.instance)
+    .addPartitionKeyColumn("k", utf8)
+    .addClusteringColumn("c", int32)
+    .build
+
+  val mapper = new PartitionMapper(metadata)
+
+  def key(value: String) = Murmur3Partitioner.instance.decorateKey(utf8.decompose(value))
+
+  test("has key") {
+    val document = new Document
+    document.add(new StoredField(FIELD_NAME, new BytesRef("xxabcxx".getBytes, 2, 3)))
+    mapper.hasKey(document, key("abc")) shouldBe true
+    mapper.hasKey(document, key("abd")) shouldBe false
+    mapper.hasKey(document, key("ab")) shouldBe false
+    mapper.hasKey(document, key("abcd")) shouldBe false
+  }
+
+  test("has key of decorated key") {
+    val document = new Document
+    document.add(mapper.indexableField(key("abc")))
+    mapper.hasKey(document, mapper.decoratedKey(document)) shouldBe true
+  }
+
+  test("stored key") {
+    mapper.indexableField(key("abc")).fieldType.stored shouldBe true
+    new PartitionMapper(metadata, false).indexableField(key("abc")).fieldType.stored shouldBe false
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.mapping
+
+import com.stratio.cassandra.lucene.BaseScalaTest._
+import com.stratio.cassandra.lucene.schema.SchemaBuilders.{schema, stringMapper}
+import com.stratio.cassandra.lucene.{BaseScalaTest, IndexException}
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[SearchCache]]. */
+@RunWith(classOf[JUnitRunner])
+class SearchCacheTest extends BaseScalaTest {
+
+  val indexSchema = schema.mapper("f", stringMapper).build
+
+  test("get cached search") {
+    val cache = new SearchCache(indexSchema, 1)
+    val search = cache.get(utf8.decompose("{filter:{type:\"match\",field:\"f\",value:\"a\"}}"))
+    cache.get(utf8.decompose("{filter:{type:\"match\",field:\"f\",value:\"a\"}}")) shouldBe search
+    cache.get(utf8.decompose("{filter:{type:\"match\",field:\"f\",value:\"b\"}}")) should not be search
+    cache.hits shouldBe 1
+    cache.misses shouldBe 2
+    cache.size shouldBe 2
+  }
+
+  test("get invalid search") {
+    val cache = new SearchCache(indexSchema, 1)
+    val json = utf8.decompose("{filter:{type:\"match\",field:\"unknown\",value:\"a\"}}")
+    intercept[IndexException](cache.get(json))
+    intercept[IndexException](cache.get(json))
+    cache.size shouldBe 0
+  }
+
+  test("invalidate cached searches") {
+    val cache = new SearchCache(indexSchema, 1)
+    val json = utf8.decompose("{filter:{type:\"match\",field:\"f\",value:\"a\"}}")
+    val search = cache.get(json)
+    cache.invalidate()
+    cache.size shouldBe 0
+    cache.get(json) should not be theSameInstanceAs(search)
+  }
+
+  test("evict least recently used searches") {
+    val cache = new SearchCache(indexSchema, 1)
+    for (i <- 0 until 1000) {
+      val value = "a" * 100 + i
+      cache.get(utf8.decompose(s"""{filter:{type:"match",field:"f",value:"$value"}}"""))
+    }
+    cache.size.toInt should be < 1000
+  }
+}
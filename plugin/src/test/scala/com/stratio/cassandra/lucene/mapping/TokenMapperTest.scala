@@ -16,7 +16,9 @@
 package com.stratio.cassandra.lucene.mapping
 
 import com.stratio.cassandra.lucene.BaseScalaTest
+import com.stratio.cassandra.lucene.index.CostBasedRangeQuery
 import com.stratio.cassandra.lucene.util.ByteBufferUtils.toHex
+import org.apache.cassandra.config.DatabaseDescriptor
 import org.apache.cassandra.dht.Murmur3Partitioner
 import org.junit.runner.RunWith
 import org.scalatestplus.junit.JUnitRunner
@@ -42,4 +44,15 @@ class TokenMapperTest extends BaseScalaTest {
     hex(0) shouldBe "2001000000000000000000"
     hex(1) shouldBe "2001000000000000000001"
   }
+
+  test("token range query") {
+    DatabaseDescriptor.setPartitionerUnsafe(Murmur3Partitioner.instance)
+    val mapper = new TokenMapper
+    def token(n: Long) = new Murmur3Partitioner.LongToken(n)
+    val min = Murmur3Partitioner.instance.getMinimumToken
+    mapper.query(min, min, true, true) shouldBe None
+    val query = mapper.query(token(0), token(Long.MaxValue), false, true).get
+    query shouldBe a[CostBasedRangeQuery]
+    query.asInstanceOf[CostBasedRangeQuery].selectivity shouldBe 0.5 +- 0.0001
+  }
 }
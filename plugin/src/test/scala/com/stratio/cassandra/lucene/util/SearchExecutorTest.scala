@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.util
+
+import java.util.concurrent.{CancellationException, CountDownLatch, Executors, TimeUnit}
+
+import com.stratio.cassandra.lucene.{BaseScalaTest, IndexException}
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[SearchExecutor]]. */
+@RunWith(classOf[JUnitRunner])
+class SearchExecutorTest extends BaseScalaTest {
+
+  test("invoke all in order") {
+    val executor = new SearchExecutor(2, 1)
+    try {
+      val tasks = (0 until 10).map(i => () => i * 2)
+      executor.invokeAll(tasks, 3, () => false) shouldBe (0 until 10).map(_ * 2)
+    } finally executor.close()
+  }
+
+  test("invoke all with failing task") {
+    val executor = new SearchExecutor(2, 1)
+    try {
+      val tasks = (0 until 4).map(i => () => if (i == 2) throw new RuntimeException("a") else i)
+      intercept[IndexException] {
+        executor.invokeAll(tasks, 2, () => false)
+      }.getMessage shouldBe "Concurrent search failed"
+    } finally executor.close()
+  }
+
+  test("submit after close") {
+    val executor = new SearchExecutor(1, 1)
+    executor.close()
+    val future = executor.submit(() => 1)
+    future.isCancelled shouldBe true
+    intercept[CancellationException] {
+      future.get(10, TimeUnit.SECONDS)
+    }
+  }
+
+  test("invoke all closed while running") {
+    val executor = new SearchExecutor(1, 1)
+    val started = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+    val tasks = (0 until 4).map(i => () => {
+      if (i == 0) {
+        started.countDown()
+        release.await()
+      }
+      i
+    })
+    val caller = Executors.newSingleThreadExecutor
+    try {
+      val search = caller.submit(() => executor.invokeAll(tasks, 1, () => false))
+      started.await()
+      executor.close()
+      release.countDown()
+      val cause = intercept[java.util.concurrent.ExecutionException] {
+        search.get(10, TimeUnit.SECONDS)
+      }.getCause
+      cause shouldBe an[IndexException]
+      cause.getMessage shouldBe "Search executor has been shut down"
+    } finally caller.shutdownNow()
+  }
+}
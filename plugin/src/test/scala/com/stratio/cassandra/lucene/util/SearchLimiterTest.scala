@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.util
+
+import java.util.concurrent.{CountDownLatch, Executors, TimeUnit}
+
+import com.stratio.cassandra.lucene.{BaseScalaTest, IndexException}
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[SearchLimiter]]. */
+@RunWith(classOf[JUnitRunner])
+class SearchLimiterTest extends BaseScalaTest {
+
+  test("unlimited searches") {
+    val limiter = new SearchLimiter("test", 0, 0)
+    limiter.enabled shouldBe false
+    val permits = (1 to 10).map(_ => limiter.acquire(0))
+    limiter.running shouldBe 10
+    permits.foreach(_.close())
+    limiter.running shouldBe 0
+    limiter.rejected shouldBe 0
+  }
+
+  test("release permit only once") {
+    val limiter = new SearchLimiter("test", 1, 0)
+    val permit = limiter.acquire(0)
+    permit.close()
+    permit.close()
+    limiter.running shouldBe 0
+    limiter.acquire(0).close()
+    limiter.acquire(0).close()
+  }
+
+  test("reject search with full queue") {
+    val limiter = new SearchLimiter("sorted", 2, 0)
+    val permits = (1 to 2).map(_ => limiter.acquire(0))
+    intercept[IndexException] {
+      limiter.acquire(1000)
+    }.getMessage shouldBe
+      "Too many concurrent sorted searches: 2 are running and 0 are already queued"
+    limiter.running shouldBe 2
+    limiter.queued shouldBe 0
+    limiter.rejected shouldBe 1
+    permits.foreach(_.close())
+  }
+
+  test("reject search after timeout") {
+    val limiter = new SearchLimiter("filter", 1, 1)
+    val permit = limiter.acquire(0)
+    intercept[IndexException] {
+      limiter.acquire(100)
+    }.getMessage shouldBe
+      "Too many concurrent filter searches: 1 are running and none finished in 10 ms"
+    limiter.queued shouldBe 0
+    limiter.rejected shouldBe 1
+    permit.close()
+  }
+
+  test("run queued search after release") {
+    val limiter = new SearchLimiter("test", 1, 1)
+    val permit = limiter.acquire(0)
+    val executor = Executors.newSingleThreadExecutor
+    try {
+      val started = new CountDownLatch(1)
+      val future = executor.submit(new Runnable {
+        override def run(): Unit = {
+          started.countDown()
+          limiter.acquire(10000).close()
+        }
+      })
+      started.await()
+      while (limiter.queued == 0) Thread.sleep(1)
+      permit.close()
+      future.get(10, TimeUnit.SECONDS)
+      limiter.running shouldBe 0
+      limiter.rejected shouldBe 0
+    } finally executor.shutdown()
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.util
+
+import com.stratio.cassandra.lucene.BaseScalaTest
+import com.stratio.cassandra.lucene.util.SearchPhase._
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[SearchProfile]]. */
+@RunWith(classOf[JUnitRunner])
+class SearchProfileTest extends BaseScalaTest {
+
+  test("accumulate enabled profile") {
+    val profile = new SearchProfile(None, true)
+    profile.record(Search, 1000000)
+    profile.record(Search, 500000)
+    profile.time(Parse)(1 + 1) shouldBe 2
+    profile.nanos(Search) shouldBe 1500000
+    profile.nanos(Parse) should be > 0L
+    profile.nanos(Read) shouldBe 0
+    profile.breakdown should startWith("Parse=")
+    profile.breakdown should endWith("Search=1.500 ms")
+  }
+
+  test("don't accumulate disabled profile") {
+    val profile = new SearchProfile(None, false)
+    profile.record(Load, 1000000)
+    profile.nanos(Load) shouldBe 0
+    profile.breakdown shouldBe ""
+  }
+
+  test("record metrics") {
+    val metrics = new SearchMetrics("ks", "tbl", "idx")
+    try {
+      val profile = new SearchProfile(Some(metrics), false)
+      profile.record(Read, 1000000)
+      profile.record(Read, 2000000)
+      intercept[IllegalStateException] {
+        profile.time(PostProcess)(throw new IllegalStateException)
+      }
+      metrics.timer(Read).getCount shouldBe 2
+      metrics.timer(PostProcess).getCount shouldBe 1
+      metrics.timer(Parse).getCount shouldBe 0
+    } finally metrics.release()
+  }
+
+  test("count accumulated profile") {
+    val profile = new SearchProfile(None, false, true)
+    profile.fetched(Seq(0, 1, 1))
+    profile.fetched(Seq(1))
+    profile.consumed(4)
+    profile.collected(3)
+    profile.pages shouldBe 2
+    profile.hits shouldBe Map(0 -> 1, 1 -> 3)
+    profile.documents shouldBe 4
+    profile.rows shouldBe 3
+    profile.breakdown shouldBe ""
+  }
+
+  test("don't count disabled profile") {
+    val profile = new SearchProfile(None, false)
+    profile.fetched(Seq(0))
+    profile.consumed(1)
+    profile.pages shouldBe 0
+    profile.hits shouldBe Map()
+    profile.documents shouldBe 0
+  }
+
+  test("complete profile only once") {
+    val profile = new SearchProfile(None, false, true)
+    val completions = new scala.collection.mutable.ListBuffer[Int]
+    profile.onComplete(_ => completions += 1)
+    profile.onComplete(_ => completions += 2)
+    profile.complete()
+    profile.complete()
+    completions shouldBe List(1, 2)
+  }
+
+}
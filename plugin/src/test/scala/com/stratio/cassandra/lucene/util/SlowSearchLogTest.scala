@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.util
+
+import com.stratio.cassandra.lucene.BaseScalaTest
+import com.stratio.cassandra.lucene.util.SearchPhase._
+import com.stratio.cassandra.lucene.util.SlowSearchLog._
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+/** Tests for [[SlowSearchLog]]. */
+@RunWith(classOf[JUnitRunner])
+class SlowSearchLogTest extends BaseScalaTest {
+
+  test("fingerprint without values") {
+    fingerprint("{filter:{type:\"match\",field:\"name\",value:\"Alice\"}}") shouldBe
+      "{filter:{type:\"match\",field:\"name\",value:?}}"
+  }
+
+  test("fingerprint searches differing only in values") {
+    val json1 = "{query:{type:\"boolean\",must:[{type:\"range\",field:\"age\",lower:18}," +
+      "{type:\"contains\",field:\"city\",values:[\"Madrid\",\"Paris\"]}]},sort:{field:\"age\"}}"
+    val json2 = "{query:{type:\"boolean\",must:[{type:\"range\",field:\"age\",lower:65}," +
+      "{type:\"contains\",field:\"city\",values:[\"Rome\"]}]},sort:{field:\"age\"}}"
+    fingerprint(json1) shouldBe fingerprint(json2)
+    fingerprint(json1) shouldBe "{query:{type:\"boolean\",must:[{type:\"range\",field:\"age\"," +
+      "lower:?},{type:\"contains\",field:\"city\",values:[?]}]},sort:{field:\"age\"}}"
+  }
+
+  test("fingerprint searches with different fields") {
+    fingerprint("{filter:{type:\"match\",field:\"a\",value:1}}") should not be
+      fingerprint("{filter:{type:\"match\",field:\"b\",value:1}}")
+  }
+
+  test("fingerprint without paging") {
+    fingerprint("{filter:{type:\"all\"},paging:\"0x0001\"}") shouldBe "{filter:{type:\"all\"}}"
+  }
+
+  test("fingerprint invalid JSON") {
+    fingerprint("{filter:") shouldBe "{filter:"
+  }
+
+  test("record slow searches") {
+    val log = new SlowSearchLog("ks.tbl.idx", 10, 0)
+    log.enabled shouldBe true
+    val profile = new SearchProfile(None, false, log.enabled)
+    profile.fetched(Seq(0, 1))
+    val json1 = "{filter:{type:\"match\",field:\"a\",value:1}}"
+    val json2 = "{filter:{type:\"match\",field:\"a\",value:2}}"
+    log.record(json1, Seq(3, 5), profile, 1000000) shouldBe false
+    log.record(json1, Seq(3, 5), profile, 20000000) shouldBe true
+    log.record(json2, Seq(3, 5), profile, 40000000) shouldBe true
+    log.fingerprints.length shouldBe 1
+    log.fingerprints.head should startWith("count=2, p50=")
+    log.fingerprints.head should endWith("fingerprint=" + fingerprint(json1))
+  }
+
+  test("record slow Lucene searches") {
+    val log = new SlowSearchLog("ks.tbl.idx", 0, 10)
+    val profile = new SearchProfile(None, false, log.enabled)
+    log.record("{}", Nil, profile, 20000000) shouldBe false
+    profile.record(Search, 15000000)
+    log.record("{}", Nil, profile, 20000000) shouldBe true
+  }
+
+  test("record with disabled thresholds") {
+    val log = new SlowSearchLog("ks.tbl.idx", 0, 0)
+    log.enabled shouldBe false
+    log.record("{}", Nil, SearchProfile.NONE, Long.MaxValue) shouldBe false
+    log.fingerprints shouldBe empty
+  }
+
+}
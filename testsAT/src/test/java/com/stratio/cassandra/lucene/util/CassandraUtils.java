@@ -70,6 +70,7 @@ public class CassandraUtils {
     private final boolean clusteringOrderAscending;
     private final Partitioner partitioner;
     private final boolean sparse;
+    private final boolean indexOnlyCount;
 
     public static CassandraUtilsBuilder builder(String name) {
         return new CassandraUtilsBuilder(name);
@@ -89,7 +90,8 @@ public class CassandraUtils {
                           String clusteringOrderColumn,
                           boolean clusteringOrderAscending,
                           Partitioner partitioner,
-                          boolean sparse) {
+                          boolean sparse,
+                          boolean indexOnlyCount) {
 
         this.keyspace = keyspace;
         this.table = table;
@@ -106,6 +108,7 @@ public class CassandraUtils {
         this.clusteringOrderAscending = clusteringOrderAscending;
         this.partitioner = partitioner;
         this.sparse = sparse;
+        this.indexOnlyCount = indexOnlyCount;
 
         qualifiedTable = keyspace + "." + table;
 
@@ -277,6 +280,9 @@ public class CassandraUtils {
             .indexingThreads(CassandraConfig.THREADS)
             .partitioner(partitioner)
             .sparse(sparse);
+        if (indexOnlyCount) {
+            index.indexOnlyCount(true).compactExpressions(true);
+        }
         mappers.forEach(index::mapper);
         analyzers.forEach(index::analyzer);
         execute(index.build());
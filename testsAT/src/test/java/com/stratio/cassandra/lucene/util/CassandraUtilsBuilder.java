@@ -61,6 +61,7 @@ public class CassandraUtilsBuilder {
     private boolean clusteringOrderAscending;
     private Partitioner partitioner = CassandraConfig.PARTITIONER;
     private boolean sparse = CassandraConfig.SPARSE;
+    private boolean indexOnlyCount = false;
 
     private final Map<String, Map<String, String>> udts;
 
@@ -176,6 +177,11 @@ public class CassandraUtilsBuilder {
         return this;
     }
 
+    public CassandraUtilsBuilder withIndexOnlyCount(boolean indexOnlyCount) {
+        this.indexOnlyCount = indexOnlyCount;
+        return this;
+    }
+
     private SingleColumnMapper<?> defaultMapper(String name) {
         switch (name) {
             case "ascii":
@@ -234,6 +240,7 @@ public class CassandraUtilsBuilder {
                                   clusteringOrderColumn,
                                   clusteringOrderAscending,
                                   partitioner,
-                                  sparse);
+                                  sparse,
+                                  indexOnlyCount);
     }
 }
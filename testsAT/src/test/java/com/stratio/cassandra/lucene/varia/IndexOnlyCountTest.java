@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.lucene.varia;
+
+import static com.stratio.cassandra.lucene.builder.Builder.*;
+import static org.junit.Assert.assertEquals;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.QueryTrace;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.SimpleStatement;
+import com.stratio.cassandra.lucene.BaseTest;
+import com.stratio.cassandra.lucene.builder.search.condition.Condition;
+import com.stratio.cassandra.lucene.util.CassandraUtils;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the counts answered from the index are the same as the counts read from the SSTables,
+ * and that they are answered from the index only when the table has no static columns.
+ */
+
+public class IndexOnlyCountTest extends BaseTest {
+
+    private static final String INDEX_ONLY_EVENT = "Building rows from Lucene index";
+
+    @Test
+    public void testWide() {
+        CassandraUtils utils = CassandraUtils.builder("index_only_count_wide")
+            .withPartitionKey("pk")
+            .withClusteringKey("ck")
+            .withColumn("pk", "int")
+            .withColumn("ck", "int")
+            .withColumn("rc", "int")
+            .withIndexOnlyCount(true)
+            .build()
+            .createKeyspace()
+            .createTable();
+        for (int pk = 0; pk < 10; pk++) {
+            for (int ck = 0; ck < 5; ck++) {
+                utils.insert("pk,ck,rc", pk, ck, pk * ck + ck);
+            }
+        }
+        try {
+            utils.createIndex().refresh();
+            checkCount(utils, all(), true);
+            checkCount(utils, range("rc").lower(10).upper(20), true);
+            checkCount(utils, match("pk", 3), true);
+        } finally {
+            CassandraUtils.dropKeyspaceIfNotNull(utils);
+        }
+    }
+
+    @Test
+    public void testWideWithStaticOnlyPartitions() {
+        CassandraUtils utils = CassandraUtils.builder("index_only_count_static")
+            .withPartitionKey("pk")
+            .withClusteringKey("ck")
+            .withColumn("pk", "int")
+            .withColumn("ck", "int")
+            .withColumn("rc", "int")
+            .withStaticColumn("sc", "int", false)
+            .withIndexOnlyCount(true)
+            .build()
+            .createKeyspace()
+            .createTable();
+        for (int pk = 0; pk < 10; pk++) {
+            utils.insert("pk,sc", pk, pk);
+            if (pk % 2 == 0) {
+                for (int ck = 0; ck < 5; ck++) {
+                    utils.insert("pk,ck,rc", pk, ck, pk * ck + ck);
+                }
+            }
+        }
+        try {
+            utils.createIndex().refresh();
+            checkCount(utils, all(), false);
+            checkCount(utils, range("rc").lower(10).upper(20), false);
+            checkCount(utils, match("pk", 3), false);
+        } finally {
+            CassandraUtils.dropKeyspaceIfNotNull(utils);
+        }
+    }
+
+    @Test
+    public void testSkinny() {
+        CassandraUtils utils = CassandraUtils.builder("index_only_count_skinny")
+            .withPartitionKey("pk")
+            .withColumn("pk", "int")
+            .withColumn("rc", "int")
+            .withIndexOnlyCount(true)
+            .build()
+            .createKeyspace()
+            .createTable();
+        for (int pk = 0; pk < 20; pk++) {
+            utils.insert("pk,rc", pk, pk % 7);
+        }
+        try {
+            utils.createIndex().refresh();
+            checkCount(utils, all(), true);
+            checkCount(utils, range("rc").lower(2).upper(4), true);
+            checkCount(utils, match("pk", 3), true);
+        } finally {
+            CassandraUtils.dropKeyspaceIfNotNull(utils);
+        }
+    }
+
+    private static void checkCount(CassandraUtils utils, Condition condition, boolean indexOnly) {
+        long expected = utils.filter(condition).consistency(ConsistencyLevel.ONE).count();
+        String query = String.format("SELECT count(*) FROM %s WHERE expr(%s,'%s')",
+                                     utils.getQualifiedTable(),
+                                     utils.getIndexName(),
+                                     search().filter(condition).build());
+        SimpleStatement statement = new SimpleStatement(query);
+        statement.setConsistencyLevel(ConsistencyLevel.ONE);
+        statement.enableTracing();
+        ResultSet resultSet = utils.execute(statement);
+        long actual = resultSet.one().getLong(0);
+        assertEquals("Index only count is different from the count of the searched rows", expected, actual);
+        QueryTrace trace = resultSet.getExecutionInfo().getQueryTrace();
+        boolean built = trace.getEvents()
+                             .stream()
+                             .anyMatch(event -> event.getDescription().equals(INDEX_ONLY_EVENT));
+        assertEquals("Index only count has not been answered as expected", indexOnly, built);
+    }
+}